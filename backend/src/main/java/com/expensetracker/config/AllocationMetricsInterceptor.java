@@ -0,0 +1,62 @@
+package com.expensetracker.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Records the bytes allocated by the request thread for each handled request as
+ * http.server.requests.allocated, so heap churn per endpoint can be compared
+ * before and after a change. Async requests are skipped because their work
+ * continues on other threads.
+ */
+public class AllocationMetricsInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String START_ATTRIBUTE = AllocationMetricsInterceptor.class.getName() + ".start";
+
+    private final MeterRegistry meterRegistry;
+
+    private final com.sun.management.ThreadMXBean threadMXBean;
+
+    public AllocationMetricsInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        this.threadMXBean = bean instanceof com.sun.management.ThreadMXBean sunBean
+                && sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()
+                ? sunBean : null;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (threadMXBean != null) {
+            request.setAttribute(START_ATTRIBUTE, threadMXBean.getCurrentThreadAllocatedBytes());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.removeAttribute(START_ATTRIBUTE);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object start = request.getAttribute(START_ATTRIBUTE);
+        if (!(start instanceof Long startBytes)) {
+            return;
+        }
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        DistributionSummary.builder("http.server.requests.allocated")
+                .description("Bytes allocated by the request thread while handling the request")
+                .baseUnit("bytes")
+                .tag("method", request.getMethod())
+                .tag("uri", pattern != null ? pattern.toString() : "UNKNOWN")
+                .register(meterRegistry)
+                .record(threadMXBean.getCurrentThreadAllocatedBytes() - startBytes);
+    }
+}
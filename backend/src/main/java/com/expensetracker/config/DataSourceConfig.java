@@ -0,0 +1,155 @@
+package com.expensetracker.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shards and read replicas, active when spring.datasource.sharding.enabled or
+ * spring.datasource.routing.enabled is true. Without either the auto-configured
+ * single datasource is used unchanged.
+ */
+@Configuration
+@ConditionalOnExpression("${spring.datasource.sharding.enabled:false} or ${spring.datasource.routing.enabled:false}")
+@EnableConfigurationProperties({ReplicaRoutingProperties.class, ShardingProperties.class})
+public class DataSourceConfig {
+
+    /**
+     * The home shard's primary, configured exactly like the default datasource from spring.datasource
+     */
+    @Bean
+    @FlywayDataSource
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties, ShardingProperties sharding) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(sharding.getHomeShard());
+        if (sharding.isEnabled()) {
+            dataSource.setConnectionInitSql(idAllocation(sharding.getIdStride(), sharding.getHomeIdOffset()));
+        }
+        return dataSource;
+    }
+
+    @Bean
+    public ShardRoutingDataSource shardRoutingDataSource(HikariDataSource primaryDataSource,
+                                                         DataSourceProperties properties,
+                                                         ReplicaRoutingProperties routing,
+                                                         ShardingProperties sharding) {
+        Map<String, DataSource> shards = new LinkedHashMap<>();
+        Map<String, DataSource> primaries = new LinkedHashMap<>();
+
+        primaries.put(sharding.getHomeShard(), primaryDataSource);
+        shards.put(sharding.getHomeShard(), withReplicas(primaryDataSource, routing.getReplicas(), properties, routing));
+
+        if (sharding.isEnabled()) {
+            Set<Integer> offsets = new HashSet<>(List.of(sharding.getHomeIdOffset()));
+            for (ShardingProperties.Shard shard : sharding.getShards()) {
+                if (shard.getIdOffset() < 1 || shard.getIdOffset() > sharding.getIdStride() || !offsets.add(shard.getIdOffset())) {
+                    throw new IllegalStateException("Shard " + shard.getName() + " needs a unique id-offset between 1 and "
+                            + sharding.getIdStride());
+                }
+                HikariDataSource primary = new HikariDataSource();
+                primary.setPoolName(shard.getName());
+                primary.setJdbcUrl(shard.getUrl());
+                primary.setDriverClassName(properties.getDriverClassName());
+                primary.setUsername(shard.getUsername() != null ? shard.getUsername() : properties.getUsername());
+                primary.setPassword(shard.getPassword() != null ? shard.getPassword() : properties.getPassword());
+                primary.setMaximumPoolSize(shard.getMaximumPoolSize());
+                primary.setConnectionInitSql(idAllocation(sharding.getIdStride(), shard.getIdOffset()));
+                primaries.put(shard.getName(), primary);
+                shards.put(shard.getName(), withReplicas(primary, shard.getReplicas(), properties, routing));
+            }
+        }
+        return new ShardRoutingDataSource(sharding.getHomeShard(), shards, primaries);
+    }
+
+    /**
+     * Migrate every shard, not just the home shard Flyway is configured with
+     */
+    @Bean
+    public FlywayMigrationStrategy shardMigrationStrategy(ShardRoutingDataSource shardRoutingDataSource) {
+        return flyway -> {
+            flyway.migrate();
+            for (String shard : shardRoutingDataSource.getShardNames()) {
+                if (!shard.equals(shardRoutingDataSource.getHomeShard())) {
+                    Flyway.configure()
+                            .configuration(flyway.getConfiguration())
+                            .dataSource(shardRoutingDataSource.getPrimary(shard))
+                            .load()
+                            .migrate();
+                }
+            }
+        };
+    }
+
+    /**
+     * Defers picking a physical connection until the first statement, after the
+     * transaction's read-only flag and the user's shard are known
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+
+    /**
+     * Release connections at the end of each transaction instead of holding them for
+     * the open-session-in-view request, so a connection picked for one transaction
+     * never carries over into a later one routed elsewhere
+     */
+    @Bean
+    public HibernatePropertiesCustomizer releaseConnectionAfterTransaction() {
+        return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+
+    private static DataSource withReplicas(HikariDataSource primary, List<ReplicaRoutingProperties.Replica> replicas,
+                                           DataSourceProperties properties, ReplicaRoutingProperties routing) {
+        if (!routing.isEnabled() || replicas.isEmpty()) {
+            return primary;
+        }
+        List<HikariDataSource> pools = new ArrayList<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            ReplicaRoutingProperties.Replica replica = replicas.get(i);
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName(replica.getName() != null ? replica.getName() : primary.getPoolName() + "-replica-" + (i + 1));
+            dataSource.setJdbcUrl(replica.getUrl());
+            dataSource.setDriverClassName(properties.getDriverClassName());
+            dataSource.setUsername(replica.getUsername() != null ? replica.getUsername() : primary.getUsername());
+            dataSource.setPassword(replica.getPassword() != null ? replica.getPassword() : primary.getPassword());
+            dataSource.setMaximumPoolSize(replica.getMaximumPoolSize());
+            dataSource.setConnectionTimeout(replica.getConnectionTimeout().toMillis());
+            dataSource.setReadOnly(true);
+            // Replicas may be down at startup; the lag monitor keeps them out of rotation until they answer
+            dataSource.setInitializationFailTimeout(-1);
+            pools.add(dataSource);
+        }
+        return new ReplicaRoutingDataSource(primary, pools, routing.getMaxLag(), routing.getCheckInterval());
+    }
+
+    /**
+     * Interleave auto-increment ids across shards so a user's rows keep their ids when moved
+     */
+    private static String idAllocation(int stride, int offset) {
+        return "SET SESSION auto_increment_increment = " + stride + ", auto_increment_offset = " + offset;
+    }
+}
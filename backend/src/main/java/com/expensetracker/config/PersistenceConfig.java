@@ -0,0 +1,28 @@
+package com.expensetracker.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionManager;
+
+@Configuration
+public class PersistenceConfig {
+
+    /**
+     * Replaces the auto-configured transaction manager with one that times commits
+     */
+    @Bean
+    public JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory,
+                                                    MeterRegistry meterRegistry,
+                                                    ObjectProvider<TransactionManagerCustomizers> customizers) {
+        JpaTransactionManager transactionManager = new TimedJpaTransactionManager(meterRegistry);
+        transactionManager.setEntityManagerFactory(entityManagerFactory);
+        // Typed as TransactionManager so TransactionManagerCustomizer beans apply, as in Boot's own configuration
+        customizers.ifAvailable(c -> c.customize((TransactionManager) transactionManager));
+        return transactionManager;
+    }
+}
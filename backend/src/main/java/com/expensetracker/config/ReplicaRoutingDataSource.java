@@ -0,0 +1,185 @@
+package com.expensetracker.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends read-only transactions that opted in to a healthy replica and everything
+ * else to the primary. Replica lag is polled in the background; a replica that
+ * falls behind or stops answering is skipped until it recovers, and a failed
+ * replica connection falls back to the primary.
+ *
+ * Must sit behind a LazyConnectionDataSourceProxy so the physical connection is
+ * chosen after the transaction's read-only flag is known.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private static final ThreadLocal<Boolean> replicaAllowed = new ThreadLocal<>();
+
+    private final HikariDataSource primary;
+
+    private final List<Replica> replicas;
+
+    private final long maxLagSeconds;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final ScheduledExecutorService lagMonitor;
+
+    public ReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas,
+                                    Duration maxLag, Duration checkInterval) {
+        this.primary = primary;
+        this.replicas = replicas.stream().map(Replica::new).toList();
+        this.maxLagSeconds = maxLag.toSeconds();
+        this.lagMonitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-lag-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lagMonitor.scheduleWithFixedDelay(this::checkReplicas, 0, checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Allow or forbid replica reads for the current thread's transaction
+     */
+    public static void setReplicaAllowed(boolean allowed) {
+        if (allowed) {
+            replicaAllowed.set(Boolean.TRUE);
+        } else {
+            replicaAllowed.remove();
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Replica replica = selectReplica();
+        if (replica != null) {
+            try {
+                return replica.dataSource.getConnection();
+            } catch (SQLException e) {
+                replica.markDown(e);
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        // Credentials are per pool; explicit ones only make sense against the primary
+        return primary.getConnection(username, password);
+    }
+
+    private Replica selectReplica() {
+        if (replicas.isEmpty()
+                || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                || !Boolean.TRUE.equals(replicaAllowed.get())) {
+            return null;
+        }
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.isUsable()) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private void checkReplicas() {
+        for (Replica replica : replicas) {
+            try {
+                replica.lagSeconds = replica.readLag();
+                if (!replica.up) {
+                    log.info("Replica {} available, lag {}s", replica.dataSource.getPoolName(), replica.lagSeconds);
+                }
+                replica.up = true;
+            } catch (SQLException e) {
+                replica.markDown(e);
+            } catch (RuntimeException e) {
+                log.warn("Replica lag check failed", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        lagMonitor.shutdownNow();
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+
+    private class Replica {
+        private final HikariDataSource dataSource;
+        private volatile boolean up;
+        private volatile long lagSeconds = Long.MAX_VALUE;
+
+        Replica(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        boolean isUsable() {
+            return up && lagSeconds <= maxLagSeconds;
+        }
+
+        void markDown(SQLException e) {
+            if (up) {
+                log.warn("Replica {} unavailable, reading from primary: {}", dataSource.getPoolName(), e.getMessage());
+            }
+            up = false;
+        }
+
+        /**
+         * Seconds behind the source, or Long.MAX_VALUE when replication is stopped.
+         * A server that is not replicating at all reports no lag, which keeps a
+         * second standalone instance usable for local testing.
+         */
+        long readLag() throws SQLException {
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                try (ResultSet status = replicaStatus(statement)) {
+                    if (!status.next()) {
+                        return 0L;
+                    }
+                    String column = lagColumn(status.getMetaData());
+                    long lag = status.getLong(column);
+                    return status.wasNull() ? Long.MAX_VALUE : lag;
+                }
+            }
+        }
+
+        private ResultSet replicaStatus(Statement statement) throws SQLException {
+            try {
+                return statement.executeQuery("SHOW REPLICA STATUS");
+            } catch (SQLException e) {
+                // MySQL before 8.0.22
+                return statement.executeQuery("SHOW SLAVE STATUS");
+            }
+        }
+
+        private String lagColumn(ResultSetMetaData metaData) throws SQLException {
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                String column = metaData.getColumnLabel(i);
+                if (column.equalsIgnoreCase("Seconds_Behind_Source") || column.equalsIgnoreCase("Seconds_Behind_Master")) {
+                    return column;
+                }
+            }
+            throw new SQLException("Replica status has no lag column");
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.expensetracker.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read replicas used for read-only transactions, bound from spring.datasource.routing
+ */
+@ConfigurationProperties(prefix = "spring.datasource.routing")
+public class ReplicaRoutingProperties {
+
+    private boolean enabled;
+
+    private Duration maxLag = Duration.ofSeconds(5);
+
+    private Duration checkInterval = Duration.ofSeconds(2);
+
+    private List<Replica> replicas = new ArrayList<>();
+
+    // Getters and Setters
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public Duration getMaxLag() { return maxLag; }
+    public void setMaxLag(Duration maxLag) { this.maxLag = maxLag; }
+
+    public Duration getCheckInterval() { return checkInterval; }
+    public void setCheckInterval(Duration checkInterval) { this.checkInterval = checkInterval; }
+
+    public List<Replica> getReplicas() { return replicas; }
+    public void setReplicas(List<Replica> replicas) { this.replicas = replicas; }
+
+    public static class Replica {
+        private String name;
+        private String url;
+        private String username;
+        private String password;
+        private int maximumPoolSize = 10;
+        private Duration connectionTimeout = Duration.ofSeconds(2);
+
+        // Getters and Setters
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+
+        public String getUrl() { return url; }
+        public void setUrl(String url) { this.url = url; }
+
+        public String getUsername() { return username; }
+        public void setUsername(String username) { this.username = username; }
+
+        public String getPassword() { return password; }
+        public void setPassword(String password) { this.password = password; }
+
+        public int getMaximumPoolSize() { return maximumPoolSize; }
+        public void setMaximumPoolSize(int maximumPoolSize) { this.maximumPoolSize = maximumPoolSize; }
+
+        public Duration getConnectionTimeout() { return connectionTimeout; }
+        public void setConnectionTimeout(Duration connectionTimeout) { this.connectionTimeout = connectionTimeout; }
+    }
+}
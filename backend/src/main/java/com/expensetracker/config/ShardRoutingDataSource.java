@@ -0,0 +1,116 @@
+package com.expensetracker.config;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Sends each connection request to the shard bound to the current thread, or to
+ * the home shard when none is bound. Each shard may itself route reads to replicas.
+ *
+ * Must sit behind a LazyConnectionDataSourceProxy so the shard can be bound after
+ * the transaction has started but before its first statement.
+ */
+public class ShardRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+
+    private static final ThreadLocal<String> currentShard = new ThreadLocal<>();
+
+    private final String homeShard;
+
+    private final Map<String, DataSource> shards;
+
+    private final Map<String, DataSource> primaries;
+
+    /**
+     * @param shards    datasource used for application traffic, per shard name
+     * @param primaries the shard's primary, for maintenance work that must bypass replicas
+     */
+    public ShardRoutingDataSource(String homeShard, Map<String, DataSource> shards, Map<String, DataSource> primaries) {
+        if (!shards.containsKey(homeShard)) {
+            throw new IllegalArgumentException("Home shard " + homeShard + " is not configured");
+        }
+        this.homeShard = homeShard;
+        this.shards = Collections.unmodifiableMap(shards);
+        this.primaries = Collections.unmodifiableMap(primaries);
+    }
+
+    /**
+     * Route the current thread's connections to a shard until cleared
+     */
+    public static void bind(String shard) {
+        currentShard.set(shard);
+    }
+
+    public static void clear() {
+        currentShard.remove();
+    }
+
+    /**
+     * Run work against a specific shard, restoring the previous binding afterwards
+     */
+    public static <T> T callOn(String shard, Supplier<T> work) {
+        String previous = currentShard.get();
+        currentShard.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previous != null) {
+                currentShard.set(previous);
+            } else {
+                currentShard.remove();
+            }
+        }
+    }
+
+    public String getHomeShard() {
+        return homeShard;
+    }
+
+    public Set<String> getShardNames() {
+        return shards.keySet();
+    }
+
+    public DataSource getPrimary(String shard) {
+        DataSource primary = primaries.get(shard);
+        if (primary == null) {
+            throw new IllegalArgumentException("Unknown shard " + shard);
+        }
+        return primary;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        String shard = currentShard.get();
+        DataSource target = shards.get(shard != null ? shard : homeShard);
+        if (target == null) {
+            throw new SQLException("Unknown shard " + shard);
+        }
+        return target.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        String shard = currentShard.get();
+        return getPrimary(shard != null ? shard : homeShard).getConnection(username, password);
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (DataSource dataSource : shards.values()) {
+            if (dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+        for (DataSource dataSource : primaries.values()) {
+            if (dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
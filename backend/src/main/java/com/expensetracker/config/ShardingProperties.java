@@ -0,0 +1,83 @@
+package com.expensetracker.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Extra database nodes that users can be placed on, bound from spring.datasource.sharding.
+ * The database in spring.datasource is the home shard and holds the shard directory.
+ */
+@ConfigurationProperties(prefix = "spring.datasource.sharding")
+public class ShardingProperties {
+
+    private boolean enabled;
+
+    private String homeShard = "shard-0";
+
+    private int idStride = 64;
+
+    private int homeIdOffset = 1;
+
+    private Duration directoryCacheTtl = Duration.ofSeconds(5);
+
+    private Duration moveGracePeriod = Duration.ofSeconds(10);
+
+    private List<Shard> shards = new ArrayList<>();
+
+    // Getters and Setters
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public String getHomeShard() { return homeShard; }
+    public void setHomeShard(String homeShard) { this.homeShard = homeShard; }
+
+    public int getIdStride() { return idStride; }
+    public void setIdStride(int idStride) { this.idStride = idStride; }
+
+    public int getHomeIdOffset() { return homeIdOffset; }
+    public void setHomeIdOffset(int homeIdOffset) { this.homeIdOffset = homeIdOffset; }
+
+    public Duration getDirectoryCacheTtl() { return directoryCacheTtl; }
+    public void setDirectoryCacheTtl(Duration directoryCacheTtl) { this.directoryCacheTtl = directoryCacheTtl; }
+
+    public Duration getMoveGracePeriod() { return moveGracePeriod; }
+    public void setMoveGracePeriod(Duration moveGracePeriod) { this.moveGracePeriod = moveGracePeriod; }
+
+    public List<Shard> getShards() { return shards; }
+    public void setShards(List<Shard> shards) { this.shards = shards; }
+
+    public static class Shard {
+        private String name;
+        private String url;
+        private String username;
+        private String password;
+        private int idOffset;
+        private int maximumPoolSize = 10;
+        private List<ReplicaRoutingProperties.Replica> replicas = new ArrayList<>();
+
+        // Getters and Setters
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+
+        public String getUrl() { return url; }
+        public void setUrl(String url) { this.url = url; }
+
+        public String getUsername() { return username; }
+        public void setUsername(String username) { this.username = username; }
+
+        public String getPassword() { return password; }
+        public void setPassword(String password) { this.password = password; }
+
+        public int getIdOffset() { return idOffset; }
+        public void setIdOffset(int idOffset) { this.idOffset = idOffset; }
+
+        public int getMaximumPoolSize() { return maximumPoolSize; }
+        public void setMaximumPoolSize(int maximumPoolSize) { this.maximumPoolSize = maximumPoolSize; }
+
+        public List<ReplicaRoutingProperties.Replica> getReplicas() { return replicas; }
+        public void setReplicas(List<ReplicaRoutingProperties.Replica> replicas) { this.replicas = replicas; }
+    }
+}
@@ -0,0 +1,79 @@
+package com.expensetracker.config;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private Jackson2ObjectMapperBuilder objectMapperBuilder;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Generates property accessors once per type instead of reflecting on every request
+     */
+    @Bean
+    public static Module blackbirdModule() {
+        return new BlackbirdModule();
+    }
+
+    /**
+     * Offer CBOR and Smile alongside JSON for clients that send a matching Accept header.
+     * Spring MVC already registers default CBOR and Smile converters when the jars are
+     * present, and those would win over appended ones; replace them in place so binary
+     * responses use the same Boot-configured mapper, Blackbird included, as JSON.
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        replace(converters, MappingJackson2CborHttpMessageConverter.class, new MappingJackson2CborHttpMessageConverter(
+                objectMapperBuilder.factory(new CBORFactory()).build()));
+        replace(converters, MappingJackson2SmileHttpMessageConverter.class, new MappingJackson2SmileHttpMessageConverter(
+                objectMapperBuilder.factory(new SmileFactory()).build()));
+    }
+
+    private static void replace(List<HttpMessageConverter<?>> converters, Class<?> type,
+                                HttpMessageConverter<?> converter) {
+        for (int i = 0; i < converters.size(); i++) {
+            if (type.isInstance(converters.get(i))) {
+                converters.set(i, converter);
+                return;
+            }
+        }
+        converters.add(converter);
+    }
+
+    /**
+     * Track bytes allocated per request so endpoint changes can be compared
+     */
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new AllocationMetricsInterceptor(meterRegistry));
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+                // A shard bound for one user must not leak to the next request on this thread
+                ShardRoutingDataSource.clear();
+            }
+        });
+    }
+}
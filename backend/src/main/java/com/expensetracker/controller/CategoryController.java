@@ -0,0 +1,29 @@
+package com.expensetracker.controller;
+
+import com.expensetracker.service.CategoryUsageService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/categories")
+@CrossOrigin(origins = "*")
+public class CategoryController {
+
+    @Autowired
+    private CategoryUsageService categoryUsageService;
+
+    /**
+     * Get categories for the picker, sorted by frequency, recency or name
+     */
+    @GetMapping
+    public ResponseEntity<List<Map<String, Object>>> getCategories(@RequestParam(defaultValue = "name") String sort) {
+        // TODO: Get current user ID from security context
+        Long userId = 1L; // Placeholder
+
+        return ResponseEntity.ok(categoryUsageService.getCategoriesWithUsage(userId, sort));
+    }
+}
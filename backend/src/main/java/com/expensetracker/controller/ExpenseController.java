@@ -1,19 +1,51 @@
 package com.expensetracker.controller;
 
+import com.expensetracker.config.ShardRoutingDataSource;
+import com.expensetracker.dto.ExpenseFilter;
+import com.expensetracker.dto.ExpenseSyncBatch;
 import com.expensetracker.model.Expense;
+import com.expensetracker.model.Receipt;
+import com.expensetracker.service.CategorizationService;
+import com.expensetracker.service.CategoryCatalogService;
+import com.expensetracker.service.DataVersionService;
+import com.expensetracker.service.DuplicateDetectionService;
+import com.expensetracker.service.ExpenseAnalyticsService;
 import com.expensetracker.service.ExpenseService;
+import com.expensetracker.service.ExpenseSyncService;
+import com.expensetracker.service.IdempotencyService;
 import com.expensetracker.service.OcrService;
+import com.expensetracker.service.ReceiptBatchService;
+import com.expensetracker.service.ReceiptScanService;
+import com.expensetracker.service.ReceiptStorageService;
+import com.expensetracker.service.ReceiptUploadService;
+import com.expensetracker.service.ShardDirectoryService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.ContentNegotiationManager;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -21,17 +53,59 @@ import java.util.Map;
 @CrossOrigin(origins = "*")
 public class ExpenseController {
 
+    private static final List<MediaType> REPRESENTATIONS = List.of(
+            MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR, new MediaType("application", "x-jackson-smile"));
+
     @Autowired
     private ExpenseService expenseService;
 
+    @Autowired
+    private ExpenseAnalyticsService expenseAnalyticsService;
+
     @Autowired
     private OcrService ocrService;
 
+    @Autowired
+    private ReceiptUploadService receiptUploadService;
+
+    @Autowired
+    private ReceiptStorageService receiptStorageService;
+
+    @Autowired
+    private ReceiptBatchService receiptBatchService;
+
+    @Autowired
+    private ReceiptScanService receiptScanService;
+
+    @Autowired
+    private DataVersionService dataVersionService;
+
+    @Autowired
+    private ContentNegotiationManager contentNegotiationManager;
+
+    @Autowired
+    private HttpServletRequest request;
+
+    @Autowired
+    private ExpenseSyncService expenseSyncService;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private DuplicateDetectionService duplicateDetectionService;
+
+    @Autowired
+    private CategorizationService categorizationService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /**
      * Get all expenses with pagination and filters
      */
     @GetMapping
-    public ResponseEntity<Page<Expense>> getExpenses(
+    public ResponseEntity<Page<?>> getExpenses(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size,
             @RequestParam(required = false) Long categoryId,
@@ -40,39 +114,96 @@ public class ExpenseController {
             @RequestParam(required = false) String currency,
             @RequestParam(required = false) BigDecimal minAmount,
             @RequestParam(required = false) BigDecimal maxAmount,
-            @RequestParam(required = false) String tags) {
+            @RequestParam(required = false) String tags,
+            @RequestParam(required = false) List<String> fields,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
         // TODO: Get current user ID from security context
         Long userId = 1L; // Placeholder
 
+        String etag = etag(userId, "expenses", page, size, categoryId,
+                startDate, endDate, currency, minAmount, maxAmount, tags, fields);
+        if (etagMatches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+
         Pageable pageable = PageRequest.of(page, size);
+        if (fields != null && !fields.isEmpty()) {
+            ExpenseFilter filter = new ExpenseFilter(categoryId, startDate, endDate, currency, minAmount, maxAmount, tags);
+            try {
+                return ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT).body(expenseService.getExpenseFields(userId, pageable, fields, filter));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+
         Page<Expense> expenses = expenseService.getExpenses(userId, pageable, categoryId, 
                 startDate, endDate, currency, minAmount, maxAmount, tags);
 
-        return ResponseEntity.ok(expenses);
+        return ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT).body(expenses);
+    }
+
+    /**
+     * Get expenses created, updated or deleted since the cursor; omit it for a full sync
+     */
+    @GetMapping("/sync")
+    public ResponseEntity<ExpenseSyncBatch> syncExpenses(@RequestParam(required = false) String cursor,
+                                                         @RequestParam(defaultValue = "500") int limit) {
+        // TODO: Get current user ID from security context
+        Long userId = 1L; // Placeholder
+
+        try {
+            return ResponseEntity.ok(expenseSyncService.getChanges(userId, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (ExpenseSyncService.CursorExpiredException e) {
+            return ResponseEntity.status(HttpStatus.GONE).build();
+        }
     }
 
     /**
      * Get expense by ID
      */
     @GetMapping("/{id}")
-    public ResponseEntity<Expense> getExpense(@PathVariable Long id) {
+    public ResponseEntity<?> getExpense(@PathVariable Long id,
+                                        @RequestParam(required = false) List<String> fields) {
         // TODO: Get current user ID from security context
         Long userId = 1L; // Placeholder
 
+        if (fields != null && !fields.isEmpty()) {
+            try {
+                return expenseService.getExpenseFieldsById(id, userId, fields)
+                        .map(ResponseEntity::ok)
+                        .orElse(ResponseEntity.notFound().build());
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+
         return expenseService.getExpenseById(id, userId)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
     /**
-     * Create new expense
+     * Create new expense; with an Idempotency-Key header a retry returns the original response
      */
     @PostMapping
-    public ResponseEntity<Expense> createExpense(@Valid @RequestBody Expense expense) {
+    public ResponseEntity<?> createExpense(@Valid @RequestBody Expense expense,
+                                           @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
         // TODO: Get current user ID from security context
         Long userId = 1L; // Placeholder
 
+        if (idempotencyKey != null) {
+            try {
+                return idempotencyService.execute(userId, idempotencyKey, expense,
+                        () -> ResponseEntity.ok(expenseService.createExpense(userId, expense)));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            } catch (IdempotencyService.IdempotencyKeyReusedException e) {
+                return ResponseEntity.unprocessableEntity().build();
+            }
+        }
         Expense createdExpense = expenseService.createExpense(userId, expense);
         return ResponseEntity.ok(createdExpense);
     }
@@ -89,6 +220,8 @@ public class ExpenseController {
         try {
             Expense updatedExpense = expenseService.updateExpense(id, userId, expense);
             return ResponseEntity.ok(updatedExpense);
+        } catch (ShardDirectoryService.UserMovingException e) {
+            return userMoving();
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
@@ -105,6 +238,8 @@ public class ExpenseController {
         try {
             expenseService.deleteExpense(id, userId);
             return ResponseEntity.noContent().build();
+        } catch (ShardDirectoryService.UserMovingException e) {
+            return userMoving();
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
@@ -113,8 +248,11 @@ public class ExpenseController {
     /**
      * Scan receipt and extract data
      */
-    @PostMapping("/scan-receipt")
+    @PostMapping(value = "/scan-receipt", consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<OcrService.ReceiptData> scanReceipt(@RequestBody Map<String, String> request) {
+        // TODO: Get current user ID from security context
+        Long userId = 1L; // Placeholder
+
         String imageBase64 = request.get("imageBase64");
         String imageFormat = request.get("imageFormat");
 
@@ -124,16 +262,133 @@ public class ExpenseController {
 
         try {
             OcrService.ReceiptData receiptData = ocrService.extractReceiptData(imageBase64, imageFormat);
-            return ResponseEntity.ok(receiptData);
+            return ResponseEntity.ok(annotateReceipt(userId, receiptData));
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
     }
 
+    /**
+     * Scan receipt uploaded as a multipart file
+     */
+    @PostMapping(value = "/scan-receipt", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<OcrService.ReceiptData> scanReceiptFile(@RequestParam("file") MultipartFile file,
+                                                                  @RequestParam(defaultValue = "full") String mode) {
+        try (InputStream in = file.getInputStream()) {
+            return scanReceiptStream(in, file.getOriginalFilename(), file.getContentType(), mode);
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Scan receipt sent as a raw binary request body
+     */
+    @PostMapping(value = "/scan-receipt", consumes = {MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_PNG_VALUE,
+            MediaType.APPLICATION_PDF_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<OcrService.ReceiptData> scanReceiptBinary(HttpServletRequest request,
+                                                                    @RequestParam(defaultValue = "full") String mode) {
+        try (InputStream in = request.getInputStream()) {
+            return scanReceiptStream(in, null, request.getContentType(), mode);
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Get the full scan of a receipt that was scanned with mode=fast
+     */
+    @GetMapping("/scan-receipt/{scanId}")
+    public ResponseEntity<OcrService.ReceiptData> getFullScan(@PathVariable String scanId) {
+        return receiptScanService.getFullScan(scanId)
+                .map(scan -> {
+                    if (!scan.isDone()) {
+                        return ResponseEntity.status(HttpStatus.ACCEPTED).<OcrService.ReceiptData>build();
+                    }
+                    if (scan.isCompletedExceptionally()) {
+                        return ResponseEntity.badRequest().<OcrService.ReceiptData>build();
+                    }
+                    return ResponseEntity.ok(scan.join());
+                })
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Scan a batch of receipts sent as multipart files, streaming results as NDJSON.
+     * Parts are read straight from the request, so scanning starts as each one arrives.
+     */
+    @PostMapping(value = "/scan-receipt/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> scanReceiptBatch(HttpServletRequest request) {
+        ReceiptBatchService.BatchScan batch = receiptBatchService.newBatch();
+        try {
+            receiptBatchService.addMultipart(batch, request);
+        } catch (ReceiptUploadService.UploadTooLargeException e) {
+            batch.cancel();
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (Exception e) {
+            batch.cancel();
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok(streamBatch(batch));
+    }
+
+    /**
+     * Scan a zip archive of receipts, streaming results as NDJSON
+     */
+    @PostMapping(value = "/scan-receipt/batch", consumes = "application/zip",
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> scanReceiptZip(HttpServletRequest request) {
+        ReceiptBatchService.BatchScan batch = receiptBatchService.newBatch();
+        try (InputStream in = request.getInputStream()) {
+            receiptBatchService.addZip(batch, in);
+        } catch (ReceiptUploadService.UploadTooLargeException e) {
+            batch.cancel();
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (Exception e) {
+            batch.cancel();
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok(streamBatch(batch));
+    }
+
+    /**
+     * Write each batch result as one JSON line as soon as it completes
+     */
+    private StreamingResponseBody streamBatch(ReceiptBatchService.BatchScan batch) {
+        // TODO: Get current user ID from security context
+        Long userId = 1L; // Placeholder
+
+        return out -> {
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    ReceiptBatchService.BatchItemResult result = batch.next();
+                    if (result.getReceipt() != null) {
+                        annotateReceipt(userId, result.getReceipt());
+                    }
+                    objectMapper.writeValue(new NonClosingOutputStream(out), result);
+                    out.write('\n');
+                    out.flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.cancel();
+            } catch (IOException | RuntimeException e) {
+                batch.cancel();
+                throw e;
+            } finally {
+                // Runs on an async thread the request interceptor never clears
+                ShardRoutingDataSource.clear();
+            }
+        };
+    }
+
     /**
      * Upload receipt for existing expense
      */
-    @PostMapping("/{id}/receipt")
+    @PostMapping(value = "/{id}/receipt", consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<Expense> uploadReceipt(@PathVariable Long id, 
                                                @RequestBody Map<String, String> request) {
         // TODO: Get current user ID from security context
@@ -146,42 +401,113 @@ public class ExpenseController {
             return ResponseEntity.badRequest().build();
         }
 
-        try {
+        try (ReceiptUploadService.ReceiptUpload upload = receiptUploadService.receiveBase64(imageBase64, imageFormat)) {
             // Extract receipt data
-            OcrService.ReceiptData receiptData = ocrService.extractReceiptData(imageBase64, imageFormat);
-            
-            // Update expense with receipt data
-            Expense expense = expenseService.getExpenseById(id, userId)
-                    .orElseThrow(() -> new RuntimeException("Expense not found"));
-            
-            // TODO: Save image to storage and get URL
-            expense.setReceiptImageUrl("receipt_" + id + ".jpg");
-            
-            // Update expense with extracted data
-            if (receiptData.getMerchantName() != null) {
-                expense.setTitle(receiptData.getMerchantName());
-            }
-            if (receiptData.getTotalAmount() != null) {
-                expense.setAmount(receiptData.getTotalAmount());
-            }
-            if (receiptData.getDate() != null) {
-                expense.setDate(receiptData.getDate());
-            }
+            OcrService.ReceiptData receiptData = ocrService.extractReceiptData(upload.getPath());
+            String receiptKey = receiptStorageService.store(upload);
+
+            return ResponseEntity.ok(applyReceiptData(id, userId, receiptData, receiptKey));
+        } catch (ShardDirectoryService.UserMovingException e) {
+            return userMoving();
+        } catch (ReceiptUploadService.UploadTooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (ReceiptUploadService.UnsupportedUploadTypeException e) {
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
 
-            Expense updatedExpense = expenseService.updateExpense(id, userId, expense);
-            return ResponseEntity.ok(updatedExpense);
+    /**
+     * Upload receipt for existing expense as a multipart file
+     */
+    @PostMapping(value = "/{id}/receipt", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Expense> uploadReceiptFile(@PathVariable Long id,
+                                                     @RequestParam("file") MultipartFile file) {
+        // TODO: Get current user ID from security context
+        Long userId = 1L; // Placeholder
+
+        try (InputStream in = file.getInputStream();
+             ReceiptUploadService.ReceiptUpload upload =
+                     receiptUploadService.receive(in, file.getOriginalFilename(), file.getContentType())) {
+            OcrService.ReceiptData receiptData = ocrService.extractReceiptData(upload.getPath());
+            String receiptKey = receiptStorageService.store(upload);
+            return ResponseEntity.ok(applyReceiptData(id, userId, receiptData, receiptKey));
+        } catch (ShardDirectoryService.UserMovingException e) {
+            return userMoving();
+        } catch (ReceiptUploadService.UploadTooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (ReceiptUploadService.UnsupportedUploadTypeException e) {
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Stream a receipt to a temp file and run OCR on it
+     */
+    private ResponseEntity<OcrService.ReceiptData> scanReceiptStream(InputStream in, String filename,
+                                                                     String contentType, String mode) {
+        // TODO: Get current user ID from security context
+        Long userId = 1L; // Placeholder
+
+        try (ReceiptUploadService.ReceiptUpload upload = receiptUploadService.receive(in, filename, contentType)) {
+            OcrService.ReceiptData receiptData = "fast".equalsIgnoreCase(mode)
+                    ? receiptScanService.quickScan(upload)
+                    : receiptScanService.fullScan(upload);
+            return ResponseEntity.ok(annotateReceipt(userId, receiptData));
+        } catch (ReceiptUploadService.UploadTooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (ReceiptUploadService.UnsupportedUploadTypeException e) {
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
     }
 
+    /**
+     * Flag the user's expenses that a scanned receipt likely duplicates and suggest its category
+     */
+    private OcrService.ReceiptData annotateReceipt(Long userId, OcrService.ReceiptData receiptData) {
+        receiptData.setPossibleDuplicateIds(duplicateDetectionService.findDuplicates(userId,
+                receiptData.getTotalAmount(), receiptData.getDate(), receiptData.getMerchantName(), null));
+        receiptData.setSuggestedCategoryId(categorizationService
+                .suggestCategory(userId, receiptData.getMerchantName(), receiptData.getOcrText())
+                .map(CategoryCatalogService.CategoryInfo::getId)
+                .orElse(null));
+        return receiptData;
+    }
+
+    /**
+     * Get OCR details of an expense's receipt
+     */
+    @GetMapping("/{id}/receipt-data")
+    public ResponseEntity<Receipt> getReceiptData(@PathVariable Long id) {
+        // TODO: Get current user ID from security context
+        Long userId = 1L; // Placeholder
+
+        return expenseService.getReceipt(id, userId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Copy extracted receipt fields onto an existing expense
+     */
+    private Expense applyReceiptData(Long id, Long userId, OcrService.ReceiptData receiptData, String receiptKey) {
+        return expenseService.attachReceipt(id, userId, receiptData, receiptStorageService.toUrl(receiptKey));
+    }
+
     /**
      * Get expense statistics
      */
     @GetMapping("/statistics")
     public ResponseEntity<Map<String, Object>> getStatistics(
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
-            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "exact") String accuracy,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
         // TODO: Get current user ID from security context
         Long userId = 1L; // Placeholder
@@ -193,8 +519,17 @@ public class ExpenseController {
             endDate = LocalDate.now();
         }
 
-        Map<String, Object> statistics = expenseService.getExpenseStatistics(userId, startDate, endDate);
-        return ResponseEntity.ok(statistics);
+        boolean approximate = "approximate".equalsIgnoreCase(accuracy);
+        String etag = etag(userId,
+                approximate ? "statistics-approximate" : "statistics", startDate, endDate);
+        if (etagMatches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+
+        Map<String, Object> statistics = approximate
+                ? expenseAnalyticsService.getApproximateExpenseStatistics(userId, startDate, endDate)
+                : expenseAnalyticsService.getExpenseStatistics(userId, startDate, endDate);
+        return ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT).body(statistics);
     }
 
     /**
@@ -203,7 +538,9 @@ public class ExpenseController {
     @GetMapping("/analytics/spending-by-category")
     public ResponseEntity<Map<String, Object>> getSpendingByCategory(
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
-            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "exact") String accuracy,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
         // TODO: Get current user ID from security context
         Long userId = 1L; // Placeholder
@@ -215,8 +552,17 @@ public class ExpenseController {
             endDate = LocalDate.now();
         }
 
-        Map<String, Object> spendingByCategory = expenseService.getSpendingByCategory(userId, startDate, endDate);
-        return ResponseEntity.ok(spendingByCategory);
+        boolean approximate = "approximate".equalsIgnoreCase(accuracy);
+        String etag = etag(userId,
+                approximate ? "spending-by-category-approximate" : "spending-by-category", startDate, endDate);
+        if (etagMatches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+
+        Map<String, Object> spendingByCategory = approximate
+                ? expenseAnalyticsService.getApproximateSpendingByCategory(userId, startDate, endDate)
+                : expenseAnalyticsService.getSpendingByCategory(userId, startDate, endDate);
+        return ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT).body(spendingByCategory);
     }
 
     /**
@@ -225,7 +571,9 @@ public class ExpenseController {
     @GetMapping("/analytics/spending-trend")
     public ResponseEntity<Map<String, Object>> getSpendingTrend(
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
-            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "exact") String accuracy,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
         // TODO: Get current user ID from security context
         Long userId = 1L; // Placeholder
@@ -237,19 +585,206 @@ public class ExpenseController {
             endDate = LocalDate.now();
         }
 
-        Map<String, Object> trend = Map.of("trends", expenseService.getSpendingTrend(userId, startDate, endDate));
-        return ResponseEntity.ok(trend);
+        boolean approximate = "approximate".equalsIgnoreCase(accuracy);
+        String etag = etag(userId,
+                approximate ? "spending-trend-approximate" : "spending-trend", startDate, endDate);
+        if (etagMatches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+
+        Map<String, Object> trend = approximate
+                ? expenseAnalyticsService.getApproximateSpendingTrend(userId, startDate, endDate)
+                : Map.of("trends", expenseAnalyticsService.getSpendingTrend(userId, startDate, endDate));
+        return ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT).body(trend);
+    }
+
+    /**
+     * Get expenses within a radius of a point, nearest first
+     */
+    @GetMapping("/nearby")
+    public ResponseEntity<Map<String, Object>> getExpensesNearby(
+            @RequestParam double latitude,
+            @RequestParam double longitude,
+            @RequestParam(defaultValue = "5") double radiusKm,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+        // TODO: Get current user ID from security context
+        Long userId = 1L; // Placeholder
+
+        String etag = etag(userId, "nearby", latitude, longitude, radiusKm, startDate, endDate);
+        if (etagMatches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+
+        try {
+            return ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT).body(
+                    expenseService.getExpensesNearby(userId, latitude, longitude, radiusKm, startDate, endDate));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Get expenses inside a bounding box, newest first
+     */
+    @GetMapping("/within")
+    public ResponseEntity<Map<String, Object>> getExpensesInBox(
+            @RequestParam double south,
+            @RequestParam double west,
+            @RequestParam double north,
+            @RequestParam double east,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+        // TODO: Get current user ID from security context
+        Long userId = 1L; // Placeholder
+
+        String etag = etag(userId, "within", south, west, north, east, startDate, endDate);
+        if (etagMatches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+
+        try {
+            return ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT).body(
+                    expenseService.getExpensesInBox(userId, south, west, north, east, startDate, endDate));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Get spending in a map viewport grouped into clusters for a heatmap
+     */
+    @GetMapping("/analytics/map")
+    public ResponseEntity<Map<String, Object>> getSpendingMap(
+            @RequestParam double south,
+            @RequestParam double west,
+            @RequestParam double north,
+            @RequestParam double east,
+            @RequestParam(defaultValue = "32") int gridSize,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+        // TODO: Get current user ID from security context
+        Long userId = 1L; // Placeholder
+
+        String etag = etag(userId, "spending-map", south, west, north, east, gridSize,
+                startDate, endDate);
+        if (etagMatches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+
+        try {
+            Map<String, Object> map = Map.of("clusters", expenseService.getSpendingClusters(userId,
+                    south, west, north, east, startDate, endDate, gridSize));
+            return ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT).body(map);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     /**
      * Get reimbursable expenses
      */
     @GetMapping("/reimbursable")
-    public ResponseEntity<Map<String, Object>> getReimbursableExpenses() {
+    public ResponseEntity<Map<String, Object>> getReimbursableExpenses(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         // TODO: Get current user ID from security context
         Long userId = 1L; // Placeholder
 
+        String etag = etag(userId, "reimbursable");
+        if (etagMatches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+
         Map<String, Object> response = Map.of("expenses", expenseService.getReimbursableExpenses(userId));
-        return ResponseEntity.ok(response);
+        return ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT).body(response);
+    }
+
+    /**
+     * ETag of a response from the user's data version and the request parameters. The
+     * representation the Accept header negotiates is part of it, so a JSON client never
+     * revalidates against a CBOR or Smile body; responses also carry Vary: Accept.
+     */
+    private String etag(Long userId, String resource, Object... params) {
+        Object[] key = Arrays.copyOf(params, params.length + 1);
+        key[params.length] = representation();
+        return dataVersionService.etag(userId, resource, key);
+    }
+
+    /**
+     * The body format content negotiation picks: the most preferred accepted type that a
+     * converter can write, trying JSON first as the converters are ordered
+     */
+    private String representation() {
+        try {
+            for (MediaType accepted : contentNegotiationManager.resolveMediaTypes(new ServletWebRequest(request))) {
+                for (MediaType produced : REPRESENTATIONS) {
+                    if (accepted.isCompatibleWith(produced)) {
+                        return produced.getSubtype();
+                    }
+                }
+            }
+        } catch (HttpMediaTypeNotAcceptableException e) {
+            // Fall through; the response itself will be rejected as not acceptable
+        }
+        return MediaType.APPLICATION_JSON.getSubtype();
+    }
+
+    /**
+     * Check an If-None-Match header against the current ETag
+     */
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*") || value.equals(etag) || value.equals(opaque)
+                    || (value.startsWith("W/") && value.substring(2).equals(opaque))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).varyBy(HttpHeaders.ACCEPT).build();
+    }
+
+    /**
+     * Writes are paused briefly while the user's data moves to another shard
+     */
+    @ExceptionHandler(ShardDirectoryService.UserMovingException.class)
+    public ResponseEntity<Void> handleUserMoving() {
+        return userMoving();
+    }
+
+    private static <T> ResponseEntity<T> userMoving() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5").build();
+    }
+
+    /**
+     * Lets Jackson write one value at a time without closing the response stream
+     */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
     }
-} 
\ No newline at end of file
+}
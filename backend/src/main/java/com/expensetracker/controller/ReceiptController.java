@@ -0,0 +1,155 @@
+package com.expensetracker.controller;
+
+import com.expensetracker.service.ReceiptStorageService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/expenses/receipts")
+@CrossOrigin(origins = "*")
+public class ReceiptController {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    @Autowired
+    private ReceiptStorageService receiptStorageService;
+
+    /**
+     * Serve a stored receipt file
+     */
+    @GetMapping("/{key}")
+    public void getReceipt(@PathVariable String key, HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+        serve(receiptStorageService.resolve(key), key, contentType(key), request, response);
+    }
+
+    /**
+     * Serve the cached thumbnail of a stored receipt
+     */
+    @GetMapping("/{key}/thumbnail")
+    public void getReceiptThumbnail(@PathVariable String key, HttpServletRequest request,
+                                    HttpServletResponse response) throws IOException {
+        serve(receiptStorageService.resolveThumbnail(key), key + "-thumbnail",
+                MediaType.IMAGE_JPEG_VALUE, request, response);
+    }
+
+    /**
+     * Write a file with conditional and range request support.
+     * Content is addressed by hash, so the key doubles as a strong ETag.
+     */
+    private void serve(Optional<Path> file, String etagValue, String contentType,
+                       HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (file.isEmpty()) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        String etag = "\"" + etagValue + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=31536000, immutable");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        Path path = file.get();
+        long length = Files.size(path);
+        long start = 0;
+        long end = length - 1;
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (rangeHeader != null && (ifRange == null || ifRange.equals(etag))) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+
+            // Multi-range requests are answered with the full body, which the spec permits
+            if (ranges.size() == 1) {
+                HttpRange range = ranges.get(0);
+                try {
+                    start = range.getRangeStart(length);
+                    end = range.getRangeEnd(length);
+                } catch (IllegalArgumentException e) {
+                    start = length;
+                }
+                if (start >= length) {
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    return;
+                }
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = end - start + 1;
+        response.setContentType(contentType);
+        response.setContentLengthLong(count);
+
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+
+        // Let the connector sendfile() straight from the page cache when it can
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, path.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        // Otherwise copy through the servlet output buffer
+        if (start == 0 && count == length) {
+            Files.copy(path, response.getOutputStream());
+            return;
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            in.skipNBytes(start);
+            OutputStream out = response.getOutputStream();
+            byte[] buffer = new byte[8192];
+            long remaining = count;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    break;
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    private static String contentType(String key) {
+        if (key.endsWith(".png")) {
+            return MediaType.IMAGE_PNG_VALUE;
+        }
+        if (key.endsWith(".pdf")) {
+            return MediaType.APPLICATION_PDF_VALUE;
+        }
+        return MediaType.IMAGE_JPEG_VALUE;
+    }
+}
@@ -0,0 +1,61 @@
+package com.expensetracker.controller;
+
+import com.expensetracker.service.ShardDirectoryService;
+import com.expensetracker.service.ShardMigrationService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+import java.util.Set;
+
+@RestController
+@RequestMapping("/admin/shards")
+public class ShardController {
+
+    // TODO: Restrict to administrators once the security context is wired up
+
+    @Autowired
+    private ShardDirectoryService shardDirectoryService;
+
+    @Autowired
+    private ShardMigrationService shardMigrationService;
+
+    /**
+     * List the configured shards
+     */
+    @GetMapping
+    public ResponseEntity<Set<String>> getShards() {
+        if (!shardDirectoryService.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(shardDirectoryService.getShardNames());
+    }
+
+    /**
+     * Show which shard a user is on and whether a move is in progress
+     */
+    @GetMapping("/users/{userId}")
+    public ResponseEntity<ShardDirectoryService.Placement> getPlacement(@PathVariable Long userId) {
+        if (!shardDirectoryService.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(shardDirectoryService.placement(userId));
+    }
+
+    /**
+     * Move a user to another shard in the background
+     */
+    @PostMapping("/users/{userId}/move")
+    public ResponseEntity<Map<String, String>> moveUser(@PathVariable Long userId, @RequestParam String target) {
+        if (!shardDirectoryService.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            shardMigrationService.moveUser(userId, target);
+            return ResponseEntity.accepted().body(Map.of("status", ShardDirectoryService.MOVING, "target", target));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.expensetracker.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.math.BigDecimal;
+
+/**
+ * Spending total for one category within a date range
+ */
+public class CategorySpending {
+
+    private Long categoryId;
+    private String categoryName;
+    private String color;
+    private String icon;
+    private BigDecimal totalAmount;
+    private long count;
+
+    // 95% error bounds of an approximate answer; absent when the figures are exact
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private BigDecimal totalAmountError;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long countError;
+
+    // Constructors
+    public CategorySpending() {}
+
+    public CategorySpending(Long categoryId, BigDecimal totalAmount, Long count) {
+        this.categoryId = categoryId;
+        this.totalAmount = totalAmount;
+        this.count = count;
+    }
+
+    // Getters and Setters
+    public Long getCategoryId() {
+        return categoryId;
+    }
+
+    public void setCategoryId(Long categoryId) {
+        this.categoryId = categoryId;
+    }
+
+    public String getCategoryName() {
+        return categoryName;
+    }
+
+    public void setCategoryName(String categoryName) {
+        this.categoryName = categoryName;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    public void setColor(String color) {
+        this.color = color;
+    }
+
+    public String getIcon() {
+        return icon;
+    }
+
+    public void setIcon(String icon) {
+        this.icon = icon;
+    }
+
+    public BigDecimal getTotalAmount() {
+        return totalAmount;
+    }
+
+    public void setTotalAmount(BigDecimal totalAmount) {
+        this.totalAmount = totalAmount;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public BigDecimal getTotalAmountError() {
+        return totalAmountError;
+    }
+
+    public void setTotalAmountError(BigDecimal totalAmountError) {
+        this.totalAmountError = totalAmountError;
+    }
+
+    public Long getCountError() {
+        return countError;
+    }
+
+    public void setCountError(Long countError) {
+        this.countError = countError;
+    }
+}
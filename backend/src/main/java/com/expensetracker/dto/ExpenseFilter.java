@@ -0,0 +1,89 @@
+package com.expensetracker.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Optional filters for expense listings; null fields are not applied
+ */
+public class ExpenseFilter {
+
+    private Long categoryId;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private String currency;
+    private BigDecimal minAmount;
+    private BigDecimal maxAmount;
+    private String tags;
+
+    // Constructors
+    public ExpenseFilter() {}
+
+    public ExpenseFilter(Long categoryId, LocalDate startDate, LocalDate endDate, String currency,
+                         BigDecimal minAmount, BigDecimal maxAmount, String tags) {
+        this.categoryId = categoryId;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.currency = currency;
+        this.minAmount = minAmount;
+        this.maxAmount = maxAmount;
+        this.tags = tags;
+    }
+
+    // Getters and Setters
+    public Long getCategoryId() {
+        return categoryId;
+    }
+
+    public void setCategoryId(Long categoryId) {
+        this.categoryId = categoryId;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(LocalDate startDate) {
+        this.startDate = startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(LocalDate endDate) {
+        this.endDate = endDate;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public BigDecimal getMinAmount() {
+        return minAmount;
+    }
+
+    public void setMinAmount(BigDecimal minAmount) {
+        this.minAmount = minAmount;
+    }
+
+    public BigDecimal getMaxAmount() {
+        return maxAmount;
+    }
+
+    public void setMaxAmount(BigDecimal maxAmount) {
+        this.maxAmount = maxAmount;
+    }
+
+    public String getTags() {
+        return tags;
+    }
+
+    public void setTags(String tags) {
+        this.tags = tags;
+    }
+}
@@ -0,0 +1,61 @@
+package com.expensetracker.dto;
+
+import com.expensetracker.model.Expense;
+import com.expensetracker.model.ExpenseTombstone;
+
+import java.util.List;
+
+/**
+ * One page of changes for delta sync: expenses created or updated and expenses
+ * deleted since the request cursor, and the cursor to resume from
+ */
+public class ExpenseSyncBatch {
+
+    private List<Expense> changed;
+    private List<ExpenseTombstone> deleted;
+    private String cursor;
+    private boolean hasMore;
+
+    // Constructors
+    public ExpenseSyncBatch() {}
+
+    public ExpenseSyncBatch(List<Expense> changed, List<ExpenseTombstone> deleted, String cursor, boolean hasMore) {
+        this.changed = changed;
+        this.deleted = deleted;
+        this.cursor = cursor;
+        this.hasMore = hasMore;
+    }
+
+    // Getters and Setters
+    public List<Expense> getChanged() {
+        return changed;
+    }
+
+    public void setChanged(List<Expense> changed) {
+        this.changed = changed;
+    }
+
+    public List<ExpenseTombstone> getDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(List<ExpenseTombstone> deleted) {
+        this.deleted = deleted;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public boolean getHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+}
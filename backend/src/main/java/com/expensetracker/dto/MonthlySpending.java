@@ -0,0 +1,47 @@
+package com.expensetracker.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Spending total for one calendar month
+ */
+public class MonthlySpending {
+
+    private int year;
+    private int month;
+    private BigDecimal amount;
+
+    // Constructors
+    public MonthlySpending() {}
+
+    public MonthlySpending(Integer year, Integer month, BigDecimal amount) {
+        this.year = year;
+        this.month = month;
+        this.amount = amount;
+    }
+
+    // Getters and Setters
+    public int getYear() {
+        return year;
+    }
+
+    public void setYear(int year) {
+        this.year = year;
+    }
+
+    public int getMonth() {
+        return month;
+    }
+
+    public void setMonth(int month) {
+        this.month = month;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+}
@@ -0,0 +1,68 @@
+package com.expensetracker.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Spending total for the expenses in one map grid cell, placed at their mean position
+ */
+public class SpendingCluster {
+
+    private double latitude;
+    private double longitude;
+    private BigDecimal totalAmount;
+    private long count;
+
+    // Constructors
+    public SpendingCluster() {}
+
+    public SpendingCluster(double latitude, double longitude, BigDecimal totalAmount, long count) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.totalAmount = totalAmount;
+        this.count = count;
+    }
+
+    /**
+     * Fold in another part of the same cell, e.g. from a second covering range
+     */
+    public void merge(SpendingCluster other) {
+        long merged = count + other.count;
+        latitude = (latitude * count + other.latitude * other.count) / merged;
+        longitude = (longitude * count + other.longitude * other.count) / merged;
+        totalAmount = totalAmount.add(other.totalAmount);
+        count = merged;
+    }
+
+    // Getters and Setters
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    public BigDecimal getTotalAmount() {
+        return totalAmount;
+    }
+
+    public void setTotalAmount(BigDecimal totalAmount) {
+        this.totalAmount = totalAmount;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+}
@@ -0,0 +1,72 @@
+package com.expensetracker.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Spending total for one day, or for one month in an approximate trend
+ */
+public class SpendingTrendPoint {
+
+    private LocalDate date;
+    private BigDecimal amount;
+    private long count;
+
+    // 95% error bounds of an approximate answer; absent when the figures are exact
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private BigDecimal amountError;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long countError;
+
+    // Constructors
+    public SpendingTrendPoint() {}
+
+    public SpendingTrendPoint(LocalDate date, BigDecimal amount, Long count) {
+        this.date = date;
+        this.amount = amount;
+        this.count = count;
+    }
+
+    // Getters and Setters
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public void setDate(LocalDate date) {
+        this.date = date;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public BigDecimal getAmountError() {
+        return amountError;
+    }
+
+    public void setAmountError(BigDecimal amountError) {
+        this.amountError = amountError;
+    }
+
+    public Long getCountError() {
+        return countError;
+    }
+
+    public void setCountError(Long countError) {
+        this.countError = countError;
+    }
+}
@@ -1,5 +1,6 @@
 package com.expensetracker.model;
 
+import com.expensetracker.service.CategoryCatalogListener;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
@@ -10,7 +11,7 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "categories")
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({AuditingEntityListener.class, CategoryCatalogListener.class})
 public class Category {
 
     @Id
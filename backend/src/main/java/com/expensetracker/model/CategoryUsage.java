@@ -0,0 +1,91 @@
+package com.expensetracker.model;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "category_usage",
+       uniqueConstraints = @UniqueConstraint(name = "uk_category_usage_user_category",
+                                             columnNames = {"user_id", "category_id"}),
+       indexes = {
+           @Index(name = "idx_category_usage_user_count", columnList = "user_id, usage_count"),
+           @Index(name = "idx_category_usage_user_last_used", columnList = "user_id, last_used_at")
+       })
+public class CategoryUsage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "category_id", nullable = false)
+    private Long categoryId;
+
+    @Column(name = "usage_count", nullable = false)
+    private Long usageCount = 0L;
+
+    @Column(name = "last_used_at")
+    private LocalDateTime lastUsedAt;
+
+    // Constructors
+    public CategoryUsage() {}
+
+    public CategoryUsage(Long userId, Long categoryId) {
+        this.userId = userId;
+        this.categoryId = categoryId;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getCategoryId() {
+        return categoryId;
+    }
+
+    public void setCategoryId(Long categoryId) {
+        this.categoryId = categoryId;
+    }
+
+    public Long getUsageCount() {
+        return usageCount;
+    }
+
+    public void setUsageCount(Long usageCount) {
+        this.usageCount = usageCount;
+    }
+
+    public LocalDateTime getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    public void setLastUsedAt(LocalDateTime lastUsedAt) {
+        this.lastUsedAt = lastUsedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "CategoryUsage{" +
+                "userId=" + userId +
+                ", categoryId=" + categoryId +
+                ", usageCount=" + usageCount +
+                ", lastUsedAt=" + lastUsedAt +
+                '}';
+    }
+}
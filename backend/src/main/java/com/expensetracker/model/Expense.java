@@ -1,6 +1,10 @@
 package com.expensetracker.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
+import jakarta.validation.constraints.DecimalMax;
 import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
@@ -12,16 +16,29 @@ import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Entity
 @Table(name = "expenses")
 @EntityListeners(AuditingEntityListener.class)
 public class Expense {
 
+    /**
+     * Number of sampling buckets; sample keys run from 0 to SAMPLE_KEYS - 1
+     */
+    public static final int SAMPLE_KEYS = 64;
+
+    /**
+     * Sample key of expenses written before sample keys existed, until the backfill assigns one
+     */
+    public static final int UNSAMPLED = 255;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    @JsonIgnore
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
@@ -55,12 +72,24 @@ public class Expense {
     @Column(name = "receipt_image_url")
     private String receiptImageUrl;
 
-    @Column(name = "ocr_data", columnDefinition = "JSON")
-    private String ocrData;
-
     @Size(max = 200, message = "Location must be less than 200 characters")
     private String location;
 
+    @DecimalMin(value = "-90.0", message = "Latitude must be between -90 and 90")
+    @DecimalMax(value = "90.0", message = "Latitude must be between -90 and 90")
+    @Column(precision = 9, scale = 6)
+    private BigDecimal latitude;
+
+    @DecimalMin(value = "-180.0", message = "Longitude must be between -180 and 180")
+    @DecimalMax(value = "180.0", message = "Longitude must be between -180 and 180")
+    @Column(precision = 9, scale = 6)
+    private BigDecimal longitude;
+
+    // Grid cell of the coordinates for spatial range scans, null without coordinates
+    @JsonIgnore
+    @Column(name = "geo_cell")
+    private Long geoCell;
+
     @Size(max = 500, message = "Tags must be less than 500 characters")
     private String tags;
 
@@ -79,6 +108,22 @@ public class Expense {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    // Per-user change sequence for delta sync, assigned on every write
+    @JsonIgnore
+    @Column(name = "change_seq", nullable = false)
+    private Long changeSeq = 0L;
+
+    // Sampling bucket for approximate analytics, drawn once when the expense is first saved
+    @JsonIgnore
+    @Column(name = "sample_key", nullable = false, updatable = false)
+    private Integer sampleKey;
+
+    // Likely duplicates found when the expense was created or scanned; not persisted
+    @Transient
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private List<Long> possibleDuplicateIds;
+
     // Enums
     public enum ExpenseStatus {
         PENDING, APPROVED, REJECTED
@@ -95,6 +140,13 @@ public class Expense {
         this.date = date;
     }
 
+    @PrePersist
+    void assignSampleKey() {
+        if (sampleKey == null) {
+            sampleKey = ThreadLocalRandom.current().nextInt(SAMPLE_KEYS);
+        }
+    }
+
     // Getters and Setters
     public Long getId() {
         return id;
@@ -168,14 +220,6 @@ public class Expense {
         this.receiptImageUrl = receiptImageUrl;
     }
 
-    public String getOcrData() {
-        return ocrData;
-    }
-
-    public void setOcrData(String ocrData) {
-        this.ocrData = ocrData;
-    }
-
     public String getLocation() {
         return location;
     }
@@ -184,6 +228,30 @@ public class Expense {
         this.location = location;
     }
 
+    public BigDecimal getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(BigDecimal latitude) {
+        this.latitude = latitude;
+    }
+
+    public BigDecimal getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(BigDecimal longitude) {
+        this.longitude = longitude;
+    }
+
+    public Long getGeoCell() {
+        return geoCell;
+    }
+
+    public void setGeoCell(Long geoCell) {
+        this.geoCell = geoCell;
+    }
+
     public String getTags() {
         return tags;
     }
@@ -224,6 +292,30 @@ public class Expense {
         this.updatedAt = updatedAt;
     }
 
+    public Long getChangeSeq() {
+        return changeSeq;
+    }
+
+    public void setChangeSeq(Long changeSeq) {
+        this.changeSeq = changeSeq;
+    }
+
+    public Integer getSampleKey() {
+        return sampleKey;
+    }
+
+    public void setSampleKey(Integer sampleKey) {
+        this.sampleKey = sampleKey;
+    }
+
+    public List<Long> getPossibleDuplicateIds() {
+        return possibleDuplicateIds;
+    }
+
+    public void setPossibleDuplicateIds(List<Long> possibleDuplicateIds) {
+        this.possibleDuplicateIds = possibleDuplicateIds;
+    }
+
     @Override
     public String toString() {
         return "Expense{" +
@@ -0,0 +1,76 @@
+package com.expensetracker.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "expense_tombstones",
+       indexes = {
+           @Index(name = "idx_expense_tombstones_user_change_seq", columnList = "user_id, change_seq"),
+           @Index(name = "idx_expense_tombstones_deleted_at", columnList = "deleted_at")
+       })
+public class ExpenseTombstone {
+
+    @Id
+    @Column(name = "expense_id")
+    private Long expenseId;
+
+    @JsonIgnore
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @JsonIgnore
+    @Column(name = "change_seq", nullable = false)
+    private Long changeSeq;
+
+    @Column(name = "deleted_at", nullable = false)
+    private LocalDateTime deletedAt;
+
+    // Constructors
+    public ExpenseTombstone() {}
+
+    // Getters and Setters
+    public Long getExpenseId() {
+        return expenseId;
+    }
+
+    public void setExpenseId(Long expenseId) {
+        this.expenseId = expenseId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getChangeSeq() {
+        return changeSeq;
+    }
+
+    public void setChangeSeq(Long changeSeq) {
+        this.changeSeq = changeSeq;
+    }
+
+    public LocalDateTime getDeletedAt() {
+        return deletedAt;
+    }
+
+    public void setDeletedAt(LocalDateTime deletedAt) {
+        this.deletedAt = deletedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "ExpenseTombstone{" +
+                "expenseId=" + expenseId +
+                ", userId=" + userId +
+                ", changeSeq=" + changeSeq +
+                ", deletedAt=" + deletedAt +
+                '}';
+    }
+}
@@ -0,0 +1,132 @@
+package com.expensetracker.model;
+
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+@Entity
+@Table(name = "idempotency_keys")
+@IdClass(IdempotencyRecord.Key.class)
+public class IdempotencyRecord {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Column(name = "key_hash")
+    private Long keyHash;
+
+    @Column(name = "request_hash", nullable = false)
+    private Long requestHash;
+
+    @Column(name = "status_code")
+    private Integer statusCode;
+
+    @Lob
+    @Column(name = "response_body")
+    private byte[] responseBody;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // Constructors
+    public IdempotencyRecord() {}
+
+    // Getters and Setters
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getKeyHash() {
+        return keyHash;
+    }
+
+    public void setKeyHash(Long keyHash) {
+        this.keyHash = keyHash;
+    }
+
+    public Long getRequestHash() {
+        return requestHash;
+    }
+
+    public void setRequestHash(Long requestHash) {
+        this.requestHash = requestHash;
+    }
+
+    public Integer getStatusCode() {
+        return statusCode;
+    }
+
+    public void setStatusCode(Integer statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    public byte[] getResponseBody() {
+        return responseBody;
+    }
+
+    public void setResponseBody(byte[] responseBody) {
+        this.responseBody = responseBody;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return "IdempotencyRecord{" +
+                "userId=" + userId +
+                ", keyHash=" + keyHash +
+                ", statusCode=" + statusCode +
+                ", createdAt=" + createdAt +
+                '}';
+    }
+
+    /**
+     * Primary key: the user and the hash of their key
+     */
+    public static class Key implements Serializable {
+        private Long userId;
+        private Long keyHash;
+
+        public Key() {}
+
+        public Key(Long userId, Long keyHash) {
+            this.userId = userId;
+            this.keyHash = keyHash;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public Long getKeyHash() {
+            return keyHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return Objects.equals(userId, key.userId) && Objects.equals(keyHash, key.keyHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, keyHash);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.expensetracker.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "receipts")
+@EntityListeners(AuditingEntityListener.class)
+public class Receipt {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @JsonIgnore
+    @OneToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "expense_id", nullable = false, unique = true)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Expense expense;
+
+    @Column(name = "image_url", length = 500)
+    private String imageUrl;
+
+    @Column(name = "ocr_text", columnDefinition = "TEXT")
+    private String ocrText;
+
+    @Column(name = "ocr_confidence", precision = 5, scale = 2)
+    private BigDecimal ocrConfidence;
+
+    @Column(name = "merchant_name", length = 200)
+    private String merchantName;
+
+    @Column(name = "total_amount", precision = 15, scale = 2)
+    private BigDecimal totalAmount;
+
+    @Column(name = "tax_amount", precision = 15, scale = 2)
+    private BigDecimal taxAmount;
+
+    @Column(name = "date_from_receipt")
+    private LocalDate dateFromReceipt;
+
+    @Column(columnDefinition = "JSON")
+    private String items;
+
+    @Column(name = "ocr_data", columnDefinition = "JSON")
+    private String ocrData;
+
+    @CreatedDate
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // Constructors
+    public Receipt() {}
+
+    public Receipt(Expense expense) {
+        this.expense = expense;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Expense getExpense() {
+        return expense;
+    }
+
+    public void setExpense(Expense expense) {
+        this.expense = expense;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    public void setImageUrl(String imageUrl) {
+        this.imageUrl = imageUrl;
+    }
+
+    public String getOcrText() {
+        return ocrText;
+    }
+
+    public void setOcrText(String ocrText) {
+        this.ocrText = ocrText;
+    }
+
+    public BigDecimal getOcrConfidence() {
+        return ocrConfidence;
+    }
+
+    public void setOcrConfidence(BigDecimal ocrConfidence) {
+        this.ocrConfidence = ocrConfidence;
+    }
+
+    public String getMerchantName() {
+        return merchantName;
+    }
+
+    public void setMerchantName(String merchantName) {
+        this.merchantName = merchantName;
+    }
+
+    public BigDecimal getTotalAmount() {
+        return totalAmount;
+    }
+
+    public void setTotalAmount(BigDecimal totalAmount) {
+        this.totalAmount = totalAmount;
+    }
+
+    public BigDecimal getTaxAmount() {
+        return taxAmount;
+    }
+
+    public void setTaxAmount(BigDecimal taxAmount) {
+        this.taxAmount = taxAmount;
+    }
+
+    public LocalDate getDateFromReceipt() {
+        return dateFromReceipt;
+    }
+
+    public void setDateFromReceipt(LocalDate dateFromReceipt) {
+        this.dateFromReceipt = dateFromReceipt;
+    }
+
+    public String getItems() {
+        return items;
+    }
+
+    public void setItems(String items) {
+        this.items = items;
+    }
+
+    public String getOcrData() {
+        return ocrData;
+    }
+
+    public void setOcrData(String ocrData) {
+        this.ocrData = ocrData;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return "Receipt{" +
+                "id=" + id +
+                ", imageUrl='" + imageUrl + '\'' +
+                ", merchantName='" + merchantName + '\'' +
+                ", totalAmount=" + totalAmount +
+                ", ocrConfidence=" + ocrConfidence +
+                ", createdAt=" + createdAt +
+                '}';
+    }
+}
@@ -0,0 +1,55 @@
+package com.expensetracker.model;
+
+import jakarta.persistence.*;
+
+@Entity
+@Table(name = "sync_sequences")
+public class SyncSequence {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "change_seq", nullable = false)
+    private Long changeSeq = 0L;
+
+    @Column(name = "floor_seq", nullable = false)
+    private Long floorSeq = 0L;
+
+    // Constructors
+    public SyncSequence() {}
+
+    // Getters and Setters
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getChangeSeq() {
+        return changeSeq;
+    }
+
+    public void setChangeSeq(Long changeSeq) {
+        this.changeSeq = changeSeq;
+    }
+
+    public Long getFloorSeq() {
+        return floorSeq;
+    }
+
+    public void setFloorSeq(Long floorSeq) {
+        this.floorSeq = floorSeq;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncSequence{" +
+                "userId=" + userId +
+                ", changeSeq=" + changeSeq +
+                ", floorSeq=" + floorSeq +
+                '}';
+    }
+}
@@ -38,8 +38,10 @@ public interface CategoryRepository extends JpaRepository<Category, Long> {
     boolean existsByNameAndUserId(String name, Long userId);
 
     /**
-     * Find categories by user with usage count
+     * Find categories by user with usage count from the materialized counters
      */
-    @Query("SELECT c, COUNT(e) FROM Category c LEFT JOIN c.expenses e WHERE c.user.id = :userId GROUP BY c")
+    @Query("SELECT c, COALESCE(u.usageCount, 0) FROM Category c " +
+           "LEFT JOIN CategoryUsage u ON u.categoryId = c.id AND u.userId = :userId " +
+           "WHERE c.user.id = :userId")
     List<Object[]> findCategoriesWithUsageCount(@Param("userId") Long userId);
 } 
\ No newline at end of file
@@ -0,0 +1,82 @@
+package com.expensetracker.repository;
+
+import com.expensetracker.model.CategoryUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface CategoryUsageRepository extends JpaRepository<CategoryUsage, Long> {
+
+    /**
+     * Find usage counters for user, most used first
+     */
+    List<CategoryUsage> findByUserIdOrderByUsageCountDesc(Long userId);
+
+    /**
+     * Find usage counters for user, most recently used first
+     */
+    List<CategoryUsage> findByUserIdOrderByLastUsedAtDesc(Long userId);
+
+    /**
+     * Record one more expense in a category
+     */
+    @Modifying
+    @Query(value = "INSERT INTO category_usage (user_id, category_id, usage_count, last_used_at) " +
+                   "VALUES (:userId, :categoryId, 1, :usedAt) " +
+                   "ON DUPLICATE KEY UPDATE usage_count = usage_count + 1, " +
+                   "last_used_at = GREATEST(COALESCE(last_used_at, VALUES(last_used_at)), VALUES(last_used_at))",
+           nativeQuery = true)
+    void increment(@Param("userId") Long userId,
+                   @Param("categoryId") Long categoryId,
+                   @Param("usedAt") LocalDateTime usedAt);
+
+    /**
+     * Record one fewer expense in a category
+     */
+    @Modifying
+    @Query(value = "UPDATE category_usage SET usage_count = GREATEST(usage_count - 1, 0) " +
+                   "WHERE user_id = :userId AND category_id = :categoryId",
+           nativeQuery = true)
+    void decrement(@Param("userId") Long userId, @Param("categoryId") Long categoryId);
+
+    /**
+     * Recompute every counter from the live expenses table
+     */
+    @Modifying
+    @Query(value = "INSERT INTO category_usage (user_id, category_id, usage_count, last_used_at) " +
+                   "SELECT e.user_id, e.category_id, COUNT(*), MAX(e.created_at) FROM expenses e " +
+                   "WHERE e.category_id IS NOT NULL GROUP BY e.user_id, e.category_id " +
+                   "ON DUPLICATE KEY UPDATE usage_count = VALUES(usage_count), last_used_at = VALUES(last_used_at)",
+           nativeQuery = true)
+    int reconcileCounts();
+
+    /**
+     * Add archived expenses to a counter; archiving leaves counters alone, so only the
+     * reconcile, which rebuilds them from the live table, needs this. Segments outlive
+     * deleted users and categories, whose counters are skipped.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO category_usage (user_id, category_id, usage_count) " +
+                   "SELECT u.id, c.id, :count FROM users u JOIN categories c ON c.id = :categoryId " +
+                   "WHERE u.id = :userId " +
+                   "ON DUPLICATE KEY UPDATE usage_count = usage_count + VALUES(usage_count)",
+           nativeQuery = true)
+    void addArchived(@Param("userId") Long userId,
+                     @Param("categoryId") Long categoryId,
+                     @Param("count") long count);
+
+    /**
+     * Zero counters whose category no longer has any live expenses for the user
+     */
+    @Modifying
+    @Query(value = "UPDATE category_usage u SET u.usage_count = 0 WHERE u.usage_count > 0 AND NOT EXISTS (" +
+                   "SELECT 1 FROM expenses e WHERE e.user_id = u.user_id AND e.category_id = u.category_id)",
+           nativeQuery = true)
+    int reconcileEmpty();
+}
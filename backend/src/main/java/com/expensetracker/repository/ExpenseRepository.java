@@ -1,19 +1,27 @@
 package com.expensetracker.repository;
 
+import com.expensetracker.dto.CategorySpending;
+import com.expensetracker.dto.MonthlySpending;
+import com.expensetracker.dto.SpendingTrendPoint;
 import com.expensetracker.model.Expense;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
-public interface ExpenseRepository extends JpaRepository<Expense, Long> {
+public interface ExpenseRepository extends JpaRepository<Expense, Long>, ExpenseRepositoryCustom {
 
     /**
      * Find expenses by user with pagination
@@ -80,32 +88,33 @@ public interface ExpenseRepository extends JpaRepository<Expense, Long> {
                                                                @Param("endDate") LocalDate endDate);
 
     /**
-     * Get spending by category for user
+     * Get spending by category id for user; names are resolved from the category catalogue
      */
-    @Query("SELECT e.category.id, e.category.name, SUM(e.amount), COUNT(e) " +
-           "FROM Expense e WHERE e.user.id = :userId AND e.date BETWEEN :startDate AND :endDate " +
-           "GROUP BY e.category.id, e.category.name")
-    List<Object[]> getSpendingByCategory(@Param("userId") Long userId,
+    @Query("SELECT new com.expensetracker.dto.CategorySpending(e.category.id, SUM(e.amount), COUNT(e)) " +
+           "FROM Expense e WHERE e.user.id = :userId AND e.category IS NOT NULL " +
+           "AND e.date BETWEEN :startDate AND :endDate " +
+           "GROUP BY e.category.id")
+    List<CategorySpending> getSpendingByCategory(@Param("userId") Long userId,
                                        @Param("startDate") LocalDate startDate,
                                        @Param("endDate") LocalDate endDate);
 
     /**
      * Get spending trend by period
      */
-    @Query("SELECT DATE(e.date), SUM(e.amount), COUNT(e) " +
+    @Query("SELECT new com.expensetracker.dto.SpendingTrendPoint(e.date, SUM(e.amount), COUNT(e)) " +
            "FROM Expense e WHERE e.user.id = :userId AND e.date BETWEEN :startDate AND :endDate " +
-           "GROUP BY DATE(e.date) ORDER BY DATE(e.date)")
-    List<Object[]> getSpendingTrend(@Param("userId") Long userId,
+           "GROUP BY e.date ORDER BY e.date")
+    List<SpendingTrendPoint> getSpendingTrend(@Param("userId") Long userId,
                                    @Param("startDate") LocalDate startDate,
                                    @Param("endDate") LocalDate endDate);
 
     /**
      * Get monthly spending for user
      */
-    @Query("SELECT YEAR(e.date), MONTH(e.date), SUM(e.amount) " +
+    @Query("SELECT new com.expensetracker.dto.MonthlySpending(YEAR(e.date), MONTH(e.date), SUM(e.amount)) " +
            "FROM Expense e WHERE e.user.id = :userId AND e.date BETWEEN :startDate AND :endDate " +
            "GROUP BY YEAR(e.date), MONTH(e.date) ORDER BY YEAR(e.date), MONTH(e.date)")
-    List<Object[]> getMonthlySpending(@Param("userId") Long userId,
+    List<MonthlySpending> getMonthlySpending(@Param("userId") Long userId,
                                      @Param("startDate") LocalDate startDate,
                                      @Param("endDate") LocalDate endDate);
 
@@ -133,4 +142,163 @@ public interface ExpenseRepository extends JpaRepository<Expense, Long> {
     BigDecimal getAverageDailySpending(@Param("userId") Long userId,
                                      @Param("startDate") LocalDate startDate,
                                      @Param("endDate") LocalDate endDate);
-} 
\ No newline at end of file
+
+    /**
+     * Days in the date range on which the user has expenses
+     */
+    @Query("SELECT DISTINCT e.date FROM Expense e WHERE e.user.id = :userId AND e.date BETWEEN :startDate AND :endDate")
+    List<LocalDate> findExpenseDates(@Param("userId") Long userId,
+                                     @Param("startDate") LocalDate startDate,
+                                     @Param("endDate") LocalDate endDate);
+
+    /**
+     * Count, total and sum of squared amounts of the user's expenses in the given sample
+     * keys and date range, as a single group keyed 0
+     */
+    @Query(value = "SELECT 0, COUNT(*), SUM(e.amount), SUM(e.amount * e.amount) " +
+                   "FROM expenses e WHERE e.user_id = :userId AND e.sample_key IN (:sampleKeys) " +
+                   "AND e.date BETWEEN :startDate AND :endDate",
+           nativeQuery = true)
+    List<Object[]> sampleTotals(@Param("userId") Long userId,
+                                @Param("sampleKeys") Collection<Integer> sampleKeys,
+                                @Param("startDate") LocalDate startDate,
+                                @Param("endDate") LocalDate endDate);
+
+    /**
+     * Count, total and sum of squared amounts per category id of the user's categorized
+     * expenses in the given sample keys and date range
+     */
+    @Query(value = "SELECT e.category_id, COUNT(*), SUM(e.amount), SUM(e.amount * e.amount) " +
+                   "FROM expenses e WHERE e.user_id = :userId AND e.sample_key IN (:sampleKeys) " +
+                   "AND e.date BETWEEN :startDate AND :endDate AND e.category_id IS NOT NULL " +
+                   "GROUP BY e.category_id",
+           nativeQuery = true)
+    List<Object[]> sampleSpendingByCategory(@Param("userId") Long userId,
+                                            @Param("sampleKeys") Collection<Integer> sampleKeys,
+                                            @Param("startDate") LocalDate startDate,
+                                            @Param("endDate") LocalDate endDate);
+
+    /**
+     * Count, total and sum of squared amounts per month of the user's expenses in the given
+     * sample keys and date range; months are keyed year * 12 + month - 1
+     */
+    @Query(value = "SELECT YEAR(e.date) * 12 + MONTH(e.date) - 1 AS month_key, COUNT(*), SUM(e.amount), " +
+                   "SUM(e.amount * e.amount) " +
+                   "FROM expenses e WHERE e.user_id = :userId AND e.sample_key IN (:sampleKeys) " +
+                   "AND e.date BETWEEN :startDate AND :endDate " +
+                   "GROUP BY month_key",
+           nativeQuery = true)
+    List<Object[]> sampleMonthlySpending(@Param("userId") Long userId,
+                                         @Param("sampleKeys") Collection<Integer> sampleKeys,
+                                         @Param("startDate") LocalDate startDate,
+                                         @Param("endDate") LocalDate endDate);
+
+    /**
+     * Whether any of the user's expenses has the given sample key
+     */
+    boolean existsByUserIdAndSampleKey(Long userId, Integer sampleKey);
+
+    /**
+     * Ids of expenses still without a sample key, after the given id in id order
+     */
+    @Query("SELECT e.id FROM Expense e WHERE e.id > :afterId AND e.sampleKey = " + Expense.UNSAMPLED + " ORDER BY e.id")
+    List<Long> findUnsampledAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Spread expenses without a sample key over the keys by a hash of their id
+     */
+    @Modifying
+    @Query(value = "UPDATE expenses SET sample_key = CRC32(id) % " + Expense.SAMPLE_KEYS + " " +
+                   "WHERE id IN (:ids) AND sample_key = " + Expense.UNSAMPLED,
+           nativeQuery = true)
+    int assignSampleKeys(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Users and years with expenses dated before the cutoff; expenses with a stored receipt scan stay live
+     */
+    @Query(value = "SELECT DISTINCT e.user_id, YEAR(e.date) FROM expenses e WHERE e.date < :cutoff " +
+                   "AND NOT EXISTS (SELECT 1 FROM receipts r WHERE r.expense_id = e.id)", nativeQuery = true)
+    List<Object[]> findArchivableUserYears(@Param("cutoff") LocalDate cutoff);
+
+    /**
+     * Lock a user's archivable expenses in a date range so concurrent edits wait for the archive to commit
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e FROM Expense e WHERE e.user.id = :userId AND e.date BETWEEN :startDate AND :endDate " +
+           "AND NOT EXISTS (SELECT r.id FROM Receipt r WHERE r.expense = e)")
+    List<Expense> findArchivable(@Param("userId") Long userId,
+                                 @Param("startDate") LocalDate startDate,
+                                 @Param("endDate") LocalDate endDate);
+
+    /**
+     * Find the user's expenses written after a sync position, in sequence order
+     */
+    @Query("SELECT e FROM Expense e WHERE e.user.id = :userId " +
+           "AND (e.changeSeq > :changeSeq OR (e.changeSeq = :changeSeq AND e.id > :expenseId)) " +
+           "ORDER BY e.changeSeq, e.id")
+    List<Expense> findChangedAfter(@Param("userId") Long userId,
+                                   @Param("changeSeq") Long changeSeq,
+                                   @Param("expenseId") Long expenseId,
+                                   Pageable pageable);
+
+    /**
+     * Id, amount, date and title of every expense of the user, for the duplicate index
+     */
+    @Query("SELECT e.id, e.amount, e.date, e.title FROM Expense e WHERE e.user.id = :userId")
+    List<Object[]> findSimilarityFields(@Param("userId") Long userId);
+
+    /**
+     * Title and category pairs of the user's categorized expenses, least frequent and
+     * least recent first, for the categorization history
+     */
+    @Query("SELECT e.title, e.category.id FROM Expense e WHERE e.user.id = :userId AND e.category IS NOT NULL " +
+           "GROUP BY e.title, e.category.id ORDER BY COUNT(e), MAX(e.id)")
+    List<Object[]> findCategoryHistory(@Param("userId") Long userId);
+
+    /**
+     * Count, total and mean position of the user's expenses per map cluster within one
+     * range of grid cells; a cluster is a cell code with its low shift bits dropped
+     */
+    @Query(value = "SELECT e.geo_cell >> :shift AS cluster, COUNT(*), SUM(e.amount), AVG(e.latitude), AVG(e.longitude) " +
+                   "FROM expenses e WHERE e.user_id = :userId AND e.geo_cell BETWEEN :fromCell AND :toCell " +
+                   "AND e.latitude BETWEEN :south AND :north AND e.longitude BETWEEN :west AND :east " +
+                   "AND e.date BETWEEN :startDate AND :endDate " +
+                   "GROUP BY cluster",
+           nativeQuery = true)
+    List<Object[]> getSpendingClusters(@Param("userId") Long userId,
+                                       @Param("fromCell") long fromCell,
+                                       @Param("toCell") long toCell,
+                                       @Param("shift") int shift,
+                                       @Param("south") BigDecimal south,
+                                       @Param("west") BigDecimal west,
+                                       @Param("north") BigDecimal north,
+                                       @Param("east") BigDecimal east,
+                                       @Param("startDate") LocalDate startDate,
+                                       @Param("endDate") LocalDate endDate);
+
+    /**
+     * Distinct user and location pairs of expenses without coordinates, after a position
+     * in (user, location) order, for the coordinate backfill
+     */
+    @Query("SELECT DISTINCT e.user.id, e.location FROM Expense e WHERE e.geoCell IS NULL AND e.location IS NOT NULL " +
+           "AND (e.user.id > :userId OR (e.user.id = :userId AND e.location > :location)) " +
+           "ORDER BY e.user.id, e.location")
+    List<Object[]> findUnlocatedAfter(@Param("userId") Long userId,
+                                      @Param("location") String location,
+                                      Pageable pageable);
+
+    /**
+     * Set coordinates on the user's expenses at a location that have none yet
+     */
+    @Modifying
+    @Query("UPDATE Expense e SET e.latitude = :latitude, e.longitude = :longitude, e.geoCell = :geoCell, " +
+           "e.changeSeq = :changeSeq, e.updatedAt = :updatedAt " +
+           "WHERE e.user.id = :userId AND e.location = :location AND e.geoCell IS NULL")
+    int updateCoordinates(@Param("userId") Long userId,
+                          @Param("location") String location,
+                          @Param("latitude") BigDecimal latitude,
+                          @Param("longitude") BigDecimal longitude,
+                          @Param("geoCell") Long geoCell,
+                          @Param("changeSeq") Long changeSeq,
+                          @Param("updatedAt") LocalDateTime updatedAt);
+}
@@ -0,0 +1,54 @@
+package com.expensetracker.repository;
+
+import com.expensetracker.dto.ExpenseFilter;
+import com.expensetracker.model.Expense;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+public interface ExpenseRepositoryCustom {
+
+    /**
+     * Expense fields that can be requested through a sparse fieldset
+     */
+    Set<String> SELECTABLE_FIELDS = Set.of(
+            "id", "title", "description", "amount", "currencyCode", "date", "categoryId",
+            "receiptImageUrl", "location", "latitude", "longitude", "tags", "isReimbursable", "status",
+            "createdAt", "updatedAt");
+
+    /**
+     * Find expenses by user selecting only the requested columns
+     */
+    Page<Map<String, Object>> findFieldsByUserId(Long userId, Collection<String> fields,
+                                                 ExpenseFilter filter, Pageable pageable);
+
+    /**
+     * Find expenses by user with the filters applied in SQL, so page offsets and totals
+     * count matching rows only
+     */
+    Page<Expense> findFiltered(Long userId, ExpenseFilter filter, Pageable pageable);
+
+    /**
+     * Find one expense by user selecting only the requested columns
+     */
+    Optional<Map<String, Object>> findFieldsByIdAndUserId(Long id, Long userId, Collection<String> fields);
+
+    /**
+     * Find the user's expenses inside a box whose grid cells are covered by the given
+     * inclusive cell ranges, newest first; a west edge east of the east edge crosses the antimeridian
+     */
+    List<Expense> findInCells(Long userId, long[] cellRanges, double south, double west, double north, double east,
+                              ExpenseFilter filter, int limit);
+
+    /**
+     * Id, latitude and longitude of every expense findInCells would return, in no order;
+     * lets callers rank the whole box by distance before loading any expense
+     */
+    List<Object[]> findCoordinatesInCells(Long userId, long[] cellRanges, double south, double west,
+                                          double north, double east, ExpenseFilter filter);
+}
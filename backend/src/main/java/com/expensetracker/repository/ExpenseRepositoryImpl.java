@@ -0,0 +1,219 @@
+package com.expensetracker.repository;
+
+import com.expensetracker.dto.ExpenseFilter;
+import com.expensetracker.model.Expense;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TupleElement;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Sparse fieldset queries: only the requested columns are selected, so
+ * TEXT and JSON columns are never read unless asked for.
+ */
+public class ExpenseRepositoryImpl implements ExpenseRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Page<Map<String, Object>> findFieldsByUserId(Long userId, Collection<String> fields,
+                                                        ExpenseFilter filter, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Expense> root = query.from(Expense.class);
+        query.multiselect(selections(root, fields));
+        query.where(predicates(cb, root, userId, filter));
+        if (pageable.getSort().isSorted()) {
+            query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, cb));
+        }
+
+        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
+        if (pageable.isPaged()) {
+            typedQuery.setFirstResult((int) pageable.getOffset());
+            typedQuery.setMaxResults(pageable.getPageSize());
+        }
+        List<Map<String, Object>> rows = typedQuery.getResultList().stream()
+                .map(ExpenseRepositoryImpl::toMap)
+                .collect(Collectors.toList());
+
+        CriteriaQuery<Long> countQuery = cb.createQuery(Long.class);
+        Root<Expense> countRoot = countQuery.from(Expense.class);
+        countQuery.select(cb.count(countRoot));
+        countQuery.where(predicates(cb, countRoot, userId, filter));
+        long total = entityManager.createQuery(countQuery).getSingleResult();
+
+        return new PageImpl<>(rows, pageable, total);
+    }
+
+    @Override
+    public Page<Expense> findFiltered(Long userId, ExpenseFilter filter, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<Expense> query = cb.createQuery(Expense.class);
+        Root<Expense> root = query.from(Expense.class);
+        query.where(predicates(cb, root, userId, filter));
+        if (pageable.getSort().isSorted()) {
+            query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, cb));
+        }
+
+        TypedQuery<Expense> typedQuery = entityManager.createQuery(query);
+        if (pageable.isPaged()) {
+            typedQuery.setFirstResult((int) pageable.getOffset());
+            typedQuery.setMaxResults(pageable.getPageSize());
+        }
+        List<Expense> expenses = typedQuery.getResultList();
+
+        CriteriaQuery<Long> countQuery = cb.createQuery(Long.class);
+        Root<Expense> countRoot = countQuery.from(Expense.class);
+        countQuery.select(cb.count(countRoot));
+        countQuery.where(predicates(cb, countRoot, userId, filter));
+        long total = entityManager.createQuery(countQuery).getSingleResult();
+
+        return new PageImpl<>(expenses, pageable, total);
+    }
+
+    @Override
+    public Optional<Map<String, Object>> findFieldsByIdAndUserId(Long id, Long userId, Collection<String> fields) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Expense> root = query.from(Expense.class);
+        query.multiselect(selections(root, fields));
+        query.where(cb.equal(root.get("id"), id), cb.equal(root.get("user").get("id"), userId));
+
+        return entityManager.createQuery(query).getResultList().stream()
+                .findFirst()
+                .map(ExpenseRepositoryImpl::toMap);
+    }
+
+    @Override
+    public List<Expense> findInCells(Long userId, long[] cellRanges, double south, double west, double north, double east,
+                                     ExpenseFilter filter, int limit) {
+        if (cellRanges.length == 0) {
+            return List.of();
+        }
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<Expense> query = cb.createQuery(Expense.class);
+        Root<Expense> root = query.from(Expense.class);
+        query.where(cellPredicates(cb, root, userId, cellRanges, south, west, north, east, filter));
+        query.orderBy(cb.desc(root.get("date")), cb.desc(root.get("id")));
+
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    @Override
+    public List<Object[]> findCoordinatesInCells(Long userId, long[] cellRanges, double south, double west,
+                                                 double north, double east, ExpenseFilter filter) {
+        if (cellRanges.length == 0) {
+            return List.of();
+        }
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<Object[]> query = cb.createQuery(Object[].class);
+        Root<Expense> root = query.from(Expense.class);
+        query.multiselect(root.get("id"), root.get("latitude"), root.get("longitude"));
+        query.where(cellPredicates(cb, root, userId, cellRanges, south, west, north, east, filter));
+
+        return entityManager.createQuery(query).getResultList();
+    }
+
+    private static Predicate[] cellPredicates(CriteriaBuilder cb, Root<Expense> root, Long userId, long[] cellRanges,
+                                              double south, double west, double north, double east,
+                                              ExpenseFilter filter) {
+        List<Predicate> predicates = new ArrayList<>(List.of(predicates(cb, root, userId, filter)));
+        // One index range per covering cell; the coordinates then trim the cells to the box
+        Predicate[] cells = new Predicate[cellRanges.length / 2];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = cb.between(root.get("geoCell"), cellRanges[2 * i], cellRanges[2 * i + 1]);
+        }
+        predicates.add(cb.or(cells));
+        predicates.add(cb.between(root.get("latitude"), BigDecimal.valueOf(south), BigDecimal.valueOf(north)));
+        Path<BigDecimal> longitude = root.get("longitude");
+        predicates.add(west <= east
+                ? cb.between(longitude, BigDecimal.valueOf(west), BigDecimal.valueOf(east))
+                : cb.or(cb.greaterThanOrEqualTo(longitude, BigDecimal.valueOf(west)),
+                        cb.lessThanOrEqualTo(longitude, BigDecimal.valueOf(east))));
+        return predicates.toArray(new Predicate[0]);
+    }
+
+    private static List<Selection<?>> selections(Root<Expense> root, Collection<String> fields) {
+        // id is always returned so clients can address the row
+        Set<String> selected = new LinkedHashSet<>();
+        selected.add("id");
+        for (String field : fields) {
+            if (!SELECTABLE_FIELDS.contains(field)) {
+                throw new IllegalArgumentException("Unknown expense field: " + field);
+            }
+            selected.add(field);
+        }
+
+        List<Selection<?>> selections = new ArrayList<>(selected.size());
+        for (String field : selected) {
+            Path<?> path = "categoryId".equals(field) ? root.get("category").get("id") : root.get(field);
+            selections.add(path.alias(field));
+        }
+        return selections;
+    }
+
+    private static Predicate[] predicates(CriteriaBuilder cb, Root<Expense> root, Long userId, ExpenseFilter filter) {
+        List<Predicate> predicates = new ArrayList<>();
+        predicates.add(cb.equal(root.get("user").get("id"), userId));
+        if (filter != null) {
+            if (filter.getCategoryId() != null) {
+                predicates.add(cb.equal(root.get("category").get("id"), filter.getCategoryId()));
+            }
+            if (filter.getStartDate() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("date"), filter.getStartDate()));
+            }
+            if (filter.getEndDate() != null) {
+                predicates.add(cb.lessThanOrEqualTo(root.get("date"), filter.getEndDate()));
+            }
+            if (filter.getCurrency() != null) {
+                predicates.add(cb.equal(root.get("currencyCode"), filter.getCurrency()));
+            }
+            if (filter.getMinAmount() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("amount"), filter.getMinAmount()));
+            }
+            if (filter.getMaxAmount() != null) {
+                predicates.add(cb.lessThanOrEqualTo(root.get("amount"), filter.getMaxAmount()));
+            }
+            if (filter.getTags() != null) {
+                predicates.add(cb.like(root.get("tags"), "%" + filter.getTags() + "%"));
+            }
+        }
+        return predicates.toArray(new Predicate[0]);
+    }
+
+    private static Map<String, Object> toMap(Tuple tuple) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (TupleElement<?> element : tuple.getElements()) {
+            row.put(element.getAlias(), tuple.get(element));
+        }
+        return row;
+    }
+}
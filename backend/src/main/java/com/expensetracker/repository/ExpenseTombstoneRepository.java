@@ -0,0 +1,46 @@
+package com.expensetracker.repository;
+
+import com.expensetracker.model.ExpenseTombstone;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ExpenseTombstoneRepository extends JpaRepository<ExpenseTombstone, Long> {
+
+    /**
+     * Record a deleted expense
+     */
+    @Modifying
+    @Query(value = "INSERT INTO expense_tombstones (expense_id, user_id, change_seq, deleted_at) " +
+                   "VALUES (:expenseId, :userId, :changeSeq, :deletedAt)",
+           nativeQuery = true)
+    void insert(@Param("expenseId") Long expenseId,
+                @Param("userId") Long userId,
+                @Param("changeSeq") Long changeSeq,
+                @Param("deletedAt") LocalDateTime deletedAt);
+
+    /**
+     * Find the user's deletions after a sync position, in sequence order
+     */
+    @Query("SELECT t FROM ExpenseTombstone t WHERE t.userId = :userId " +
+           "AND (t.changeSeq > :changeSeq OR (t.changeSeq = :changeSeq AND t.expenseId > :expenseId)) " +
+           "ORDER BY t.changeSeq, t.expenseId")
+    List<ExpenseTombstone> findChangedAfter(@Param("userId") Long userId,
+                                            @Param("changeSeq") Long changeSeq,
+                                            @Param("expenseId") Long expenseId,
+                                            Pageable pageable);
+
+    /**
+     * Delete tombstones older than the retention window
+     */
+    @Modifying
+    @Query(value = "DELETE FROM expense_tombstones WHERE deleted_at < :before", nativeQuery = true)
+    int deleteDeletedBefore(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,60 @@
+package com.expensetracker.repository;
+
+import com.expensetracker.model.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, IdempotencyRecord.Key> {
+
+    Optional<IdempotencyRecord> findByUserIdAndKeyHash(Long userId, Long keyHash);
+
+    /**
+     * Claim a key before running the request; a concurrent claim of the same key waits
+     * on the row lock and fails with a duplicate key once this transaction commits
+     */
+    @Modifying
+    @Query(value = "INSERT INTO idempotency_keys (user_id, key_hash, request_hash, created_at) " +
+                   "VALUES (:userId, :keyHash, :requestHash, :createdAt)",
+           nativeQuery = true)
+    void reserve(@Param("userId") Long userId,
+                 @Param("keyHash") Long keyHash,
+                 @Param("requestHash") Long requestHash,
+                 @Param("createdAt") LocalDateTime createdAt);
+
+    /**
+     * Store the response of a claimed key
+     */
+    @Modifying
+    @Query(value = "UPDATE idempotency_keys SET status_code = :statusCode, response_body = :responseBody " +
+                   "WHERE user_id = :userId AND key_hash = :keyHash",
+           nativeQuery = true)
+    void complete(@Param("userId") Long userId,
+                  @Param("keyHash") Long keyHash,
+                  @Param("statusCode") Integer statusCode,
+                  @Param("responseBody") byte[] responseBody);
+
+    /**
+     * Delete one key if it has expired but not been pruned yet
+     */
+    @Modifying
+    @Query(value = "DELETE FROM idempotency_keys WHERE user_id = :userId AND key_hash = :keyHash " +
+                   "AND created_at < :before",
+           nativeQuery = true)
+    int deleteExpired(@Param("userId") Long userId,
+                      @Param("keyHash") Long keyHash,
+                      @Param("before") LocalDateTime before);
+
+    /**
+     * Delete keys older than the retention window
+     */
+    @Modifying
+    @Query(value = "DELETE FROM idempotency_keys WHERE created_at < :before", nativeQuery = true)
+    int deleteCreatedBefore(@Param("before") LocalDateTime before);
+}
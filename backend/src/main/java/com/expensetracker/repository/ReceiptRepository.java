@@ -0,0 +1,24 @@
+package com.expensetracker.repository;
+
+import com.expensetracker.model.Receipt;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ReceiptRepository extends JpaRepository<Receipt, Long> {
+
+    /**
+     * Find the receipt attached to an expense
+     */
+    Optional<Receipt> findByExpenseId(Long expenseId);
+
+    /**
+     * Find the receipt attached to an expense owned by user
+     */
+    @Query("SELECT r FROM Receipt r WHERE r.expense.id = :expenseId AND r.expense.user.id = :userId")
+    Optional<Receipt> findByExpenseIdAndUserId(@Param("expenseId") Long expenseId, @Param("userId") Long userId);
+}
@@ -0,0 +1,47 @@
+package com.expensetracker.repository;
+
+import com.expensetracker.model.SyncSequence;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface SyncSequenceRepository extends JpaRepository<SyncSequence, Long> {
+
+    /**
+     * Advance the user's change sequence, locking the row until the transaction ends
+     */
+    @Modifying
+    @Query(value = "INSERT INTO sync_sequences (user_id, change_seq) VALUES (:userId, 1) " +
+                   "ON DUPLICATE KEY UPDATE change_seq = change_seq + 1",
+           nativeQuery = true)
+    void increment(@Param("userId") Long userId);
+
+    /**
+     * Current change sequence of the user, as seen by this transaction
+     */
+    @Query(value = "SELECT change_seq FROM sync_sequences WHERE user_id = :userId", nativeQuery = true)
+    Long findChangeSeq(@Param("userId") Long userId);
+
+    /**
+     * Highest sequence whose tombstone has been pruned for the user
+     */
+    @Query("SELECT s.floorSeq FROM SyncSequence s WHERE s.userId = :userId")
+    Optional<Long> findFloorSeq(@Param("userId") Long userId);
+
+    /**
+     * Raise each user's floor past the tombstones about to be pruned
+     */
+    @Modifying
+    @Query(value = "UPDATE sync_sequences s JOIN (" +
+                   "SELECT t.user_id, MAX(t.change_seq) AS seq FROM expense_tombstones t " +
+                   "WHERE t.deleted_at < :before GROUP BY t.user_id) pruned ON pruned.user_id = s.user_id " +
+                   "SET s.floor_seq = GREATEST(s.floor_seq, pruned.seq)",
+           nativeQuery = true)
+    int raiseFloors(@Param("before") LocalDateTime before);
+}
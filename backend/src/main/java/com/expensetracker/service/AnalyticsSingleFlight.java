@@ -0,0 +1,121 @@
+package com.expensetracker.service;
+
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical analytics calls that overlap in time. The first caller for a user,
+ * method and date range runs the computation; callers arriving while it runs wait for its
+ * result, or its exception, instead of running the same aggregation again. The key
+ * includes the user's data version, so a call made after a write commits never joins a
+ * computation that started before it. A waiter that gives up after
+ * analytics.single-flight.wait-timeout-ms runs the computation itself. Results are shared
+ * between callers and must not be modified.
+ *
+ * Calls are counted as expense.analytics.calls by method and outcome: computed, collapsed
+ * onto another caller's computation, or timed-out.
+ */
+@Service
+public class AnalyticsSingleFlight {
+
+    @Autowired
+    private DataVersionService dataVersionService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${analytics.single-flight.enabled:true}")
+    private boolean enabled;
+
+    @Value("${analytics.single-flight.wait-timeout-ms:10000}")
+    private long waitTimeoutMs;
+
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private Timer waitTimer;
+
+    @PostConstruct
+    void registerMetrics() {
+        waitTimer = Timer.builder("expense.analytics.single-flight.wait")
+                .description("Time callers waited for an identical analytics call already running")
+                .register(meterRegistry);
+        Gauge.builder("expense.analytics.single-flight.in-flight", inFlight, ConcurrentMap::size)
+                .description("Distinct analytics computations currently running")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Run the computation, or share the result of an identical one already running
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String method, Long userId, LocalDate startDate, LocalDate endDate, Supplier<T> computation) {
+        if (!enabled) {
+            return computation.get();
+        }
+        String key = userId + "|" + dataVersionService.etag(userId, method, startDate, endDate);
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, flight);
+        if (running == null) {
+            count(method, "computed");
+            try {
+                T result = computation.get();
+                flight.complete(result);
+                return result;
+            } catch (RuntimeException | Error e) {
+                flight.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, flight);
+            }
+        }
+
+        long started = System.nanoTime();
+        try {
+            Object result = running.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+            count(method, "collapsed");
+            return (T) result;
+        } catch (TimeoutException e) {
+            count(method, "timed-out");
+        } catch (ExecutionException e) {
+            count(method, "collapsed");
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new RuntimeException("Analytics computation failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for analytics result", e);
+        } finally {
+            waitTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+        return computation.get();
+    }
+
+    private void count(String method, String outcome) {
+        Counter.builder("expense.analytics.calls")
+                .description("Analytics calls by whether they ran the computation or shared another caller's")
+                .tag("method", method)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+}
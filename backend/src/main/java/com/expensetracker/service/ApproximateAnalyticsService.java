@@ -0,0 +1,231 @@
+package com.expensetracker.service;
+
+
+import com.expensetracker.config.ShardRoutingDataSource;
+import com.expensetracker.model.Expense;
+import com.expensetracker.repository.ExpenseRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Sampled aggregation for analytics over ranges too large to aggregate exactly in time.
+ * Every expense carries a random sample key from 0 to 63, so the expenses in k keys are a
+ * Bernoulli sample of the user's expenses at fraction k/64, read through the
+ * (user_id, sample_key, date) index without touching the rest. Keys are read in doubling
+ * rounds until the estimated total is within the target relative error, every key has
+ * been read (the answer is then exact), or another round would overrun the latency
+ * budget. Each group (category, month) is its own stratum: its total and count are
+ * scaled up by 1/fraction and reported with a 95% error bound from the sample variance.
+ *
+ * Expenses written before sample keys existed hold Expense.UNSAMPLED until a nightly
+ * backfill assigns their keys in small batches; until then their users are read in full.
+ */
+@Service
+public class ApproximateAnalyticsService {
+
+    private static final Logger log = LoggerFactory.getLogger(ApproximateAnalyticsService.class);
+
+    // Two-sided 95% normal quantile
+    private static final double Z_95 = 1.96;
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @Autowired
+    private ShardDirectoryService shardDirectoryService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${analytics.approximate.backfill.batch-size:5000}")
+    private int backfillBatchSize;
+
+    @Value("${analytics.approximate.latency-budget-ms:500}")
+    private long latencyBudgetMs;
+
+    @Value("${analytics.approximate.target-relative-error:0.02}")
+    private double targetRelativeError;
+
+    /**
+     * Run a grouped sample query over growing sets of sample keys. The query returns one
+     * row per group: the group key, then count, total and sum of squared amounts. With
+     * exact set every key, and expenses still without one, are read in a single round.
+     */
+    public Sample sample(Function<Collection<Integer>, List<Object[]>> query, boolean exact) {
+        long started = System.nanoTime();
+        long deadline = started + latencyBudgetMs * 1_000_000;
+        Sample sample = new Sample();
+        if (exact) {
+            List<Integer> keys = new ArrayList<>(Expense.SAMPLE_KEYS + 1);
+            for (int key = 0; key < Expense.SAMPLE_KEYS; key++) {
+                keys.add(key);
+            }
+            keys.add(Expense.UNSAMPLED);
+            for (Object[] row : query.apply(keys)) {
+                sample.add(row);
+            }
+            sample.keysRead = Expense.SAMPLE_KEYS;
+            return sample;
+        }
+        int read = 0;
+        while (true) {
+            int next = read == 0 ? 1 : Math.min(2 * read, Expense.SAMPLE_KEYS);
+            List<Integer> keys = new ArrayList<>(next - read);
+            for (int key = read; key < next; key++) {
+                keys.add(key);
+            }
+            for (Object[] row : query.apply(keys)) {
+                sample.add(row);
+            }
+            read = next;
+            sample.keysRead = read;
+            if (read == Expense.SAMPLE_KEYS || sample.relativeError() <= targetRelativeError) {
+                return sample;
+            }
+            // The next round reads as many keys as all earlier rounds together
+            long now = System.nanoTime();
+            if (now + (now - started) > deadline) {
+                return sample;
+            }
+        }
+    }
+
+    /**
+     * Give sample keys to expenses written before they existed, one shard at a time
+     */
+    @Scheduled(cron = "${analytics.approximate.backfill-cron}")
+    public void backfillSampleKeys() {
+        if (!shardDirectoryService.isEnabled()) {
+            backfillShard("default");
+            return;
+        }
+        for (String shard : shardDirectoryService.getShardNames()) {
+            ShardRoutingDataSource.callOn(shard, () -> backfillShard(shard));
+        }
+    }
+
+    private Void backfillShard(String shard) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long afterId = 0;
+        int assigned = 0;
+        List<Long> batch;
+        do {
+            batch = expenseRepository.findUnsampledAfter(afterId, PageRequest.of(0, backfillBatchSize));
+            if (batch.isEmpty()) {
+                break;
+            }
+            List<Long> ids = batch;
+            assigned += transaction.execute(status -> expenseRepository.assignSampleKeys(ids));
+            afterId = batch.get(batch.size() - 1);
+        } while (batch.size() == backfillBatchSize);
+        log.info("Assigned sample keys to {} expenses on {}", assigned, shard);
+        return null;
+    }
+
+    /**
+     * Sampled groups, in the order the query first returned them
+     */
+    public static class Sample {
+        private final Map<Object, Stratum> strata = new LinkedHashMap<>();
+        private int keysRead;
+
+        private void add(Object[] row) {
+            Object key = row[0] instanceof Number number ? (Object) number.longValue() : row[0];
+            Stratum stratum = strata.computeIfAbsent(key, k -> new Stratum());
+            stratum.count += ((Number) row[1]).longValue();
+            if (row[2] != null) {
+                stratum.amount = stratum.amount.add((BigDecimal) row[2]);
+                stratum.squares += ((Number) row[3]).doubleValue();
+            }
+        }
+
+        /**
+         * Share of the user's expenses read
+         */
+        public double getFraction() {
+            return (double) keysRead / Expense.SAMPLE_KEYS;
+        }
+
+        public boolean isExact() {
+            return keysRead == Expense.SAMPLE_KEYS;
+        }
+
+        public Map<Object, Stratum> getStrata() {
+            return strata;
+        }
+
+        /**
+         * All groups together; the groups never overlap
+         */
+        public Stratum total() {
+            Stratum total = new Stratum();
+            for (Stratum stratum : strata.values()) {
+                total.count += stratum.count;
+                total.amount = total.amount.add(stratum.amount);
+                total.squares += stratum.squares;
+            }
+            return total;
+        }
+
+        private double relativeError() {
+            Stratum total = total();
+            double estimate = total.amount.doubleValue() / getFraction();
+            return estimate > 0 ? total.amountError(getFraction()) / estimate : Double.POSITIVE_INFINITY;
+        }
+
+        /**
+         * Estimated total of one group, or of all groups
+         */
+        public BigDecimal amount(Stratum stratum) {
+            return stratum.amount.multiply(BigDecimal.valueOf(Expense.SAMPLE_KEYS))
+                    .divide(BigDecimal.valueOf(keysRead), 2, RoundingMode.HALF_UP);
+        }
+
+        public BigDecimal amountError(Stratum stratum) {
+            return BigDecimal.valueOf(stratum.amountError(getFraction())).setScale(2, RoundingMode.UP);
+        }
+
+        public long count(Stratum stratum) {
+            return Math.round(stratum.count / getFraction());
+        }
+
+        public long countError(Stratum stratum) {
+            return (long) Math.ceil(stratum.countError(getFraction()));
+        }
+    }
+
+    /**
+     * Sampled count, total and sum of squared amounts of one group. Under Bernoulli
+     * sampling at fraction p the scaled total has variance (1 - p) / p^2 times the sum of
+     * squared sampled amounts, and the scaled count (1 - p) / p^2 times the sampled count.
+     */
+    public static class Stratum {
+        private long count;
+        private BigDecimal amount = BigDecimal.ZERO;
+        private double squares;
+
+        private double amountError(double fraction) {
+            return Z_95 * Math.sqrt((1 - fraction) / (fraction * fraction) * squares);
+        }
+
+        private double countError(double fraction) {
+            return Z_95 * Math.sqrt((1 - fraction) / (fraction * fraction) * count);
+        }
+    }
+}
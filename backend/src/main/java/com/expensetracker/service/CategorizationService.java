@@ -0,0 +1,276 @@
+package com.expensetracker.service;
+
+
+import com.expensetracker.repository.ExpenseRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+
+/**
+ * Suggests a category for new expenses and scanned receipts from their text. Merchant
+ * names and keywords from a bundled dictionary, and the titles each user has already
+ * categorized, are compiled into Aho-Corasick automata, so a text is matched against
+ * all of them in one pass. The longest match across both wins, so a generic title the
+ * user has categorized, like "lunch" or "payment", does not override a specific merchant
+ * found in the same text; on a tie the user's own history wins.
+ *
+ * Histories are loaded from the database on first use and then learn from writes
+ * through the event bus: recategorizing an expense updates its title's entry in place.
+ */
+@Service
+public class CategorizationService implements ExpenseEventHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(CategorizationService.class);
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // Longer titles are descriptions rather than merchant names and are not learned
+    private static final int MAX_PHRASE_LENGTH = 64;
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @Autowired
+    private ShardDirectoryService shardDirectoryService;
+
+    @Autowired
+    private CategoryCatalogService categoryCatalogService;
+
+    @Value("${categorization.dictionary:classpath:categorization/merchants.txt}")
+    private Resource dictionary;
+
+    @Value("${categorization.cache.max-users:2000}")
+    private int maxUsers;
+
+    // Bounds how long a category learned through another instance can be missing here
+    @Value("${categorization.cache.ttl:10m}")
+    private Duration ttl;
+
+    private volatile MerchantMatcher defaults;
+
+    private final Map<Long, UserHistory> users = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, UserHistory> eldest) {
+            return size() > maxUsers;
+        }
+    };
+
+    /**
+     * Category for the first of the texts, in order of preference, that matches the
+     * user's history or the dictionary
+     */
+    public Optional<CategoryCatalogService.CategoryInfo> suggestCategory(Long userId, String... texts) {
+        UserHistory history = history(userId);
+        MerchantMatcher dictionary = defaults();
+        for (String text : texts) {
+            String normalized = normalize(text);
+            if (normalized == null) {
+                continue;
+            }
+            long[] learned;
+            synchronized (history) {
+                learned = longestMatch(history.matcher, normalized);
+            }
+            long[] known;
+            synchronized (dictionary) {
+                known = longestMatch(dictionary, normalized);
+            }
+            long categoryId = learned[0] >= known[0] ? learned[1] : known[1];
+            // The category may have been deleted since it was learned
+            Optional<CategoryCatalogService.CategoryInfo> category = categoryId != 0
+                    ? categoryCatalogService.resolve(userId, categoryId)
+                    : Optional.empty();
+            if (category.isPresent()) {
+                return category;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Learn the category of every committed write to a loaded history
+     */
+    @Override
+    public void onEvent(ExpenseEvent event, long sequence, boolean endOfBatch) {
+        if (event.getType() != ExpenseEvent.CREATED && event.getType() != ExpenseEvent.UPDATED
+                || event.getCategoryId() == 0) {
+            return;
+        }
+        String phrase = phrase(event.getTitle());
+        if (phrase == null) {
+            return;
+        }
+        UserHistory history;
+        synchronized (users) {
+            history = users.get(event.getUserId());
+        }
+        if (history == null) {
+            return;
+        }
+        synchronized (history) {
+            if (history.touched != null) {
+                history.touched.add(phrase);
+            }
+            history.matcher.put(phrase, event.getCategoryId());
+        }
+    }
+
+    private UserHistory history(Long userId) {
+        UserHistory history;
+        boolean load = false;
+        synchronized (users) {
+            history = users.get(userId);
+            if (history == null || System.nanoTime() - history.createdAt > ttl.toNanos()) {
+                history = new UserHistory();
+                users.put(userId, history);
+                load = true;
+            }
+        }
+        if (!load) {
+            history.loaded.join();
+            return history;
+        }
+        try {
+            shardDirectoryService.bind(userId);
+            List<Object[]> rows = expenseRepository.findCategoryHistory(userId);
+            synchronized (history) {
+                // Rows come least frequent first, so a title's most frequent category is put last
+                Map<String, Long> categories = new HashMap<>();
+                for (Object[] row : rows) {
+                    String phrase = phrase((String) row[0]);
+                    if (phrase != null) {
+                        categories.put(phrase, (Long) row[1]);
+                    }
+                }
+                // Events seen while loading are newer than the rows read
+                for (Map.Entry<String, Long> category : categories.entrySet()) {
+                    if (!history.touched.contains(category.getKey())) {
+                        history.matcher.put(category.getKey(), category.getValue());
+                    }
+                }
+                history.touched = null;
+            }
+            history.loaded.complete(null);
+            return history;
+        } catch (RuntimeException e) {
+            synchronized (users) {
+                users.remove(userId, history);
+            }
+            history.loaded.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private MerchantMatcher defaults() {
+        MerchantMatcher matcher = defaults;
+        if (matcher == null) {
+            matcher = loadDictionary();
+            defaults = matcher;
+        }
+        return matcher;
+    }
+
+    /**
+     * Compile the dictionary; each line maps a default category name to its keywords
+     */
+    private MerchantMatcher loadDictionary() {
+        Map<String, Long> categoryIds = new HashMap<>();
+        for (CategoryCatalogService.CategoryInfo category : categoryCatalogService.getDefaultCategories()) {
+            categoryIds.put(category.getName().toLowerCase(Locale.ROOT), category.getId());
+        }
+        MerchantMatcher matcher = new MerchantMatcher();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(dictionary.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int colon = line.indexOf(':');
+                if (line.isBlank() || line.startsWith("#") || colon < 0) {
+                    continue;
+                }
+                String name = line.substring(0, colon).trim();
+                Long categoryId = categoryIds.get(name.toLowerCase(Locale.ROOT));
+                if (categoryId == null) {
+                    log.warn("Skipping categorization keywords for unknown category {}", name);
+                    continue;
+                }
+                for (String keyword : line.substring(colon + 1).split(",")) {
+                    String pattern = normalize(keyword);
+                    if (pattern != null) {
+                        matcher.put(pattern, categoryId);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading categorization dictionary", e);
+        }
+        log.info("Loaded {} categorization keywords", matcher.size());
+        return matcher;
+    }
+
+    /**
+     * Length and value of the longest pattern found in the text, both 0 for none
+     */
+    private static long[] longestMatch(MerchantMatcher matcher, String text) {
+        long[] best = {0, 0};
+        matcher.match(text, (end, length, value) -> {
+            if (length > best[0]) {
+                best[0] = length;
+                best[1] = value;
+            }
+        });
+        return best;
+    }
+
+    private static String phrase(String title) {
+        String phrase = normalize(title);
+        return phrase != null && phrase.length() <= MAX_PHRASE_LENGTH ? phrase : null;
+    }
+
+    /**
+     * Lower-case words separated and surrounded by single spaces, so patterns only match
+     * whole words; numbers are dropped since store numbers and totals vary between
+     * receipts. Null when no words are left.
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder normalized = new StringBuilder(text.length() + 2).append(' ');
+        for (String token : TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty() && !token.chars().allMatch(Character::isDigit)) {
+                normalized.append(token).append(' ');
+            }
+        }
+        return normalized.length() > 1 ? normalized.toString() : null;
+    }
+
+    /**
+     * Titles one user has categorized, each mapped to its category id
+     */
+    private static class UserHistory {
+        private final long createdAt = System.nanoTime();
+        private final MerchantMatcher matcher = new MerchantMatcher();
+        private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+        // Titles learned from events while the history loads, cleared once loaded
+        private Set<String> touched = new HashSet<>();
+    }
+}
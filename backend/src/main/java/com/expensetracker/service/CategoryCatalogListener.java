@@ -0,0 +1,47 @@
+package com.expensetracker.service;
+
+
+import com.expensetracker.model.Category;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Invalidates the category catalogue and data versions whenever a category is written.
+ * Invalidation waits for commit so readers never re-cache uncommitted rows.
+ */
+@Component
+public class CategoryCatalogListener {
+
+    @Autowired
+    private CategoryCatalogService categoryCatalogService;
+
+    @Autowired
+    private DataVersionService dataVersionService;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onCategoryWrite(Category category) {
+        if (category.getUser() != null) {
+            dataVersionService.bumpAfterCommit(category.getUser().getId());
+        } else {
+            dataVersionService.bumpSharedAfterCommit();
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    categoryCatalogService.invalidate(category);
+                }
+            });
+        } else {
+            categoryCatalogService.invalidate(category);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.expensetracker.service;
+
+
+import com.expensetracker.model.Category;
+import com.expensetracker.repository.CategoryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+public class CategoryCatalogService {
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Value("${category.cache.max-users:10000}")
+    private int maxUsers;
+
+    // Bounds how long a category written through another instance can stay unseen here
+    @Value("${category.cache.ttl:60s}")
+    private Duration ttl;
+
+    private volatile Catalog defaults;
+
+    // Bumped by every invalidation; a load that started before one is not cached
+    private long defaultsGeneration;
+
+    private long overlaysGeneration;
+
+    private final Map<Long, Catalog> userOverlays = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Catalog> eldest) {
+            return size() > maxUsers;
+        }
+    };
+
+    /**
+     * All categories visible to a user: shared defaults followed by the user's own
+     */
+    public List<CategoryInfo> getCategories(Long userId) {
+        Catalog overlay = userOverlay(userId);
+        List<CategoryInfo> categories = new ArrayList<>(defaults().list.size() + overlay.list.size());
+        categories.addAll(defaults().list);
+        categories.addAll(overlay.list);
+        return categories;
+    }
+
+    /**
+     * Default categories shared by every user
+     */
+    public List<CategoryInfo> getDefaultCategories() {
+        return defaults().list;
+    }
+
+    /**
+     * Resolve a category id visible to the user without touching the database once cached
+     */
+    public Optional<CategoryInfo> resolve(Long userId, Long categoryId) {
+        if (categoryId == null) {
+            return Optional.empty();
+        }
+        CategoryInfo category = defaults().byId.get(categoryId);
+        if (category == null) {
+            category = userOverlay(userId).byId.get(categoryId);
+        }
+        return Optional.ofNullable(category);
+    }
+
+    /**
+     * Drop cached data affected by a write to this category
+     */
+    public void invalidate(Category category) {
+        if (Boolean.TRUE.equals(category.getIsDefault()) || category.getUser() == null) {
+            synchronized (this) {
+                defaultsGeneration++;
+                defaults = null;
+            }
+        }
+        if (category.getUser() != null) {
+            invalidateUser(category.getUser().getId());
+        }
+    }
+
+    public void invalidateUser(Long userId) {
+        synchronized (userOverlays) {
+            overlaysGeneration++;
+            userOverlays.remove(userId);
+        }
+    }
+
+    private Catalog defaults() {
+        Catalog catalog = defaults;
+        if (catalog == null || catalog.isOlderThan(ttl)) {
+            long generation;
+            synchronized (this) {
+                generation = defaultsGeneration;
+            }
+            catalog = Catalog.of(categoryRepository.findByIsDefaultTrue());
+            synchronized (this) {
+                if (defaultsGeneration == generation) {
+                    defaults = catalog;
+                }
+            }
+        }
+        return catalog;
+    }
+
+    private Catalog userOverlay(Long userId) {
+        long generation;
+        synchronized (userOverlays) {
+            Catalog overlay = userOverlays.get(userId);
+            if (overlay != null && !overlay.isOlderThan(ttl)) {
+                return overlay;
+            }
+            generation = overlaysGeneration;
+        }
+        // Loaded outside the lock; a concurrent load of the same user is harmless, but a load
+        // that overlapped any invalidation may predate the write and is returned uncached
+        Catalog overlay = Catalog.of(categoryRepository.findByUserId(userId).stream()
+                .filter(category -> !Boolean.TRUE.equals(category.getIsDefault()))
+                .collect(Collectors.toList()));
+        synchronized (userOverlays) {
+            if (overlaysGeneration == generation) {
+                userOverlays.put(userId, overlay);
+            }
+        }
+        return overlay;
+    }
+
+    /**
+     * Immutable set of categories indexed by id
+     */
+    private static class Catalog {
+        private final List<CategoryInfo> list;
+        private final Map<Long, CategoryInfo> byId;
+        private final long loadedAt = System.nanoTime();
+
+        private Catalog(List<CategoryInfo> list) {
+            this.list = Collections.unmodifiableList(list);
+            this.byId = list.stream().collect(Collectors.toUnmodifiableMap(CategoryInfo::getId, Function.identity()));
+        }
+
+        static Catalog of(List<Category> categories) {
+            return new Catalog(categories.stream().map(CategoryInfo::new).collect(Collectors.toList()));
+        }
+
+        boolean isOlderThan(Duration ttl) {
+            return System.nanoTime() - loadedAt > ttl.toNanos();
+        }
+    }
+
+    /**
+     * Read-only view of a category, detached from the persistence context
+     */
+    public static class CategoryInfo {
+        private final Long id;
+        private final String name;
+        private final String icon;
+        private final String color;
+        private final boolean isDefault;
+
+        CategoryInfo(Category category) {
+            this.id = category.getId();
+            this.name = category.getName();
+            this.icon = category.getIcon();
+            this.color = category.getColor();
+            this.isDefault = Boolean.TRUE.equals(category.getIsDefault());
+        }
+
+        // Getters
+        public Long getId() { return id; }
+
+        public String getName() { return name; }
+
+        public String getIcon() { return icon; }
+
+        public String getColor() { return color; }
+
+        public boolean getIsDefault() { return isDefault; }
+    }
+}
@@ -0,0 +1,191 @@
+package com.expensetracker.service;
+
+
+import com.expensetracker.config.ShardRoutingDataSource;
+import com.expensetracker.model.CategoryUsage;
+import com.expensetracker.repository.CategoryUsageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Per-user category usage counters. Counters follow expense writes through the event
+ * bus, so they are applied after the expense commits, one transaction per shard and
+ * batch, and may trail the expenses table briefly.
+ */
+@Service
+@Transactional
+public class CategoryUsageService implements ExpenseEventHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(CategoryUsageService.class);
+
+    @Autowired
+    private CategoryUsageRepository categoryUsageRepository;
+
+    @Autowired
+    private CategoryCatalogService categoryCatalogService;
+
+    @Autowired
+    private ShardDirectoryService shardDirectoryService;
+
+    @Autowired
+    private ExpenseArchiveService expenseArchiveService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Moves collected from the current batch, touched only by the bus thread
+    private final List<Move> pending = new ArrayList<>();
+
+    /**
+     * Collect the category change of each event and apply the batch at its end
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void onEvent(ExpenseEvent event, long sequence, boolean endOfBatch) {
+        Long categoryId = event.getCategoryId() != 0 ? event.getCategoryId() : null;
+        switch (event.getType()) {
+            case ExpenseEvent.CREATED -> pending.add(new Move(event.getUserId(), null, categoryId, event.getTimestamp()));
+            case ExpenseEvent.DELETED -> pending.add(new Move(event.getUserId(), categoryId, null, event.getTimestamp()));
+            case ExpenseEvent.UPDATED -> {
+                Long previousCategoryId = event.getPreviousCategoryId() != 0 ? event.getPreviousCategoryId() : null;
+                if (event.getPreviousCategoryId() != event.getCategoryId()) {
+                    pending.add(new Move(event.getUserId(), previousCategoryId, categoryId, event.getTimestamp()));
+                }
+            }
+            default -> { }
+        }
+        if (endOfBatch && !pending.isEmpty()) {
+            try {
+                applyPending();
+            } finally {
+                pending.clear();
+            }
+        }
+    }
+
+    private void applyPending() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        if (!shardDirectoryService.isEnabled()) {
+            transaction.executeWithoutResult(status -> pending.forEach(this::apply));
+            return;
+        }
+        Map<String, List<Move>> byShard = pending.stream()
+                .collect(Collectors.groupingBy(move -> shardDirectoryService.placement(move.userId).getShard()));
+        byShard.forEach((shard, moves) -> ShardRoutingDataSource.callOn(shard,
+                () -> transaction.execute(status -> {
+                    moves.forEach(this::apply);
+                    return null;
+                })));
+    }
+
+    private void apply(Move move) {
+        if (move.from != null) {
+            categoryUsageRepository.decrement(move.userId, move.from);
+        }
+        if (move.to != null) {
+            categoryUsageRepository.increment(move.userId, move.to,
+                    LocalDateTime.ofInstant(Instant.ofEpochMilli(move.at), ZoneId.systemDefault()));
+        }
+    }
+
+    /**
+     * Categories visible to the user with usage counts, sorted by "frequency", "recency" or name
+     */
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getCategoriesWithUsage(Long userId, String sort) {
+        shardDirectoryService.bind(userId);
+        Map<Long, CategoryUsage> usage = categoryUsageRepository.findByUserIdOrderByUsageCountDesc(userId).stream()
+                .collect(Collectors.toMap(CategoryUsage::getCategoryId, Function.identity()));
+
+        Comparator<Map<String, Object>> order;
+        if ("frequency".equalsIgnoreCase(sort)) {
+            order = Comparator.comparing((Map<String, Object> c) -> (Long) c.get("usageCount")).reversed();
+        } else if ("recency".equalsIgnoreCase(sort)) {
+            order = Comparator.comparing((Map<String, Object> c) -> (LocalDateTime) c.get("lastUsedAt"),
+                    Comparator.nullsLast(Comparator.reverseOrder()));
+        } else {
+            order = Comparator.comparing((Map<String, Object> c) -> (String) c.get("name"), String.CASE_INSENSITIVE_ORDER);
+        }
+
+        return categoryCatalogService.getCategories(userId).stream()
+                .map(category -> {
+                    CategoryUsage counter = usage.get(category.getId());
+                    Map<String, Object> entry = new LinkedHashMap<>();
+                    entry.put("id", category.getId());
+                    entry.put("name", category.getName());
+                    entry.put("icon", category.getIcon());
+                    entry.put("color", category.getColor());
+                    entry.put("isDefault", category.getIsDefault());
+                    entry.put("usageCount", counter != null ? counter.getUsageCount() : 0L);
+                    entry.put("lastUsedAt", counter != null ? counter.getLastUsedAt() : null);
+                    return entry;
+                })
+                .sorted(order)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Rebuild counters from the expenses table and the archive to repair any drift, one
+     * shard at a time. Writes or archiving racing with this job may leave counters off
+     * until the next run.
+     */
+    @Scheduled(cron = "${category.usage.reconcile-cron}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void reconcile() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        if (!shardDirectoryService.isEnabled()) {
+            transaction.executeWithoutResult(status -> reconcileShard("default"));
+            return;
+        }
+        for (String shard : shardDirectoryService.getShardNames()) {
+            ShardRoutingDataSource.callOn(shard, () -> transaction.execute(status -> reconcileShard(shard)));
+        }
+    }
+
+    private Void reconcileShard(String shard) {
+        int updated = categoryUsageRepository.reconcileCounts();
+        int emptied = categoryUsageRepository.reconcileEmpty();
+        // Archived years count too; the live pass above has just left them out
+        Map<Long, Map<Long, Long>> archived = expenseArchiveService.countByCategory(shard);
+        archived.forEach((userId, counts) -> counts.forEach((categoryId, count) ->
+                categoryUsageRepository.addArchived(userId, categoryId, count)));
+        log.info("Reconciled category usage counters on {}: {} updated, {} emptied, {} users with archived years",
+                shard, updated, emptied, archived.size());
+        return null;
+    }
+
+    /**
+     * Category change of one expense; a null side means no category
+     */
+    private static class Move {
+        private final long userId;
+        private final Long from;
+        private final Long to;
+        private final long at;
+
+        Move(long userId, Long from, Long to, long at) {
+            this.userId = userId;
+            this.from = from;
+            this.to = to;
+            this.at = at;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.expensetracker.service;
+
+
+import com.expensetracker.config.ShardRoutingDataSource;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-user data versions used to answer conditional GETs without running the query.
+ * Versions are stored in sync_sequences next to the user's change sequence and advanced
+ * inside the write transaction, so they commit with the data and every instance builds
+ * the same ETag. Reads go to the primary of the user's shard: a replica could still hold
+ * a version older than the data the request goes on to read.
+ */
+@Service
+public class DataVersionService {
+
+    private static final String USER_BUMP = "INSERT INTO sync_sequences (user_id, data_version, written_at) "
+            + "VALUES (?, 1, NOW(3)) ON DUPLICATE KEY UPDATE data_version = data_version + 1, written_at = NOW(3)";
+
+    private static final String SHARED_BUMP = "UPDATE shared_data_version SET version = version + 1 WHERE id = 1";
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired(required = false)
+    private ShardRoutingDataSource shardRoutingDataSource;
+
+    @Autowired
+    private ShardDirectoryService shardDirectoryService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Joins the current transaction on whichever shard the request is bound to
+    private JdbcTemplate transactional;
+
+    private TransactionTemplate requiresNew;
+
+    private final ConcurrentMap<String, JdbcTemplate> primaries = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        transactional = new JdbcTemplate(dataSource);
+        requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Current version of a user's data, including the shared version
+     */
+    public String currentVersion(Long userId) {
+        return primary(userId).queryForObject(
+                "SELECT (SELECT version FROM shared_data_version WHERE id = 1), "
+                        + "COALESCE((SELECT data_version FROM sync_sequences WHERE user_id = ?), 0)",
+                (rs, rowNum) -> rs.getLong(1) + "-" + rs.getLong(2), userId);
+    }
+
+    /**
+     * Whether the user's data last changed within the given window, by the database clock
+     */
+    public boolean writtenWithin(Long userId, Duration window) {
+        Long age = primary(userId).query(
+                "SELECT TIMESTAMPDIFF(MICROSECOND, written_at, NOW(3)) FROM sync_sequences WHERE user_id = ?",
+                rs -> rs.next() ? (Long) rs.getObject(1, Long.class) : null, userId);
+        return age != null && age < window.toNanos() / 1000;
+    }
+
+    /**
+     * ETag for a response derived from the user's data version and the request parameters.
+     * Must be computed before the data is read so a concurrent write can only make it stale-safe.
+     */
+    public String etag(Long userId, String resource, Object... params) {
+        StringBuilder key = new StringBuilder(resource);
+        for (Object param : params) {
+            key.append('|').append(param);
+        }
+        return "W/\"" + currentVersion(userId) + "-" + digest(key) + "\"";
+    }
+
+    /**
+     * Advance a user's version in the current write transaction, which must be bound to
+     * the user's shard; outside a transaction it is advanced at once
+     */
+    public void bump(Long userId) {
+        JdbcTemplate template = TransactionSynchronizationManager.isActualTransactionActive()
+                ? transactional : primary(userId);
+        template.update(USER_BUMP, userId);
+    }
+
+    /**
+     * Advance a user's version once the current transaction commits, for writers that
+     * cannot run statements themselves, such as entity callbacks. A request in between
+     * may be answered with the old ETag, which costs its client one more full response.
+     */
+    public void bumpAfterCommit(Long userId) {
+        afterCommit(() -> bump(userId));
+    }
+
+    /**
+     * Advance every user's version once the current transaction commits, e.g. when shared
+     * default categories change. Each shard keeps its own copy, as it does of the defaults.
+     */
+    public void bumpSharedAfterCommit() {
+        afterCommit(() -> {
+            if (shardRoutingDataSource == null) {
+                transactional.update(SHARED_BUMP);
+                return;
+            }
+            for (String shard : shardRoutingDataSource.getShardNames()) {
+                primary(shard).update(SHARED_BUMP);
+            }
+        });
+    }
+
+    /**
+     * Autocommit access to the primary holding the user's rows
+     */
+    private JdbcTemplate primary(Long userId) {
+        // Without routing there is only the one datasource and no replica to avoid
+        if (shardRoutingDataSource == null) {
+            return transactional;
+        }
+        return primary(shardDirectoryService.isEnabled()
+                ? shardDirectoryService.placement(userId).getShard()
+                : shardRoutingDataSource.getHomeShard());
+    }
+
+    private JdbcTemplate primary(String shard) {
+        return primaries.computeIfAbsent(shard, name -> new JdbcTemplate(shardRoutingDataSource.getPrimary(name)));
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    // The committed transaction's resources are still bound, so run in a new one
+                    requiresNew.executeWithoutResult(status -> action.run());
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static String digest(CharSequence key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
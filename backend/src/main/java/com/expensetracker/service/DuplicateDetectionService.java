@@ -0,0 +1,423 @@
+package com.expensetracker.service;
+
+
+import com.expensetracker.repository.ExpenseRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntConsumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Flags likely duplicate expenses, e.g. a bank row, a scanned receipt and a manual entry
+ * for the same purchase. Each user's expenses are kept in a locality-sensitive index:
+ * the title is reduced to a MinHash signature over its normalized tokens, and every
+ * band of the signature is filed under the expense's amount bucket and date window. A
+ * lookup probes the neighbouring buckets band by band and verifies the few candidates,
+ * so its cost does not grow with the number of expenses.
+ *
+ * Indexes are loaded from the database on first use and then follow writes through the
+ * event bus, so an expense written a moment ago may not be matched yet. Archived years
+ * are not indexed.
+ */
+@Service
+public class DuplicateDetectionService implements ExpenseEventHandler {
+
+    private static final int HASHES = 16;
+
+    private static final int ROWS_PER_BAND = 2;
+
+    private static final int BANDS = HASHES / ROWS_PER_BAND;
+
+    private static final int MAX_RESULTS = 5;
+
+    private static final long[] SEEDS = new SplittableRandom(0x5EEDL).longs(HASHES).toArray();
+
+    private static final int[] EMPTY_SIGNATURE = new int[HASHES];
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // Tokens that say nothing about the merchant
+    private static final Set<String> NOISE_TOKENS = Set.of("the", "and", "inc", "llc", "ltd", "co", "pos",
+            "purchase", "payment", "card", "debit", "credit", "store", "shop", "www", "com");
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @Autowired
+    private ShardDirectoryService shardDirectoryService;
+
+    @Value("${duplicates.date-window-days:3}")
+    private int dateWindowDays;
+
+    @Value("${duplicates.amount-tolerance:0.02}")
+    private double amountTolerance;
+
+    @Value("${duplicates.min-similarity:0.5}")
+    private double minSimilarity;
+
+    @Value("${duplicates.cache.max-users:2000}")
+    private int maxUsers;
+
+    // Bounds how long an expense written through another instance can be missing here
+    @Value("${duplicates.cache.ttl:10m}")
+    private Duration ttl;
+
+    private double amountBucketWidth;
+
+    private final Map<Long, UserIndex> users = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, UserIndex> eldest) {
+            return size() > maxUsers;
+        }
+    };
+
+    @PostConstruct
+    void init() {
+        // Twice the tolerance, so amounts within tolerance are at most one bucket apart
+        amountBucketWidth = Math.log1p(2 * Math.max(amountTolerance, 0.0001));
+    }
+
+    /**
+     * Ids of the user's expenses that likely describe the same purchase, most similar first
+     */
+    public List<Long> findDuplicates(Long userId, BigDecimal amount, LocalDate date, String title, Long excludeId) {
+        if (amount == null || date == null) {
+            return List.of();
+        }
+        long amountCents = toCents(amount);
+        int epochDay = (int) date.toEpochDay();
+        int[] signature = signature(title);
+        UserIndex index = index(userId);
+
+        Map<Long, Entry> candidates = new HashMap<>();
+        long amountBucket = amountBucket(amountCents);
+        long dateBucket = dateBucket(epochDay);
+        synchronized (index) {
+            for (long a = amountBucket - 1; a <= amountBucket + 1; a++) {
+                for (long d = dateBucket - 1; d <= dateBucket + 1; d++) {
+                    for (int band = 0; band < BANDS; band++) {
+                        index.bands.forEach(bandKey(a, d, band, signature), slot -> {
+                            Entry entry = index.slots.get(slot);
+                            candidates.putIfAbsent(entry.expenseId, entry);
+                        });
+                    }
+                }
+            }
+        }
+
+        return candidates.values().stream()
+                .filter(entry -> excludeId == null || entry.expenseId != excludeId)
+                .filter(entry -> Math.abs(entry.epochDay - epochDay) <= dateWindowDays)
+                .filter(entry -> Math.abs(entry.amountCents - amountCents)
+                        <= amountTolerance * Math.max(Math.abs(entry.amountCents), Math.abs(amountCents)))
+                .filter(entry -> similarity(entry.signature, signature) >= minSimilarity)
+                .sorted(Comparator.comparingDouble((Entry entry) -> similarity(entry.signature, signature)).reversed()
+                        .thenComparingInt(entry -> Math.abs(entry.epochDay - epochDay)))
+                .limit(MAX_RESULTS)
+                .map(entry -> entry.expenseId)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Keep loaded indexes in step with committed writes
+     */
+    @Override
+    public void onEvent(ExpenseEvent event, long sequence, boolean endOfBatch) {
+        UserIndex index;
+        synchronized (users) {
+            index = users.get(event.getUserId());
+        }
+        if (index == null) {
+            return;
+        }
+        synchronized (index) {
+            if (index.touched != null) {
+                index.touched.add(event.getExpenseId());
+            }
+            remove(index, event.getExpenseId());
+            if (event.getType() != ExpenseEvent.DELETED) {
+                add(index, new Entry(event.getExpenseId(), event.getAmountCents(), event.getEpochDay(),
+                        signature(event.getTitle())));
+            }
+        }
+    }
+
+    private UserIndex index(Long userId) {
+        UserIndex index;
+        boolean load = false;
+        synchronized (users) {
+            index = users.get(userId);
+            if (index == null || System.nanoTime() - index.createdAt > ttl.toNanos()) {
+                index = new UserIndex();
+                users.put(userId, index);
+                load = true;
+            }
+        }
+        if (!load) {
+            index.loaded.join();
+            return index;
+        }
+        try {
+            shardDirectoryService.bind(userId);
+            List<Object[]> rows = expenseRepository.findSimilarityFields(userId);
+            synchronized (index) {
+                for (Object[] row : rows) {
+                    Long expenseId = (Long) row[0];
+                    // Events seen while loading are newer than the rows read
+                    if (!index.touched.contains(expenseId)) {
+                        add(index, new Entry(expenseId, toCents((BigDecimal) row[1]),
+                                (int) ((LocalDate) row[2]).toEpochDay(), signature((String) row[3])));
+                    }
+                }
+                index.touched = null;
+            }
+            index.loaded.complete(null);
+            return index;
+        } catch (RuntimeException e) {
+            synchronized (users) {
+                users.remove(userId, index);
+            }
+            index.loaded.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void add(UserIndex index, Entry entry) {
+        int slot = index.allocate(entry);
+        long amountBucket = amountBucket(entry.amountCents);
+        long dateBucket = dateBucket(entry.epochDay);
+        for (int band = 0; band < BANDS; band++) {
+            index.bands.put(bandKey(amountBucket, dateBucket, band, entry.signature), slot);
+        }
+    }
+
+    private void remove(UserIndex index, long expenseId) {
+        Entry entry = index.entries.get(expenseId);
+        if (entry == null) {
+            return;
+        }
+        long amountBucket = amountBucket(entry.amountCents);
+        long dateBucket = dateBucket(entry.epochDay);
+        for (int band = 0; band < BANDS; band++) {
+            index.bands.remove(bandKey(amountBucket, dateBucket, band, entry.signature), entry.slot);
+        }
+        index.release(entry);
+    }
+
+    private long amountBucket(long amountCents) {
+        // Refunds and zero amounts are bucketed by exact value, far from any positive bucket
+        return amountCents <= 0 ? Long.MIN_VALUE / 2 + amountCents : (long) Math.floor(Math.log(amountCents) / amountBucketWidth);
+    }
+
+    private long dateBucket(int epochDay) {
+        return Math.floorDiv(epochDay, Math.max(1, dateWindowDays));
+    }
+
+    /**
+     * MinHash signature of the title's normalized tokens; titles without tokens share
+     * one empty signature
+     */
+    static int[] signature(String title) {
+        Set<String> tokens = tokens(title);
+        if (tokens.isEmpty()) {
+            return EMPTY_SIGNATURE;
+        }
+        int[] signature = new int[HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (String token : tokens) {
+            long hash = mix(token.hashCode());
+            for (int i = 0; i < HASHES; i++) {
+                signature[i] = Math.min(signature[i], (int) (mix(hash ^ SEEDS[i]) >>> 33));
+            }
+        }
+        return signature;
+    }
+
+    static Set<String> tokens(String title) {
+        Set<String> tokens = new HashSet<>();
+        if (title == null) {
+            return tokens;
+        }
+        for (String token : TOKEN_SEPARATOR.split(title.toLowerCase(Locale.ROOT))) {
+            // Store numbers, terminal ids and single letters vary between sources
+            if (token.length() > 1 && !token.chars().allMatch(Character::isDigit) && !NOISE_TOKENS.contains(token)) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Estimated Jaccard similarity of the token sets
+     */
+    private static double similarity(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < HASHES; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / HASHES;
+    }
+
+    private static long bandKey(long amountBucket, long dateBucket, int band, int[] signature) {
+        long key = mix(amountBucket);
+        key = mix(key ^ dateBucket);
+        key = mix(key ^ band);
+        for (int row = 0; row < ROWS_PER_BAND; row++) {
+            key = mix(key ^ signature[band * ROWS_PER_BAND + row]);
+        }
+        return key;
+    }
+
+    /**
+     * SplitMix64 finalizer
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    private static long toCents(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+    }
+
+    /**
+     * One user's expenses, each filed under its band keys
+     */
+    private static class UserIndex {
+        private final long createdAt = System.nanoTime();
+        private final Map<Long, Entry> entries = new HashMap<>();
+        private final List<Entry> slots = new ArrayList<>();
+        private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+        private final BandTable bands = new BandTable();
+        private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+        // Expenses changed by events while the index loads, cleared once loaded
+        private Set<Long> touched = new HashSet<>();
+
+        int allocate(Entry entry) {
+            Integer free = freeSlots.poll();
+            entry.slot = free != null ? free : slots.size();
+            if (free != null) {
+                slots.set(free, entry);
+            } else {
+                slots.add(entry);
+            }
+            entries.put(entry.expenseId, entry);
+            return entry.slot;
+        }
+
+        void release(Entry entry) {
+            entries.remove(entry.expenseId);
+            slots.set(entry.slot, null);
+            freeSlots.push(entry.slot);
+        }
+    }
+
+    /**
+     * Open-addressing multimap from band key to entry slot. Each band of each expense
+     * takes twelve bytes instead of a boxed map node, which keeps large users' indexes
+     * small; removed pairs leave a marker until the next resize.
+     */
+    private static class BandTable {
+        private static final int FREE = -1;
+        private static final int REMOVED = -2;
+
+        private long[] keys = new long[16];
+        private int[] values = newValues(16);
+        private int used;
+        private int live;
+
+        void put(long key, int value) {
+            if ((used + 1) * 2 > keys.length) {
+                resize(live * 4 > keys.length ? keys.length * 2 : keys.length);
+            }
+            int mask = keys.length - 1;
+            int i = (int) key & mask;
+            while (values[i] != FREE) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            used++;
+            live++;
+        }
+
+        void remove(long key, int value) {
+            int mask = keys.length - 1;
+            for (int i = (int) key & mask; values[i] != FREE; i = (i + 1) & mask) {
+                if (keys[i] == key && values[i] == value) {
+                    values[i] = REMOVED;
+                    live--;
+                    return;
+                }
+            }
+        }
+
+        void forEach(long key, IntConsumer action) {
+            int mask = keys.length - 1;
+            for (int i = (int) key & mask; values[i] != FREE; i = (i + 1) & mask) {
+                if (keys[i] == key && values[i] >= 0) {
+                    action.accept(values[i]);
+                }
+            }
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[capacity];
+            values = newValues(capacity);
+            used = 0;
+            live = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] >= 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int[] newValues(int capacity) {
+            int[] values = new int[capacity];
+            Arrays.fill(values, FREE);
+            return values;
+        }
+    }
+
+    private static class Entry {
+        private final long expenseId;
+        private final long amountCents;
+        private final int epochDay;
+        private final int[] signature;
+        private int slot;
+
+        Entry(long expenseId, long amountCents, int epochDay, int[] signature) {
+            this.expenseId = expenseId;
+            this.amountCents = amountCents;
+            this.epochDay = epochDay;
+            this.signature = signature;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.expensetracker.service;
+
+
+import com.expensetracker.dto.SpendingTrendPoint;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Entry point for the dashboard analytics. Identical concurrent calls are coalesced here,
+ * before ExpenseService opens its read-only transaction, so a caller waiting on another's
+ * computation holds neither a transaction nor a pooled connection. Deliberately not
+ * transactional; each computation runs in ExpenseService's own transaction.
+ */
+@Service
+public class ExpenseAnalyticsService {
+
+    @Autowired
+    private ExpenseService expenseService;
+
+    @Autowired
+    private AnalyticsSingleFlight analyticsSingleFlight;
+
+    /**
+     * Get expense statistics
+     */
+    public Map<String, Object> getExpenseStatistics(Long userId, LocalDate startDate, LocalDate endDate) {
+        return analyticsSingleFlight.execute("statistics", userId, startDate, endDate,
+                () -> expenseService.getExpenseStatistics(userId, startDate, endDate));
+    }
+
+    /**
+     * Get expense statistics estimated from a sample
+     */
+    public Map<String, Object> getApproximateExpenseStatistics(Long userId, LocalDate startDate, LocalDate endDate) {
+        return analyticsSingleFlight.execute("statistics-approximate", userId, startDate, endDate,
+                () -> expenseService.getApproximateExpenseStatistics(userId, startDate, endDate));
+    }
+
+    /**
+     * Get spending by category
+     */
+    public Map<String, Object> getSpendingByCategory(Long userId, LocalDate startDate, LocalDate endDate) {
+        return analyticsSingleFlight.execute("spending-by-category", userId, startDate, endDate,
+                () -> expenseService.getSpendingByCategory(userId, startDate, endDate));
+    }
+
+    /**
+     * Get spending by category estimated from a sample
+     */
+    public Map<String, Object> getApproximateSpendingByCategory(Long userId, LocalDate startDate, LocalDate endDate) {
+        return analyticsSingleFlight.execute("spending-by-category-approximate", userId, startDate, endDate,
+                () -> expenseService.getApproximateSpendingByCategory(userId, startDate, endDate));
+    }
+
+    /**
+     * Get spending trend
+     */
+    public List<SpendingTrendPoint> getSpendingTrend(Long userId, LocalDate startDate, LocalDate endDate) {
+        return analyticsSingleFlight.execute("spending-trend", userId, startDate, endDate,
+                () -> expenseService.getSpendingTrend(userId, startDate, endDate));
+    }
+
+    /**
+     * Get the monthly spending trend estimated from a sample
+     */
+    public Map<String, Object> getApproximateSpendingTrend(Long userId, LocalDate startDate, LocalDate endDate) {
+        return analyticsSingleFlight.execute("spending-trend-approximate", userId, startDate, endDate,
+                () -> expenseService.getApproximateSpendingTrend(userId, startDate, endDate));
+    }
+}
@@ -0,0 +1,584 @@
+package com.expensetracker.service;
+
+
+import com.expensetracker.config.ShardRoutingDataSource;
+import com.expensetracker.dto.CategorySpending;
+import com.expensetracker.dto.ExpenseFilter;
+import com.expensetracker.dto.MonthlySpending;
+import com.expensetracker.dto.SpendingTrendPoint;
+import com.expensetracker.model.Category;
+import com.expensetracker.model.Expense;
+import com.expensetracker.model.User;
+import com.expensetracker.repository.ExpenseRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Cold tier for expenses. Closed years (older than archive.retain-years) are moved per
+ * user out of the expenses table into immutable {@link ExpenseSegment} files under
+ * archive.path/{userId}/{year}.seg, and read back through memory-mapped I/O so listing
+ * and analytics can merge them with the live table. Archived expenses are read-only;
+ * expenses with a stored receipt scan stay in the live table.
+ */
+@Service
+public class ExpenseArchiveService {
+
+    private static final Logger log = LoggerFactory.getLogger(ExpenseArchiveService.class);
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final String PENDING_SUFFIX = ".seg.pending";
+
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @Autowired
+    private CategoryCatalogService categoryCatalogService;
+
+    @Autowired
+    private DataVersionService dataVersionService;
+
+    @Autowired
+    private ShardDirectoryService shardDirectoryService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${archive.path}")
+    private String archivePath;
+
+    @Value("${archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${archive.retain-years:2}")
+    private int retainYears;
+
+    @Value("${archive.cache.max-segments:256}")
+    private int maxSegments;
+
+    private final Map<Path, CachedSegment> segments = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, CachedSegment> eldest) {
+            return size() > maxSegments;
+        }
+    };
+
+    /**
+     * Whether any archived year of the user overlaps the date range
+     */
+    public boolean hasArchivedExpenses(Long userId, LocalDate startDate, LocalDate endDate) {
+        return !segments(userId, startDate, endDate).isEmpty();
+    }
+
+    /**
+     * Total archived spending in the date range
+     */
+    public BigDecimal getTotalSpending(Long userId, LocalDate startDate, LocalDate endDate) {
+        long cents = 0;
+        for (ExpenseSegment segment : segments(userId, startDate, endDate)) {
+            for (int row = segment.firstOnOrAfter(startDate), end = segment.endOnOrBefore(endDate); row < end; row++) {
+                cents += segment.amountCents(row);
+            }
+        }
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    /**
+     * Number of archived expenses in the date range
+     */
+    public long countExpenses(Long userId, LocalDate startDate, LocalDate endDate) {
+        long count = 0;
+        for (ExpenseSegment segment : segments(userId, startDate, endDate)) {
+            count += segment.endOnOrBefore(endDate) - segment.firstOnOrAfter(startDate);
+        }
+        return count;
+    }
+
+    /**
+     * Add archived spending to per-category totals from the live table
+     */
+    public List<CategorySpending> mergeSpendingByCategory(Long userId, LocalDate startDate, LocalDate endDate,
+                                                          List<CategorySpending> live) {
+        List<ExpenseSegment> archived = segments(userId, startDate, endDate);
+        if (archived.isEmpty()) {
+            return live;
+        }
+        Map<Long, CategorySpending> byCategory = new LinkedHashMap<>();
+        live.forEach(category -> byCategory.put(category.getCategoryId(), category));
+        for (ExpenseSegment segment : archived) {
+            for (int row = segment.firstOnOrAfter(startDate), end = segment.endOnOrBefore(endDate); row < end; row++) {
+                Long categoryId = segment.categoryId(row);
+                if (categoryId == null) {
+                    continue;
+                }
+                CategorySpending category = byCategory.computeIfAbsent(categoryId,
+                        id -> new CategorySpending(id, BigDecimal.ZERO, 0L));
+                category.setTotalAmount(category.getTotalAmount().add(BigDecimal.valueOf(segment.amountCents(row), 2)));
+                category.setCount(category.getCount() + 1);
+            }
+        }
+        return new ArrayList<>(byCategory.values());
+    }
+
+    /**
+     * Add archived spending to the live daily trend, keeping it in date order
+     */
+    public List<SpendingTrendPoint> mergeSpendingTrend(Long userId, LocalDate startDate, LocalDate endDate,
+                                                       List<SpendingTrendPoint> live) {
+        List<ExpenseSegment> archived = segments(userId, startDate, endDate);
+        if (archived.isEmpty()) {
+            return live;
+        }
+        TreeMap<LocalDate, SpendingTrendPoint> byDate = new TreeMap<>();
+        live.forEach(point -> byDate.put(point.getDate(), point));
+        for (ExpenseSegment segment : archived) {
+            for (int row = segment.firstOnOrAfter(startDate), end = segment.endOnOrBefore(endDate); row < end; row++) {
+                SpendingTrendPoint point = byDate.computeIfAbsent(segment.date(row),
+                        date -> new SpendingTrendPoint(date, BigDecimal.ZERO, 0L));
+                point.setAmount(point.getAmount().add(BigDecimal.valueOf(segment.amountCents(row), 2)));
+                point.setCount(point.getCount() + 1);
+            }
+        }
+        return new ArrayList<>(byDate.values());
+    }
+
+    /**
+     * Add archived spending to live monthly totals, keeping them in month order
+     */
+    public List<MonthlySpending> mergeMonthlySpending(Long userId, LocalDate startDate, LocalDate endDate,
+                                                      List<MonthlySpending> live) {
+        List<ExpenseSegment> archived = segments(userId, startDate, endDate);
+        if (archived.isEmpty()) {
+            return live;
+        }
+        TreeMap<Integer, MonthlySpending> byMonth = new TreeMap<>();
+        live.forEach(month -> byMonth.put(month.getYear() * 12 + month.getMonth() - 1, month));
+        for (ExpenseSegment segment : archived) {
+            for (int row = segment.firstOnOrAfter(startDate), end = segment.endOnOrBefore(endDate); row < end; row++) {
+                LocalDate date = segment.date(row);
+                MonthlySpending month = byMonth.computeIfAbsent(date.getYear() * 12 + date.getMonthValue() - 1,
+                        key -> new MonthlySpending(date.getYear(), date.getMonthValue(), BigDecimal.ZERO));
+                month.setAmount(month.getAmount().add(BigDecimal.valueOf(segment.amountCents(row), 2)));
+            }
+        }
+        return new ArrayList<>(byMonth.values());
+    }
+
+    /**
+     * Archived expense counts per category of every archived user placed on the shard,
+     * by user id and then category id
+     */
+    public Map<Long, Map<Long, Long>> countByCategory(String shard) {
+        Map<Long, Map<Long, Long>> counts = new HashMap<>();
+        Path root = Paths.get(archivePath);
+        if (!Files.isDirectory(root)) {
+            return counts;
+        }
+        try (DirectoryStream<Path> users = Files.newDirectoryStream(root)) {
+            for (Path directory : users) {
+                Long userId = parseUserId(directory);
+                if (userId == null || (shardDirectoryService.isEnabled()
+                        && !shard.equals(shardDirectoryService.placement(userId).getShard()))) {
+                    continue;
+                }
+                Map<Long, Long> byCategory = new HashMap<>();
+                for (ExpenseSegment segment : segments(userId, null, null)) {
+                    for (int row = 0; row < segment.size(); row++) {
+                        Long categoryId = segment.categoryId(row);
+                        if (categoryId != null) {
+                            byCategory.merge(categoryId, 1L, Long::sum);
+                        }
+                    }
+                }
+                if (!byCategory.isEmpty()) {
+                    counts.put(userId, byCategory);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading expense archive", e);
+        }
+        return counts;
+    }
+
+    /**
+     * Archived expenses matching the filter, newest first
+     */
+    public List<Expense> findExpenses(Long userId, ExpenseFilter filter) {
+        LocalDate startDate = filter != null ? filter.getStartDate() : null;
+        LocalDate endDate = filter != null ? filter.getEndDate() : null;
+        List<Expense> expenses = new ArrayList<>();
+        for (ExpenseSegment segment : segments(userId, startDate, endDate)) {
+            for (int row = segment.firstOnOrAfter(startDate), end = segment.endOnOrBefore(endDate); row < end; row++) {
+                // Cheap columns first; text columns are only decoded for candidate rows
+                if (filter != null && filter.getCategoryId() != null && !filter.getCategoryId().equals(segment.categoryId(row))) {
+                    continue;
+                }
+                Expense expense = segment.toExpense(row);
+                if (matches(expense, filter)) {
+                    expenses.add(attach(userId, segment, row, expense));
+                }
+            }
+        }
+        expenses.sort(Comparator.comparing(Expense::getDate).thenComparing(Expense::getId).reversed());
+        return expenses;
+    }
+
+    /**
+     * Archived expenses with ids above the given one, in id order, at most limit of them
+     */
+    public List<Expense> findExpensesAfterId(Long userId, long afterId, int limit) {
+        List<long[]> matches = new ArrayList<>();
+        List<ExpenseSegment> archived = segments(userId, null, null);
+        for (int index = 0; index < archived.size(); index++) {
+            ExpenseSegment segment = archived.get(index);
+            for (int row = 0; row < segment.size(); row++) {
+                if (segment.id(row) > afterId) {
+                    matches.add(new long[] {segment.id(row), index, row});
+                }
+            }
+        }
+        matches.sort(Comparator.comparingLong(match -> match[0]));
+        List<Expense> expenses = new ArrayList<>(Math.min(limit, matches.size()));
+        for (long[] match : matches.subList(0, Math.min(limit, matches.size()))) {
+            ExpenseSegment segment = archived.get((int) match[1]);
+            int row = (int) match[2];
+            expenses.add(attach(userId, segment, row, segment.toExpense(row)));
+        }
+        return expenses;
+    }
+
+    /**
+     * Find one archived expense of the user
+     */
+    public Optional<Expense> findById(Long userId, Long expenseId) {
+        for (ExpenseSegment segment : segments(userId, null, null)) {
+            for (int row = 0; row < segment.size(); row++) {
+                if (segment.id(row) == expenseId) {
+                    return Optional.of(attach(userId, segment, row, segment.toExpense(row)));
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Sparse fieldset view of an archived expense, shaped like the live table's
+     */
+    public static Map<String, Object> toFields(Expense expense, Collection<String> fields) {
+        Set<String> selected = new LinkedHashSet<>();
+        selected.add("id");
+        selected.addAll(fields);
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (String field : selected) {
+            switch (field) {
+                case "id" -> row.put(field, expense.getId());
+                case "title" -> row.put(field, expense.getTitle());
+                case "description" -> row.put(field, expense.getDescription());
+                case "amount" -> row.put(field, expense.getAmount());
+                case "currencyCode" -> row.put(field, expense.getCurrencyCode());
+                case "date" -> row.put(field, expense.getDate());
+                case "categoryId" -> row.put(field, expense.getCategory() != null ? expense.getCategory().getId() : null);
+                case "receiptImageUrl" -> row.put(field, expense.getReceiptImageUrl());
+                case "location" -> row.put(field, expense.getLocation());
+                case "latitude" -> row.put(field, expense.getLatitude());
+                case "longitude" -> row.put(field, expense.getLongitude());
+                case "tags" -> row.put(field, expense.getTags());
+                case "isReimbursable" -> row.put(field, expense.getIsReimbursable());
+                case "status" -> row.put(field, expense.getStatus());
+                case "createdAt" -> row.put(field, expense.getCreatedAt());
+                case "updatedAt" -> row.put(field, expense.getUpdatedAt());
+                default -> throw new IllegalArgumentException("Unknown expense field: " + field);
+            }
+        }
+        return row;
+    }
+
+    private static boolean matches(Expense expense, ExpenseFilter filter) {
+        if (filter == null) {
+            return true;
+        }
+        return (filter.getCurrency() == null || filter.getCurrency().equals(expense.getCurrencyCode()))
+                && (filter.getMinAmount() == null || expense.getAmount().compareTo(filter.getMinAmount()) >= 0)
+                && (filter.getMaxAmount() == null || expense.getAmount().compareTo(filter.getMaxAmount()) <= 0)
+                && (filter.getTags() == null || (expense.getTags() != null && expense.getTags().contains(filter.getTags())));
+    }
+
+    private Expense attach(Long userId, ExpenseSegment segment, int row, Expense expense) {
+        User user = new User();
+        user.setId(userId);
+        expense.setUser(user);
+        Long categoryId = segment.categoryId(row);
+        if (categoryId != null) {
+            Category category = new Category();
+            category.setId(categoryId);
+            categoryCatalogService.resolve(userId, categoryId).ifPresent(info -> {
+                category.setName(info.getName());
+                category.setIcon(info.getIcon());
+                category.setColor(info.getColor());
+                category.setIsDefault(info.getIsDefault());
+            });
+            expense.setCategory(category);
+        }
+        return expense;
+    }
+
+    /**
+     * Move every closed year out of the expenses table, one shard at a time
+     */
+    @Scheduled(cron = "${archive.cron}")
+    public void archiveClosedYears() {
+        if (!enabled) {
+            return;
+        }
+        recoverPending();
+        LocalDate cutoff = LocalDate.now().minusYears(retainYears).withDayOfYear(1);
+        if (!shardDirectoryService.isEnabled()) {
+            archiveShard("default", cutoff);
+            return;
+        }
+        for (String shard : shardDirectoryService.getShardNames()) {
+            ShardRoutingDataSource.callOn(shard, () -> archiveShard(shard, cutoff));
+        }
+    }
+
+    private Void archiveShard(String shard, LocalDate cutoff) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        List<Object[]> candidates = transaction.execute(status -> expenseRepository.findArchivableUserYears(cutoff));
+        int archived = 0;
+        for (Object[] candidate : candidates) {
+            Long userId = ((Number) candidate[0]).longValue();
+            int year = ((Number) candidate[1]).intValue();
+            if (shardDirectoryService.isEnabled()) {
+                // Rows left behind by a move, or a move in progress, are not this shard's to archive
+                ShardDirectoryService.Placement placement = shardDirectoryService.placement(userId);
+                if (!shard.equals(placement.getShard()) || ShardDirectoryService.MOVING.equals(placement.getState())) {
+                    continue;
+                }
+            }
+            try {
+                archived += archiveYear(transaction, userId, year);
+            } catch (RuntimeException e) {
+                log.error("Failed to archive {} expenses of user {}", year, userId, e);
+            }
+        }
+        log.info("Archived {} expenses on {} dated before {}", archived, shard, cutoff);
+        return null;
+    }
+
+    /**
+     * Write the year's live rows, merged with any earlier segment for that year, to a
+     * pending file, delete them in the same transaction, and publish the file once the
+     * delete has committed. A crash in between is resolved by {@link #recoverPending()}.
+     */
+    private int archiveYear(TransactionTemplate transaction, Long userId, int year) {
+        Path directory = userDirectory(userId);
+        Path target = directory.resolve(year + SEGMENT_SUFFIX);
+        Path pending = directory.resolve(year + PENDING_SUFFIX);
+
+        Integer moved = transaction.execute(status -> {
+            List<Expense> rows = expenseRepository.findArchivable(userId,
+                    LocalDate.ofYearDay(year, 1), LocalDate.of(year, 12, 31));
+            if (rows.isEmpty()) {
+                return 0;
+            }
+            List<Long> ids = rows.stream().map(Expense::getId).collect(Collectors.toList());
+            List<Expense> merged = new ArrayList<>(rows);
+            if (Files.exists(target)) {
+                Set<Long> live = new HashSet<>(ids);
+                ExpenseSegment previous = segment(target);
+                for (int row = 0; row < previous.size(); row++) {
+                    if (!live.contains(previous.id(row))) {
+                        Expense expense = previous.toExpense(row);
+                        Long categoryId = previous.categoryId(row);
+                        if (categoryId != null) {
+                            Category category = new Category();
+                            category.setId(categoryId);
+                            expense.setCategory(category);
+                        }
+                        merged.add(expense);
+                    }
+                }
+            }
+            try {
+                Files.createDirectories(directory);
+                ExpenseSegment.write(pending, year, ids.get(0), merged);
+            } catch (IOException e) {
+                throw new RuntimeException("Error writing expense segment " + pending, e);
+            }
+            for (int from = 0; from < ids.size(); from += DELETE_BATCH_SIZE) {
+                expenseRepository.deleteAllByIdInBatch(ids.subList(from, Math.min(ids.size(), from + DELETE_BATCH_SIZE)));
+            }
+            return ids.size();
+        });
+
+        if (moved != null && moved > 0) {
+            publish(pending, target);
+            dataVersionService.bump(userId);
+        }
+        return moved != null ? moved : 0;
+    }
+
+    /**
+     * Resolve pending segments left by an interrupted run: if the probe row is gone
+     * from the live table the delete committed and the segment is published, otherwise
+     * the pending file is discarded and the year is archived again on the next run.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverPending() {
+        Path root = Paths.get(archivePath);
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        try (DirectoryStream<Path> users = Files.newDirectoryStream(root)) {
+            for (Path directory : users) {
+                Long userId = parseUserId(directory);
+                if (userId == null) {
+                    continue;
+                }
+                try (DirectoryStream<Path> pendingFiles = Files.newDirectoryStream(directory, "*" + PENDING_SUFFIX)) {
+                    for (Path pending : pendingFiles) {
+                        long probeId = ExpenseSegment.open(pending).getProbeId();
+                        Boolean stillLive = onUserShard(userId,
+                                () -> transaction.execute(status -> expenseRepository.existsById(probeId)));
+                        if (Boolean.TRUE.equals(stillLive)) {
+                            Files.delete(pending);
+                            log.warn("Discarded uncommitted expense segment {}", pending);
+                        } else {
+                            String name = pending.getFileName().toString();
+                            publish(pending, directory.resolve(name.substring(0, name.length() - PENDING_SUFFIX.length()) + SEGMENT_SUFFIX));
+                            dataVersionService.bump(userId);
+                            log.info("Published recovered expense segment {}", pending);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error recovering expense archive", e);
+        }
+    }
+
+    private <T> T onUserShard(Long userId, Supplier<T> work) {
+        if (!shardDirectoryService.isEnabled()) {
+            return work.get();
+        }
+        return ShardRoutingDataSource.callOn(shardDirectoryService.placement(userId).getShard(), work);
+    }
+
+    private void publish(Path pending, Path target) {
+        try {
+            Files.move(pending, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("Error publishing expense segment " + target, e);
+        }
+        synchronized (segments) {
+            segments.remove(target);
+        }
+    }
+
+    private Path userDirectory(Long userId) {
+        return Paths.get(archivePath, Long.toString(userId));
+    }
+
+    private static Long parseUserId(Path directory) {
+        try {
+            return Files.isDirectory(directory) ? Long.valueOf(directory.getFileName().toString()) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The user's segments for years overlapping the range, oldest first
+     */
+    private List<ExpenseSegment> segments(Long userId, LocalDate startDate, LocalDate endDate) {
+        Path directory = userDirectory(userId);
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        TreeMap<Integer, Path> years = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int year = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                if ((startDate == null || year >= startDate.getYear()) && (endDate == null || year <= endDate.getYear())) {
+                    years.put(year, file);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading expense archive", e);
+        }
+        List<ExpenseSegment> found = new ArrayList<>(years.size());
+        for (Path file : years.values()) {
+            found.add(segment(file));
+        }
+        return found;
+    }
+
+    /**
+     * Open a segment through the cache, reopening it if the file was replaced
+     */
+    private ExpenseSegment segment(Path file) {
+        try {
+            FileTime modified = Files.getLastModifiedTime(file);
+            synchronized (segments) {
+                CachedSegment cached = segments.get(file);
+                if (cached != null && cached.modified.equals(modified)) {
+                    return cached.segment;
+                }
+            }
+            // Mapped outside the lock; a concurrent open of the same file is harmless
+            ExpenseSegment segment = ExpenseSegment.open(file);
+            synchronized (segments) {
+                segments.put(file, new CachedSegment(segment, modified));
+            }
+            return segment;
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening expense segment " + file, e);
+        }
+    }
+
+    private static class CachedSegment {
+        private final ExpenseSegment segment;
+        private final FileTime modified;
+
+        CachedSegment(ExpenseSegment segment, FileTime modified) {
+            this.segment = segment;
+            this.modified = modified;
+        }
+    }
+}
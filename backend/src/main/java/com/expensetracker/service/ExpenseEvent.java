@@ -0,0 +1,72 @@
+package com.expensetracker.service;
+
+import com.expensetracker.model.Expense;
+
+/**
+ * A committed expense change as carried by the event bus. Instances are preallocated
+ * ring slots and are overwritten once every consumer has passed them, so handlers
+ * must copy anything they keep.
+ */
+public class ExpenseEvent {
+
+    public static final byte CREATED = 1;
+    public static final byte UPDATED = 2;
+    public static final byte DELETED = 3;
+    public static final byte STATUS_CHANGED = 4;
+
+    private byte type;
+    private long timestamp;
+    private long userId;
+    private long expenseId;
+    private long changeSeq;
+    private long amountCents;
+    private long categoryId;
+    private long previousCategoryId;
+    private int epochDay;
+    private byte status;
+    private String title;
+
+    void set(byte type, long userId, long expenseId, long changeSeq, long amountCents,
+             long categoryId, long previousCategoryId, int epochDay, byte status, String title) {
+        this.type = type;
+        this.timestamp = System.currentTimeMillis();
+        this.userId = userId;
+        this.expenseId = expenseId;
+        this.changeSeq = changeSeq;
+        this.amountCents = amountCents;
+        this.categoryId = categoryId;
+        this.previousCategoryId = previousCategoryId;
+        this.epochDay = epochDay;
+        this.status = status;
+        this.title = title;
+    }
+
+    public byte getType() { return type; }
+
+    public long getTimestamp() { return timestamp; }
+
+    public long getUserId() { return userId; }
+
+    public long getExpenseId() { return expenseId; }
+
+    public long getChangeSeq() { return changeSeq; }
+
+    public long getAmountCents() { return amountCents; }
+
+    /** Category id, 0 when the expense has none */
+    public long getCategoryId() { return categoryId; }
+
+    /** Category id before an update, 0 when it had none or for other event types */
+    public long getPreviousCategoryId() { return previousCategoryId; }
+
+    public int getEpochDay() { return epochDay; }
+
+    /** Status as ordinal + 1, 0 when unknown */
+    public byte getStatusCode() { return status; }
+
+    public Expense.ExpenseStatus getStatus() {
+        return status == 0 ? null : Expense.ExpenseStatus.values()[status - 1];
+    }
+
+    public String getTitle() { return title; }
+}
@@ -0,0 +1,364 @@
+package com.expensetracker.service;
+
+
+import com.expensetracker.model.Expense;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process bus for committed expense changes. Writes publish after commit into a
+ * preallocated ring of event slots: producers claim a sequence with an atomic
+ * increment, fill the slot and mark it published, and never take a lock unless the
+ * blocking wait strategy is used. Every registered handler runs on its own thread,
+ * follows the ring at its own pace and receives whatever has been published since its
+ * last pass as one batch.
+ *
+ * A producer that laps the slowest handler waits for it, so a stalled handler slows
+ * writers down instead of dropping events; the waits, the backlog and the batch sizes
+ * are exported as expense.events.* metrics.
+ */
+@Service
+public class ExpenseEventBus {
+
+    private static final Logger log = LoggerFactory.getLogger(ExpenseEventBus.class);
+
+    @Autowired
+    private List<ExpenseEventHandler> handlers;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${events.ring-size:8192}")
+    private int ringSize;
+
+    @Value("${events.wait-strategy:blocking}")
+    private String waitStrategyName;
+
+    private ExpenseEvent[] slots;
+
+    private int mask;
+
+    private int indexShift;
+
+    // Lap number of the event last published in each slot
+    private AtomicIntegerArray published;
+
+    // Highest sequence handed to a producer
+    private final AtomicLong claimed = new AtomicLong(-1);
+
+    private final List<Consumer> consumers = new ArrayList<>();
+
+    private WaitStrategy waitStrategy;
+
+    private volatile boolean running;
+
+    private Counter publishedCounter;
+
+    private Timer producerWait;
+
+    @PostConstruct
+    void start() {
+        if (Integer.bitCount(ringSize) != 1) {
+            throw new IllegalStateException("events.ring-size must be a power of two: " + ringSize);
+        }
+        slots = new ExpenseEvent[ringSize];
+        for (int i = 0; i < ringSize; i++) {
+            slots[i] = new ExpenseEvent();
+        }
+        mask = ringSize - 1;
+        indexShift = Integer.numberOfTrailingZeros(ringSize);
+        published = new AtomicIntegerArray(ringSize);
+        for (int i = 0; i < ringSize; i++) {
+            published.set(i, -1);
+        }
+        waitStrategy = WaitStrategy.named(waitStrategyName);
+
+        publishedCounter = Counter.builder("expense.events.published")
+                .description("Expense events published to the bus")
+                .register(meterRegistry);
+        producerWait = Timer.builder("expense.events.producer.wait")
+                .description("Time producers waited for the slowest handler to free a slot")
+                .register(meterRegistry);
+        Gauge.builder("expense.events.backlog", this, ExpenseEventBus::getBacklog)
+                .description("Events published but not yet handled by the slowest handler")
+                .register(meterRegistry);
+        Gauge.builder("expense.events.remaining.capacity", this, bus -> bus.ringSize - bus.getBacklog())
+                .description("Free slots before producers have to wait")
+                .register(meterRegistry);
+
+        running = true;
+        for (ExpenseEventHandler handler : handlers) {
+            Consumer consumer = new Consumer(handler);
+            consumers.add(consumer);
+            consumer.thread.start();
+        }
+        log.info("Expense event bus started with {} slots, {} wait strategy and {} handlers",
+                ringSize, waitStrategyName, consumers.size());
+    }
+
+    /**
+     * Stop accepting new batches and let every handler drain what has been published
+     */
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        waitStrategy.signalAll();
+        for (Consumer consumer : consumers) {
+            consumer.thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    /**
+     * Publish a change of the expense once the current transaction commits
+     */
+    public void publishAfterCommit(byte type, Long userId, Expense expense) {
+        publishAfterCommit(type, userId, expense, null);
+    }
+
+    /**
+     * Publish a change of the expense once the current transaction commits, with the
+     * category it had before an update
+     */
+    public void publishAfterCommit(byte type, Long userId, Expense expense, Long previousCategoryId) {
+        // Capture the values now; the entity may change before the commit
+        long expenseId = expense.getId();
+        long changeSeq = expense.getChangeSeq() != null ? expense.getChangeSeq() : 0;
+        long amountCents = expense.getAmount() != null
+                ? expense.getAmount().setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue() : 0;
+        long categoryId = expense.getCategory() != null ? expense.getCategory().getId() : 0;
+        long previous = previousCategoryId != null ? previousCategoryId : 0;
+        int epochDay = expense.getDate() != null ? (int) expense.getDate().toEpochDay() : 0;
+        byte status = expense.getStatus() != null ? (byte) (expense.getStatus().ordinal() + 1) : 0;
+        String title = expense.getTitle();
+        Runnable publish = () -> publish(type, userId, expenseId, changeSeq, amountCents, categoryId, previous,
+                epochDay, status, title);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish.run();
+                }
+            });
+        } else {
+            publish.run();
+        }
+    }
+
+    /**
+     * Publish one event and return its sequence
+     */
+    public long publish(byte type, long userId, long expenseId, long changeSeq, long amountCents,
+                        long categoryId, long previousCategoryId, int epochDay, byte status, String title) {
+        long sequence = claimed.incrementAndGet();
+        long wrapPoint = sequence - ringSize;
+        if (wrapPoint > minimumConsumerSequence()) {
+            long started = System.nanoTime();
+            while (wrapPoint > minimumConsumerSequence()) {
+                LockSupport.parkNanos(1_000L);
+            }
+            producerWait.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+        int index = (int) sequence & mask;
+        slots[index].set(type, userId, expenseId, changeSeq, amountCents, categoryId, previousCategoryId,
+                epochDay, status, title);
+        published.set(index, (int) (sequence >>> indexShift));
+        publishedCounter.increment();
+        waitStrategy.signalAll();
+        return sequence;
+    }
+
+    /**
+     * Events claimed by producers but not yet handled by every handler
+     */
+    public long getBacklog() {
+        return Math.max(0, claimed.get() - minimumConsumerSequence());
+    }
+
+    private long minimumConsumerSequence() {
+        long minimum = claimed.get();
+        for (Consumer consumer : consumers) {
+            minimum = Math.min(minimum, consumer.sequence.get());
+        }
+        return minimum;
+    }
+
+    private boolean isPublished(long sequence) {
+        return published.get((int) sequence & mask) == (int) (sequence >>> indexShift);
+    }
+
+    /**
+     * Highest sequence from next up to available whose slot and all before it are published;
+     * a producer that claimed a slot may still be filling it
+     */
+    private long highestPublished(long next, long available) {
+        for (long sequence = next; sequence <= available; sequence++) {
+            if (!isPublished(sequence)) {
+                return sequence - 1;
+            }
+        }
+        return available;
+    }
+
+    /**
+     * One handler and the thread feeding it batches
+     */
+    private class Consumer implements Runnable {
+        private final ExpenseEventHandler handler;
+        private final AtomicLong sequence = new AtomicLong(-1);
+        private final Thread thread;
+        private final DistributionSummary batchSize;
+
+        Consumer(ExpenseEventHandler handler) {
+            this.handler = handler;
+            String name = handler.getClass().getSimpleName().split("\\$\\$")[0];
+            this.thread = new Thread(this, "expense-events-" + name);
+            this.thread.setDaemon(true);
+            this.batchSize = DistributionSummary.builder("expense.events.batch.size")
+                    .description("Events handed to a handler in one batch")
+                    .tag("handler", name)
+                    .register(meterRegistry);
+        }
+
+        @Override
+        public void run() {
+            long next = sequence.get() + 1;
+            while (true) {
+                long available = waitStrategy.waitFor(next, ExpenseEventBus.this);
+                long high = highestPublished(next, available);
+                if (high < next) {
+                    if (!running && claimed.get() < next) {
+                        return;
+                    }
+                    Thread.onSpinWait();
+                    continue;
+                }
+                for (long current = next; current <= high; current++) {
+                    try {
+                        handler.onEvent(slots[(int) current & mask], current, current == high);
+                    } catch (RuntimeException e) {
+                        log.error("Expense event handler {} failed on event {}", thread.getName(), current, e);
+                    }
+                }
+                batchSize.record(high - next + 1);
+                sequence.set(high);
+                next = high + 1;
+            }
+        }
+    }
+
+    /**
+     * How handlers wait for the next event: busy-spin and yielding keep latency lowest
+     * at the cost of a core per handler, sleeping backs off to short parks, and blocking
+     * parks on a condition that producers signal.
+     */
+    abstract static class WaitStrategy {
+
+        /**
+         * Wait until an event at or after next has been claimed or the bus is stopping,
+         * and return the highest claimed sequence
+         */
+        long waitFor(long next, ExpenseEventBus bus) {
+            int attempts = 0;
+            long available;
+            while ((available = bus.claimed.get()) < next && bus.running) {
+                idle(attempts++);
+            }
+            return available;
+        }
+
+        abstract void idle(int attempts);
+
+        void signalAll() {
+        }
+
+        static WaitStrategy named(String name) {
+            switch (name.toLowerCase()) {
+                case "busy-spin":
+                    return new WaitStrategy() {
+                        @Override
+                        void idle(int attempts) {
+                            Thread.onSpinWait();
+                        }
+                    };
+                case "yielding":
+                    return new WaitStrategy() {
+                        @Override
+                        void idle(int attempts) {
+                            if (attempts < 100) {
+                                Thread.onSpinWait();
+                            } else {
+                                Thread.yield();
+                            }
+                        }
+                    };
+                case "sleeping":
+                    return new WaitStrategy() {
+                        @Override
+                        void idle(int attempts) {
+                            if (attempts < 100) {
+                                Thread.onSpinWait();
+                            } else if (attempts < 200) {
+                                Thread.yield();
+                            } else {
+                                LockSupport.parkNanos(100_000L);
+                            }
+                        }
+                    };
+                case "blocking":
+                    return new BlockingWaitStrategy();
+                default:
+                    throw new IllegalStateException("Unknown events.wait-strategy: " + name);
+            }
+        }
+    }
+
+    private static class BlockingWaitStrategy extends WaitStrategy {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition published = lock.newCondition();
+
+        @Override
+        void idle(int attempts) {
+            lock.lock();
+            try {
+                // Bounded, so a signal racing with the check above costs at most one interval
+                published.awaitNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        void signalAll() {
+            lock.lock();
+            try {
+                published.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
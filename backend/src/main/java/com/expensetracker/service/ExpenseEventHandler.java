@@ -0,0 +1,11 @@
+package com.expensetracker.service;
+
+/**
+ * Consumer of expense events. Each handler runs on its own thread and sees every event
+ * in publication order; endOfBatch marks the last event currently available, which is
+ * the point to flush work accumulated over the batch.
+ */
+public interface ExpenseEventHandler {
+
+    void onEvent(ExpenseEvent event, long sequence, boolean endOfBatch);
+}
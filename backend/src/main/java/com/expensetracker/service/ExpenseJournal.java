@@ -0,0 +1,467 @@
+package com.expensetracker.service;
+
+
+import com.expensetracker.model.Expense;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of committed expense changes on local disk. Records are fixed
+ * 64-byte entries appended to preallocated, memory-mapped segment files named after
+ * their first offset; readers map the same files and walk them without allocating,
+ * so in-process consumers can replay from any offset at memory speed. Closed segments
+ * are compacted to the latest record per expense and dropped after journal.retention.
+ *
+ * Records are appended by the event bus after commit, so a crash in between loses
+ * them; each record carries the user's change sequence, which has no gaps, so
+ * consumers can detect a loss and repair from the delta sync feed. Two transactions
+ * committing together can append in the opposite order to their change sequences, so
+ * the latest record is the one with the highest change sequence, not the highest offset.
+ */
+@Service
+public class ExpenseJournal implements ExpenseEventHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(ExpenseJournal.class);
+
+    static final int RECORD_SIZE = 64;
+
+    // Record layout
+    private static final int OFFSET = 0;
+    private static final int TIMESTAMP = 8;
+    private static final int USER_ID = 16;
+    private static final int EXPENSE_ID = 24;
+    private static final int CHANGE_SEQ = 32;
+    private static final int AMOUNT_CENTS = 40;
+    private static final int CATEGORY_ID = 48;
+    private static final int EPOCH_DAY = 56;
+    private static final int TYPE = 60;
+    private static final int STATUS = 61;
+    private static final int CHECKSUM = 62;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    @Value("${journal.path}")
+    private String journalPath;
+
+    @Value("${journal.segment-size:64MB}")
+    private DataSize segmentSize;
+
+    @Value("${journal.retention:30d}")
+    private Duration retention;
+
+    private Path directory;
+
+    private final ConcurrentNavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+    private final Object compactionLock = new Object();
+
+    private Segment active;
+
+    private volatile long endOffset;
+
+    @PostConstruct
+    void init() throws IOException {
+        directory = Files.createDirectories(Paths.get(journalPath));
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        long next = 0;
+        for (Path file : files) {
+            // Every existing segment is closed; the last one may end in a torn or empty tail
+            Segment segment = Segment.recover(file, baseOffset(file));
+            if (segment.count == 0) {
+                Files.delete(file);
+                continue;
+            }
+            segments.put(segment.base, segment);
+            next = segment.lastOffset() + 1;
+        }
+        endOffset = next;
+        active = Segment.create(segmentFile(next), next, recordsPerSegment());
+        segments.put(next, active);
+        log.info("Expense journal at {} resumes at offset {}", directory, next);
+    }
+
+    @PreDestroy
+    void close() {
+        flush();
+    }
+
+    /**
+     * Append each event published on the bus
+     */
+    @Override
+    public void onEvent(ExpenseEvent event, long sequence, boolean endOfBatch) {
+        append(event.getType(), event.getUserId(), event.getExpenseId(), event.getChangeSeq(),
+                event.getAmountCents(), event.getCategoryId(), event.getEpochDay(), event.getStatusCode());
+    }
+
+    /**
+     * Append one record and return its offset
+     */
+    public synchronized long append(byte type, long userId, long expenseId, long changeSeq, long amountCents,
+                                    long categoryId, int epochDay, byte status) {
+        if (active.count == active.capacity) {
+            roll();
+        }
+        long offset = endOffset;
+        ByteBuffer buffer = active.buffer;
+        int position = active.count * RECORD_SIZE;
+        buffer.putLong(position + OFFSET, offset);
+        buffer.putLong(position + TIMESTAMP, System.currentTimeMillis());
+        buffer.putLong(position + USER_ID, userId);
+        buffer.putLong(position + EXPENSE_ID, expenseId);
+        buffer.putLong(position + CHANGE_SEQ, changeSeq);
+        buffer.putLong(position + AMOUNT_CENTS, amountCents);
+        buffer.putLong(position + CATEGORY_ID, categoryId);
+        buffer.putInt(position + EPOCH_DAY, epochDay);
+        buffer.put(position + TYPE, type);
+        buffer.put(position + STATUS, status);
+        buffer.putShort(position + CHECKSUM, checksum(buffer, position));
+        active.count++;
+        // Publishes the record to readers, which read endOffset before the buffer
+        endOffset = offset + 1;
+        return offset;
+    }
+
+    private void roll() {
+        try {
+            active.force();
+            active = Segment.create(segmentFile(endOffset), endOffset, recordsPerSegment());
+            segments.put(endOffset, active);
+        } catch (IOException e) {
+            throw new RuntimeException("Error rolling expense journal segment", e);
+        }
+    }
+
+    /**
+     * Force appended records to disk
+     */
+    @Scheduled(fixedDelayString = "${journal.flush-interval-ms:1000}")
+    public void flush() {
+        Segment segment;
+        synchronized (this) {
+            segment = active;
+        }
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Offset of the oldest record still retained
+     */
+    public long getFirstOffset() {
+        Map.Entry<Long, Segment> first = segments.firstEntry();
+        return first != null ? first.getKey() : endOffset;
+    }
+
+    /**
+     * Offset the next record will get
+     */
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * Pass every record from the offset to the current end to the consumer and return
+     * the offset to continue from. Offsets removed by retention are skipped; after
+     * compaction a range holds only the latest record per expense.
+     */
+    public long replay(long fromOffset, RecordConsumer consumer) {
+        long end = endOffset;
+        Record record = new Record();
+        long from = Math.max(fromOffset, getFirstOffset());
+        Long base = segments.floorKey(from);
+        for (Segment segment : (base != null ? segments.tailMap(base) : segments).values()) {
+            if (segment.base >= end) {
+                break;
+            }
+            int count = segment.readableCount(end);
+            for (int index = segment.indexOf(from, count); index < count; index++) {
+                record.wrap(segment.buffer, index * RECORD_SIZE);
+                consumer.accept(record);
+            }
+        }
+        return Math.max(fromOffset, end);
+    }
+
+    /**
+     * Keep only the latest record per expense, by change sequence, in closed segments
+     */
+    @Scheduled(cron = "${journal.compaction-cron}")
+    public void compact() {
+        synchronized (compactionLock) {
+            Map<Long, long[]> latest = new HashMap<>();
+            long end = endOffset;
+            replay(0, record -> {
+                long[] kept = latest.get(record.getExpenseId());
+                // Offsets ascend, so a tie on change sequence keeps the later record
+                if (kept == null || record.getChangeSeq() >= kept[0]) {
+                    latest.put(record.getExpenseId(), new long[] { record.getChangeSeq(), record.getOffset() });
+                }
+            });
+            long removed = 0;
+            for (Segment segment : segments.headMap(activeBase()).values()) {
+                try {
+                    removed += compact(segment, latest, end);
+                } catch (IOException e) {
+                    log.error("Failed to compact expense journal segment {}", segment.file, e);
+                }
+            }
+            log.info("Compacted expense journal: {} superseded records removed", removed);
+            enforceRetention();
+        }
+    }
+
+    private long compact(Segment segment, Map<Long, long[]> latest, long end) throws IOException {
+        int count = segment.readableCount(end);
+        int kept = 0;
+        for (int index = 0; index < count; index++) {
+            if (isLatest(latest, segment, index * RECORD_SIZE)) {
+                kept++;
+            }
+        }
+        if (kept == count) {
+            return 0;
+        }
+        Path compacted = segment.file.resolveSibling(segment.file.getFileName() + ".compact");
+        ByteBuffer out = ByteBuffer.allocate(kept * RECORD_SIZE);
+        for (int index = 0; index < count; index++) {
+            int position = index * RECORD_SIZE;
+            if (isLatest(latest, segment, position)) {
+                out.put(segment.buffer.slice(position, RECORD_SIZE));
+            }
+        }
+        out.flip();
+        try (FileChannel channel = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(true);
+        }
+        Files.move(compacted, segment.file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // Readers holding the old mapping finish on it; new replays see the compacted file
+        Segment replacement = kept > 0 ? Segment.recover(segment.file, segment.base) : null;
+        if (replacement != null) {
+            segments.put(segment.base, replacement);
+        } else {
+            segments.remove(segment.base);
+            Files.delete(segment.file);
+        }
+        return count - kept;
+    }
+
+    private static boolean isLatest(Map<Long, long[]> latest, Segment segment, int position) {
+        long[] kept = latest.get(segment.buffer.getLong(position + EXPENSE_ID));
+        return kept != null && kept[1] == segment.buffer.getLong(position + OFFSET);
+    }
+
+    /**
+     * Drop closed segments whose newest record is older than the retention window
+     */
+    private void enforceRetention() {
+        long cutoff = System.currentTimeMillis() - retention.toMillis();
+        for (Segment segment : segments.headMap(activeBase()).values()) {
+            if (segment.count > 0 && segment.buffer.getLong((segment.count - 1) * RECORD_SIZE + TIMESTAMP) >= cutoff) {
+                break;
+            }
+            segments.remove(segment.base);
+            try {
+                Files.deleteIfExists(segment.file);
+                log.info("Dropped expense journal segment {}", segment.file);
+            } catch (IOException e) {
+                log.error("Failed to delete expense journal segment {}", segment.file, e);
+            }
+        }
+    }
+
+    private synchronized long activeBase() {
+        return active.base;
+    }
+
+    private int recordsPerSegment() {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE / RECORD_SIZE, segmentSize.toBytes() / RECORD_SIZE));
+    }
+
+    private Path segmentFile(long base) {
+        return directory.resolve(String.format("%020d", base) + SEGMENT_SUFFIX);
+    }
+
+    private static long baseOffset(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static short checksum(ByteBuffer buffer, int position) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(position, CHECKSUM));
+        return (short) crc.getValue();
+    }
+
+    /**
+     * Receives records during a replay
+     */
+    public interface RecordConsumer {
+        void accept(Record record);
+    }
+
+    /**
+     * Read-only view of one journal record, reused across the records of a replay;
+     * copy any value that must outlive the callback
+     */
+    public static class Record {
+        private ByteBuffer buffer;
+        private int position;
+
+        void wrap(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        public long getOffset() { return buffer.getLong(position + OFFSET); }
+
+        public long getTimestamp() { return buffer.getLong(position + TIMESTAMP); }
+
+        public long getUserId() { return buffer.getLong(position + USER_ID); }
+
+        public long getExpenseId() { return buffer.getLong(position + EXPENSE_ID); }
+
+        public long getChangeSeq() { return buffer.getLong(position + CHANGE_SEQ); }
+
+        public long getAmountCents() { return buffer.getLong(position + AMOUNT_CENTS); }
+
+        /** Category id, 0 when the expense has none */
+        public long getCategoryId() { return buffer.getLong(position + CATEGORY_ID); }
+
+        public int getEpochDay() { return buffer.getInt(position + EPOCH_DAY); }
+
+        public byte getType() { return buffer.get(position + TYPE); }
+
+        /** Status, or null when the record does not carry one */
+        public Expense.ExpenseStatus getStatus() {
+            byte status = buffer.get(position + STATUS);
+            return status == 0 ? null : Expense.ExpenseStatus.values()[status - 1];
+        }
+    }
+
+    /**
+     * One segment file. Closed and compacted segments are mapped read-only at their
+     * exact length; the active one is preallocated and mapped read-write.
+     */
+    private static class Segment {
+        private final Path file;
+        private final long base;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private volatile int count;
+
+        private Segment(Path file, long base, MappedByteBuffer buffer, int capacity, int count) {
+            this.file = file;
+            this.base = base;
+            this.buffer = buffer;
+            this.capacity = capacity;
+            this.count = count;
+        }
+
+        static Segment create(Path file, long base, int capacity) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                raf.setLength((long) capacity * RECORD_SIZE);
+                MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+                return new Segment(file, base, buffer, capacity, 0);
+            }
+        }
+
+        /**
+         * Open an existing segment, keeping the valid records and cutting off a torn or
+         * never-written tail
+         */
+        static Segment recover(Path file, long base) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                int records = (int) (raf.length() / RECORD_SIZE);
+                MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, (long) records * RECORD_SIZE);
+                int valid = 0;
+                long previous = base - 1;
+                while (valid < records) {
+                    int position = valid * RECORD_SIZE;
+                    long offset = buffer.getLong(position + OFFSET);
+                    if (buffer.get(position + TYPE) == 0 || offset <= previous
+                            || buffer.getShort(position + CHECKSUM) != checksum(buffer, position)) {
+                        break;
+                    }
+                    previous = offset;
+                    valid++;
+                }
+                if (valid < records || raf.length() != (long) records * RECORD_SIZE) {
+                    buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, (long) valid * RECORD_SIZE);
+                    raf.setLength((long) valid * RECORD_SIZE);
+                }
+                return new Segment(file, base, buffer, valid, valid);
+            }
+        }
+
+        int readableCount(long end) {
+            int readable = count;
+            // The active segment may hold records appended after the replay started
+            while (readable > 0 && buffer.getLong((readable - 1) * RECORD_SIZE + OFFSET) >= end) {
+                readable--;
+            }
+            return readable;
+        }
+
+        long lastOffset() {
+            return buffer.getLong((count - 1) * RECORD_SIZE + OFFSET);
+        }
+
+        /**
+         * Index of the first record at or after the offset; offsets ascend but may
+         * have gaps once the segment is compacted
+         */
+        int indexOf(long offset, int readable) {
+            int low = 0;
+            int high = readable;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (buffer.getLong(middle * RECORD_SIZE + OFFSET) < offset) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        void force() {
+            buffer.force();
+        }
+    }
+}
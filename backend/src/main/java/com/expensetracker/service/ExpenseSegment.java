@@ -0,0 +1,475 @@
+package com.expensetracker.service;
+
+
+import com.expensetracker.model.Expense;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * One user's archived expenses for one year, stored column by column. Numbers are
+ * delta and varint encoded, text is length-prefixed UTF-8, and every column is then
+ * deflated on its own. The file is memory-mapped and a column is only inflated the
+ * first time a query needs it, so totals and trends never touch the text columns.
+ * Rows are sorted by date, then id. Segments are immutable once written.
+ */
+public class ExpenseSegment {
+
+    private static final int MAGIC = 0x45585347; // "EXSG"
+
+    private static final int VERSION = 2;
+
+    private static final int ID = 0;
+    private static final int DATE = 1;
+    private static final int AMOUNT = 2;
+    private static final int CATEGORY = 3;
+    private static final int CURRENCY = 4;
+    private static final int STATUS = 5;
+    private static final int REIMBURSABLE = 6;
+    private static final int TITLE = 7;
+    private static final int DESCRIPTION = 8;
+    private static final int LOCATION = 9;
+    private static final int TAGS = 10;
+    private static final int RECEIPT_IMAGE_URL = 11;
+    private static final int CREATED_AT = 12;
+    private static final int UPDATED_AT = 13;
+    // Added in version 2; grid cell of the coordinates plus one, zero for none
+    private static final int GEO_CELL = 14;
+    private static final int COLUMNS = 15;
+
+    // Version 1 segments end at UPDATED_AT
+    private static final int VERSION_1_COLUMNS = 14;
+
+    private final ByteBuffer buffer;
+    private final int year;
+    private final int rows;
+    private final long probeId;
+    private final int columnCount;
+    private final int[] offsets = new int[COLUMNS];
+    private final int[] compressedLengths = new int[COLUMNS];
+    private final int[] rawLengths = new int[COLUMNS];
+
+    private long[] ids;
+    private int[] epochDays;
+    private long[] amountCents;
+    private long[] categoryIds;
+    private Object[] columns;
+
+    /**
+     * Magic, version, year, rows, probe id, then offset/compressed/raw length per column
+     */
+    private static int headerSize(int columns) {
+        return 4 + 4 + 4 + 4 + 8 + columns * 12;
+    }
+
+    private ExpenseSegment(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.capacity() < headerSize(VERSION_1_COLUMNS) || buffer.getInt(0) != MAGIC) {
+            throw new RuntimeException("Not an expense segment");
+        }
+        int version = buffer.getInt(4);
+        if (version != 1 && version != VERSION) {
+            throw new RuntimeException("Unsupported expense segment version " + version);
+        }
+        this.columnCount = version == 1 ? VERSION_1_COLUMNS : COLUMNS;
+        if (buffer.capacity() < headerSize(columnCount)) {
+            throw new RuntimeException("Truncated expense segment");
+        }
+        this.year = buffer.getInt(8);
+        this.rows = buffer.getInt(12);
+        this.probeId = buffer.getLong(16);
+        for (int column = 0; column < columnCount; column++) {
+            int entry = 24 + column * 12;
+            offsets[column] = buffer.getInt(entry);
+            compressedLengths[column] = buffer.getInt(entry + 4);
+            rawLengths[column] = buffer.getInt(entry + 8);
+            if ((long) offsets[column] + compressedLengths[column] > buffer.capacity()) {
+                throw new RuntimeException("Truncated expense segment");
+            }
+        }
+    }
+
+    /**
+     * Map a segment file read-only; the mapping outlives the file channel
+     */
+    public static ExpenseSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ExpenseSegment(buffer);
+        }
+    }
+
+    /**
+     * Write expenses as a new segment and force it to disk. The probe id names one of
+     * the rows so recovery can tell whether their deletion from the live table committed.
+     */
+    public static void write(Path file, int year, long probeId, List<Expense> expenses) throws IOException {
+        List<Expense> sorted = new ArrayList<>(expenses);
+        sorted.sort(Comparator.comparing(Expense::getDate).thenComparing(Expense::getId));
+
+        ColumnWriter[] writers = new ColumnWriter[COLUMNS];
+        for (int column = 0; column < COLUMNS; column++) {
+            writers[column] = new ColumnWriter();
+        }
+        long previousId = 0;
+        long previousDay = 0;
+        for (Expense expense : sorted) {
+            writers[ID].writeSigned(expense.getId() - previousId);
+            previousId = expense.getId();
+            long day = expense.getDate().toEpochDay();
+            writers[DATE].writeSigned(day - previousDay);
+            previousDay = day;
+            writers[AMOUNT].writeSigned(expense.getAmount().setScale(2, RoundingMode.UNNECESSARY).unscaledValue().longValueExact());
+            writers[CATEGORY].writeUnsigned(expense.getCategory() != null ? expense.getCategory().getId() : 0);
+            writers[CURRENCY].writeString(expense.getCurrencyCode());
+            writers[STATUS].writeString(expense.getStatus() != null ? expense.getStatus().name() : null);
+            writers[REIMBURSABLE].writeUnsigned(expense.getIsReimbursable() == null ? 0 : expense.getIsReimbursable() ? 2 : 1);
+            writers[TITLE].writeString(expense.getTitle());
+            writers[DESCRIPTION].writeString(expense.getDescription());
+            writers[LOCATION].writeString(expense.getLocation());
+            writers[TAGS].writeString(expense.getTags());
+            writers[RECEIPT_IMAGE_URL].writeString(expense.getReceiptImageUrl());
+            writers[CREATED_AT].writeTimestamp(expense.getCreatedAt());
+            writers[UPDATED_AT].writeTimestamp(expense.getUpdatedAt());
+            writers[GEO_CELL].writeUnsigned(expense.getGeoCell() != null ? expense.getGeoCell() + 1 : 0);
+        }
+
+        byte[][] compressed = new byte[COLUMNS][];
+        ByteBuffer header = ByteBuffer.allocate(headerSize(COLUMNS));
+        header.putInt(MAGIC).putInt(VERSION).putInt(year).putInt(sorted.size()).putLong(probeId);
+        int offset = headerSize(COLUMNS);
+        for (int column = 0; column < COLUMNS; column++) {
+            byte[] raw = writers[column].toByteArray();
+            compressed[column] = deflate(raw);
+            header.putInt(offset).putInt(compressed[column].length).putInt(raw.length);
+            offset += compressed[column].length;
+        }
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write(header);
+            for (byte[] column : compressed) {
+                ByteBuffer data = ByteBuffer.wrap(column);
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            channel.force(true);
+        }
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public int size() {
+        return rows;
+    }
+
+    public long getProbeId() {
+        return probeId;
+    }
+
+    /**
+     * Index of the first row dated on or after the given day
+     */
+    public int firstOnOrAfter(LocalDate date) {
+        return date == null ? 0 : search(date.toEpochDay());
+    }
+
+    /**
+     * Index just past the last row dated on or before the given day
+     */
+    public int endOnOrBefore(LocalDate date) {
+        return date == null ? rows : search(date.toEpochDay() + 1);
+    }
+
+    private int search(long epochDay) {
+        int[] days = epochDays();
+        int low = 0;
+        int high = rows;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (days[middle] < epochDay) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public LocalDate date(int row) {
+        return LocalDate.ofEpochDay(epochDays()[row]);
+    }
+
+    public long id(int row) {
+        return ids()[row];
+    }
+
+    public long amountCents(int row) {
+        return amountCents()[row];
+    }
+
+    /**
+     * Category id of a row, or null when it has none
+     */
+    public Long categoryId(int row) {
+        long id = categoryIds()[row];
+        return id == 0 ? null : id;
+    }
+
+    /**
+     * Materialise one row; user and category are left for the caller to attach
+     */
+    public Expense toExpense(int row) {
+        Object[] text = columns();
+        Expense expense = new Expense();
+        expense.setId(id(row));
+        expense.setDate(date(row));
+        expense.setAmount(BigDecimal.valueOf(amountCents(row), 2));
+        expense.setCurrencyCode(((String[]) text[CURRENCY])[row]);
+        String status = ((String[]) text[STATUS])[row];
+        expense.setStatus(status != null ? Expense.ExpenseStatus.valueOf(status) : null);
+        long reimbursable = ((long[]) text[REIMBURSABLE])[row];
+        expense.setIsReimbursable(reimbursable == 0 ? null : reimbursable == 2);
+        expense.setTitle(((String[]) text[TITLE])[row]);
+        expense.setDescription(((String[]) text[DESCRIPTION])[row]);
+        expense.setLocation(((String[]) text[LOCATION])[row]);
+        expense.setTags(((String[]) text[TAGS])[row]);
+        expense.setReceiptImageUrl(((String[]) text[RECEIPT_IMAGE_URL])[row]);
+        expense.setCreatedAt(((LocalDateTime[]) text[CREATED_AT])[row]);
+        expense.setUpdatedAt(((LocalDateTime[]) text[UPDATED_AT])[row]);
+        long geoCell = ((long[]) text[GEO_CELL])[row];
+        if (geoCell != 0) {
+            // Cell centres are within a centimetre, so the stored six decimals come back exactly
+            expense.setGeoCell(geoCell - 1);
+            expense.setLatitude(BigDecimal.valueOf(GeoGrid.latitude(geoCell - 1, GeoGrid.LEVEL)).setScale(6, RoundingMode.HALF_UP));
+            expense.setLongitude(BigDecimal.valueOf(GeoGrid.longitude(geoCell - 1, GeoGrid.LEVEL)).setScale(6, RoundingMode.HALF_UP));
+        }
+        return expense;
+    }
+
+    private synchronized long[] ids() {
+        if (ids == null) {
+            ids = new ColumnReader(inflate(ID)).readDeltas(rows);
+        }
+        return ids;
+    }
+
+    private synchronized int[] epochDays() {
+        if (epochDays == null) {
+            long[] days = new ColumnReader(inflate(DATE)).readDeltas(rows);
+            int[] narrowed = new int[rows];
+            for (int row = 0; row < rows; row++) {
+                narrowed[row] = Math.toIntExact(days[row]);
+            }
+            epochDays = narrowed;
+        }
+        return epochDays;
+    }
+
+    private synchronized long[] amountCents() {
+        if (amountCents == null) {
+            ColumnReader reader = new ColumnReader(inflate(AMOUNT));
+            long[] cents = new long[rows];
+            for (int row = 0; row < rows; row++) {
+                cents[row] = reader.readSigned();
+            }
+            amountCents = cents;
+        }
+        return amountCents;
+    }
+
+    private synchronized long[] categoryIds() {
+        if (categoryIds == null) {
+            categoryIds = new ColumnReader(inflate(CATEGORY)).readUnsigned(rows);
+        }
+        return categoryIds;
+    }
+
+    private synchronized Object[] columns() {
+        if (columns == null) {
+            Object[] decoded = new Object[COLUMNS];
+            for (int column : new int[] {CURRENCY, STATUS, TITLE, DESCRIPTION, LOCATION, TAGS, RECEIPT_IMAGE_URL}) {
+                decoded[column] = new ColumnReader(inflate(column)).readStrings(rows);
+            }
+            decoded[REIMBURSABLE] = new ColumnReader(inflate(REIMBURSABLE)).readUnsigned(rows);
+            decoded[CREATED_AT] = new ColumnReader(inflate(CREATED_AT)).readTimestamps(rows);
+            decoded[UPDATED_AT] = new ColumnReader(inflate(UPDATED_AT)).readTimestamps(rows);
+            decoded[GEO_CELL] = columnCount > GEO_CELL ? new ColumnReader(inflate(GEO_CELL)).readUnsigned(rows) : new long[rows];
+            columns = decoded;
+        }
+        return columns;
+    }
+
+    private byte[] inflate(int column) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(buffer.slice(offsets[column], compressedLengths[column]));
+            byte[] raw = new byte[rawLengths[column]];
+            int length = 0;
+            while (length < raw.length && !inflater.finished()) {
+                int read = inflater.inflate(raw, length, raw.length - length);
+                if (read == 0 && inflater.needsInput()) {
+                    break;
+                }
+                length += read;
+            }
+            if (length != raw.length) {
+                throw new RuntimeException("Corrupt expense segment column " + column);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new RuntimeException("Corrupt expense segment column " + column, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static class ColumnWriter extends ByteArrayOutputStream {
+
+        private long previousTimestamp;
+
+        void writeUnsigned(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeSigned(long value) {
+            writeUnsigned((value << 1) ^ (value >> 63));
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeUnsigned(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeUnsigned(bytes.length + 1L);
+            write(bytes, 0, bytes.length);
+        }
+
+        // Millisecond precision; 0 marks null, otherwise the zigzag delta plus one
+        void writeTimestamp(LocalDateTime value) {
+            if (value == null) {
+                writeUnsigned(0);
+                return;
+            }
+            long millis = value.toInstant(ZoneOffset.UTC).toEpochMilli();
+            long delta = millis - previousTimestamp;
+            writeUnsigned(((delta << 1) ^ (delta >> 63)) + 1);
+            previousTimestamp = millis;
+        }
+    }
+
+    private static class ColumnReader {
+
+        private final byte[] data;
+        private int position;
+
+        ColumnReader(byte[] data) {
+            this.data = data;
+        }
+
+        long readUnsigned() {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                byte b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+                shift += 7;
+            }
+        }
+
+        long readSigned() {
+            long value = readUnsigned();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long[] readUnsigned(int count) {
+            long[] values = new long[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = readUnsigned();
+            }
+            return values;
+        }
+
+        long[] readDeltas(int count) {
+            long[] values = new long[count];
+            long previous = 0;
+            for (int i = 0; i < count; i++) {
+                previous += readSigned();
+                values[i] = previous;
+            }
+            return values;
+        }
+
+        String[] readStrings(int count) {
+            String[] values = new String[count];
+            for (int i = 0; i < count; i++) {
+                int length = (int) readUnsigned();
+                if (length > 0) {
+                    values[i] = new String(data, position, length - 1, StandardCharsets.UTF_8);
+                    position += length - 1;
+                }
+            }
+            return values;
+        }
+
+        LocalDateTime[] readTimestamps(int count) {
+            LocalDateTime[] values = new LocalDateTime[count];
+            long previous = 0;
+            for (int i = 0; i < count; i++) {
+                long encoded = readUnsigned();
+                if (encoded != 0) {
+                    long zigzag = encoded - 1;
+                    previous += (zigzag >>> 1) ^ -(zigzag & 1);
+                    values[i] = LocalDateTime.ofInstant(Instant.ofEpochMilli(previous), ZoneOffset.UTC);
+                }
+            }
+            return values;
+        }
+    }
+}
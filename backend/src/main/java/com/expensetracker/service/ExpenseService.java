@@ -1,39 +1,119 @@
 package com.expensetracker.service;
 
 
+import com.expensetracker.dto.CategorySpending;
+import com.expensetracker.dto.ExpenseFilter;
+import com.expensetracker.dto.MonthlySpending;
+import com.expensetracker.dto.SpendingCluster;
+import com.expensetracker.dto.SpendingTrendPoint;
+import com.expensetracker.model.Category;
 import com.expensetracker.model.Expense;
+import com.expensetracker.model.Receipt;
 import com.expensetracker.model.User;
 import com.expensetracker.repository.ExpenseRepository;
+import com.expensetracker.repository.ReceiptRepository;
 import com.expensetracker.repository.UserRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
+/**
+ * Expense operations. Writes run in the class-level read-write transaction; every
+ * query method is read-only, so Hibernate keeps no dirty-checking snapshots, skips
+ * the flush at commit and the driver marks the connection read-only. Listing and
+ * analytics also read through the expense archive, so closed years moved out of the
+ * expenses table are still included; archived rows follow live rows in listings.
+ */
 @Service
 @Transactional
 public class ExpenseService {
 
+    // Stand-ins for an open date range in native queries
+    private static final LocalDate EARLIEST_DATE = LocalDate.of(1000, 1, 1);
+
+    private static final LocalDate LATEST_DATE = LocalDate.of(9999, 12, 31);
+
     @Autowired
     private ExpenseRepository expenseRepository;
 
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ReceiptRepository receiptRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private CategoryCatalogService categoryCatalogService;
+
+    @Autowired
+    private DataVersionService dataVersionService;
+
+    @Autowired
+    private ReplicaRoutingService replicaRoutingService;
+
+    @Autowired
+    private ShardDirectoryService shardDirectoryService;
+
+    @Autowired
+    private ExpenseArchiveService expenseArchiveService;
+
+    @Autowired
+    private ExpenseSyncService expenseSyncService;
+
+    @Autowired
+    private ExpenseEventBus expenseEventBus;
+
+    @Autowired
+    private DuplicateDetectionService duplicateDetectionService;
+
+    @Autowired
+    private CategorizationService categorizationService;
+
+    @Autowired
+    private GeocodingService geocodingService;
+
+    @Autowired
+    private ApproximateAnalyticsService approximateAnalyticsService;
+
+    @Value("${geo.max-results:1000}")
+    private int maxGeoResults;
+
+    @Value("${geo.max-cover-cells:16}")
+    private int maxCoverCells;
+
 
 
     /**
      * Create a new expense
      */
     public Expense createExpense(Long userId, Expense expense) {
+        shardDirectoryService.bindForWrite(userId);
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
         
@@ -44,51 +124,123 @@ public class ExpenseService {
             expense.setCurrencyCode(user.getDefaultCurrency());
         }
         
-        return expenseRepository.save(expense);
+        if (expense.getCategory() == null) {
+            categorizationService.suggestCategory(userId, expense.getTitle(), expense.getDescription())
+                    .ifPresent(category -> expense.setCategory(toCategory(category)));
+        }
+        
+        geocodingService.locate(expense);
+        List<Long> possibleDuplicateIds = duplicateDetectionService.findDuplicates(userId, expense.getAmount(),
+                expense.getDate(), expense.getTitle(), null);
+        expense.setChangeSeq(expenseSyncService.nextChangeSeq(userId));
+        Expense savedExpense = expenseRepository.save(expense);
+        dataVersionService.bump(userId);
+        expenseEventBus.publishAfterCommit(ExpenseEvent.CREATED, userId, savedExpense);
+        savedExpense.setPossibleDuplicateIds(possibleDuplicateIds);
+        return savedExpense;
     }
 
     /**
      * Get expenses for user with pagination and filters
      */
+    @Transactional(readOnly = true)
     public Page<Expense> getExpenses(Long userId, Pageable pageable, 
                                    Long categoryId, LocalDate startDate, LocalDate endDate,
                                    String currency, BigDecimal minAmount, BigDecimal maxAmount,
                                    String tags) {
+        shardDirectoryService.bind(userId);
+        replicaRoutingService.routeReads(userId);
         
-        Page<Expense> expenses = expenseRepository.findByUserId(userId, pageable);
-        
-        // Apply filters
-        List<Expense> filteredExpenses = expenses.getContent().stream()
-                .filter(expense -> categoryId == null || 
-                        (expense.getCategory() != null && expense.getCategory().getId().equals(categoryId)))
-                .filter(expense -> startDate == null || !expense.getDate().isBefore(startDate))
-                .filter(expense -> endDate == null || !expense.getDate().isAfter(endDate))
-                .filter(expense -> currency == null || expense.getCurrencyCode().equals(currency))
-                .filter(expense -> minAmount == null || expense.getAmount().compareTo(minAmount) >= 0)
-                .filter(expense -> maxAmount == null || expense.getAmount().compareTo(maxAmount) <= 0)
-                .filter(expense -> tags == null || 
-                        (expense.getTags() != null && expense.getTags().contains(tags)))
-                .collect(Collectors.toList());
-        
-        return new org.springframework.data.domain.PageImpl<>(filteredExpenses, pageable, expenses.getTotalElements());
+        // A category the user cannot see can never match; answer from the catalogue
+        if (categoryId != null && categoryCatalogService.resolve(userId, categoryId).isEmpty()) {
+            return Page.empty(pageable);
+        }
+
+        // Filters go into SQL so archived rows, listed after every live match, land on the right page
+        ExpenseFilter filter = new ExpenseFilter(categoryId, startDate, endDate, currency, minAmount, maxAmount, tags);
+        Page<Expense> live = expenseRepository.findFiltered(userId, filter, pageable);
+        withCatalogCategories(userId, live.getContent());
+        if (!expenseArchiveService.hasArchivedExpenses(userId, startDate, endDate)) {
+            return live;
+        }
+        List<Expense> archived = expenseArchiveService.findExpenses(userId, filter);
+        List<Expense> expenses = new ArrayList<>(live.getContent());
+        expenses.addAll(archivedPage(archived, pageable, live));
+        return new PageImpl<>(expenses, pageable, live.getTotalElements() + archived.size());
+    }
+
+    /**
+     * Get expenses for user selecting only the requested fields, with filters applied in SQL
+     */
+    @Transactional(readOnly = true)
+    public Page<Map<String, Object>> getExpenseFields(Long userId, Pageable pageable, List<String> fields,
+                                                      ExpenseFilter filter) {
+        shardDirectoryService.bind(userId);
+        replicaRoutingService.routeReads(userId);
+        if (filter.getCategoryId() != null && categoryCatalogService.resolve(userId, filter.getCategoryId()).isEmpty()) {
+            return Page.empty(pageable);
+        }
+        Page<Map<String, Object>> live = expenseRepository.findFieldsByUserId(userId, fields, filter, pageable);
+        if (!expenseArchiveService.hasArchivedExpenses(userId, filter.getStartDate(), filter.getEndDate())) {
+            return live;
+        }
+        List<Expense> archived = expenseArchiveService.findExpenses(userId, filter);
+        List<Map<String, Object>> rows = new ArrayList<>(live.getContent());
+        archivedPage(archived, pageable, live).forEach(expense -> rows.add(ExpenseArchiveService.toFields(expense, fields)));
+        return new PageImpl<>(rows, pageable, live.getTotalElements() + archived.size());
+    }
+
+    /**
+     * The archived rows that fall on this page, given they are listed after every live row
+     * matching the same filter
+     */
+    private static List<Expense> archivedPage(List<Expense> archived, Pageable pageable, Page<?> live) {
+        if (pageable.isUnpaged()) {
+            return archived;
+        }
+        int from = (int) Math.max(0, pageable.getOffset() - live.getTotalElements());
+        int room = pageable.getPageSize() - live.getNumberOfElements();
+        if (room <= 0 || from >= archived.size()) {
+            return List.of();
+        }
+        return archived.subList(from, Math.min(archived.size(), from + room));
+    }
+
+    /**
+     * Get expense by ID selecting only the requested fields
+     */
+    @Transactional(readOnly = true)
+    public Optional<Map<String, Object>> getExpenseFieldsById(Long expenseId, Long userId, List<String> fields) {
+        shardDirectoryService.bind(userId);
+        replicaRoutingService.routeReads(userId);
+        return expenseRepository.findFieldsByIdAndUserId(expenseId, userId, fields)
+                .or(() -> expenseArchiveService.findById(userId, expenseId)
+                        .map(expense -> ExpenseArchiveService.toFields(expense, fields)));
     }
 
     /**
      * Get expense by ID
      */
+    @Transactional(readOnly = true)
     public Optional<Expense> getExpenseById(Long expenseId, Long userId) {
+        shardDirectoryService.bind(userId);
+        replicaRoutingService.routeReads(userId);
         return expenseRepository.findById(expenseId)
-                .filter(expense -> expense.getUser().getId().equals(userId));
+                .filter(expense -> expense.getUser().getId().equals(userId))
+                .or(() -> expenseArchiveService.findById(userId, expenseId));
     }
 
     /**
      * Update expense
      */
     public Expense updateExpense(Long expenseId, Long userId, Expense updatedExpense) {
+        shardDirectoryService.bindForWrite(userId);
         Expense existingExpense = expenseRepository.findById(expenseId)
                 .filter(expense -> expense.getUser().getId().equals(userId))
                 .orElseThrow(() -> new RuntimeException("Expense not found"));
         
+        Long previousCategoryId = categoryId(existingExpense);
+
         existingExpense.setTitle(updatedExpense.getTitle());
         existingExpense.setDescription(updatedExpense.getDescription());
         existingExpense.setAmount(updatedExpense.getAmount());
@@ -96,91 +248,283 @@ public class ExpenseService {
         existingExpense.setDate(updatedExpense.getDate());
         existingExpense.setCategory(updatedExpense.getCategory());
         existingExpense.setLocation(updatedExpense.getLocation());
+        existingExpense.setLatitude(updatedExpense.getLatitude());
+        existingExpense.setLongitude(updatedExpense.getLongitude());
+        geocodingService.locate(existingExpense);
         existingExpense.setTags(updatedExpense.getTags());
         existingExpense.setIsReimbursable(updatedExpense.getIsReimbursable());
         existingExpense.setStatus(updatedExpense.getStatus());
+        if (updatedExpense.getReceiptImageUrl() != null) {
+            existingExpense.setReceiptImageUrl(updatedExpense.getReceiptImageUrl());
+        }
+        existingExpense.setChangeSeq(expenseSyncService.nextChangeSeq(userId));
         
-        return expenseRepository.save(existingExpense);
+        dataVersionService.bump(userId);
+        Expense savedExpense = expenseRepository.save(existingExpense);
+        expenseEventBus.publishAfterCommit(ExpenseEvent.UPDATED, userId, savedExpense, previousCategoryId);
+        return savedExpense;
     }
 
     /**
      * Delete expense
      */
     public void deleteExpense(Long expenseId, Long userId) {
+        shardDirectoryService.bindForWrite(userId);
         Expense expense = expenseRepository.findById(expenseId)
                 .filter(e -> e.getUser().getId().equals(userId))
                 .orElseThrow(() -> new RuntimeException("Expense not found"));
         
+        expenseSyncService.recordDeleted(userId, expenseId);
+        dataVersionService.bump(userId);
+        expenseEventBus.publishAfterCommit(ExpenseEvent.DELETED, userId, expense);
         expenseRepository.delete(expense);
     }
 
+    private static Long categoryId(Expense expense) {
+        return expense.getCategory() != null ? expense.getCategory().getId() : null;
+    }
+
+    /**
+     * Replace each expense's unloaded category with the catalogue's copy, as archived
+     * expenses carry, so a list does not load its categories one row at a time. Entities
+     * read in a read-only transaction are never flushed, so the swap is not written back.
+     */
+    private List<Expense> withCatalogCategories(Long userId, List<Expense> expenses) {
+        for (Expense expense : expenses) {
+            Category category = expense.getCategory();
+            // The id of an unloaded category comes from the proxy without a query
+            if (category != null && !Hibernate.isInitialized(category)) {
+                categoryCatalogService.resolve(userId, category.getId())
+                        .ifPresent(info -> expense.setCategory(toCategory(info)));
+            }
+        }
+        return expenses;
+    }
+
+    private static Category toCategory(CategoryCatalogService.CategoryInfo info) {
+        Category category = new Category();
+        category.setId(info.getId());
+        category.setName(info.getName());
+        category.setIcon(info.getIcon());
+        category.setColor(info.getColor());
+        category.setIsDefault(info.getIsDefault());
+        return category;
+    }
+
+    /**
+     * Attach a scanned receipt to an expense: copy the extracted fields onto the
+     * expense and store the OCR results, replacing any previous scan
+     */
+    public Expense attachReceipt(Long expenseId, Long userId, OcrService.ReceiptData receiptData, String imageUrl) {
+        shardDirectoryService.bindForWrite(userId);
+        Expense expense = expenseRepository.findById(expenseId)
+                .filter(e -> e.getUser().getId().equals(userId))
+                .orElseThrow(() -> new RuntimeException("Expense not found"));
+
+        expense.setReceiptImageUrl(imageUrl);
+        if (receiptData.getMerchantName() != null) {
+            expense.setTitle(receiptData.getMerchantName());
+        }
+        if (receiptData.getTotalAmount() != null) {
+            expense.setAmount(receiptData.getTotalAmount());
+        }
+        if (receiptData.getDate() != null) {
+            expense.setDate(receiptData.getDate());
+        }
+        Long previousCategoryId = categoryId(expense);
+        if (expense.getCategory() == null) {
+            categorizationService.suggestCategory(userId, receiptData.getMerchantName(), expense.getTitle(),
+                    receiptData.getOcrText()).ifPresent(category -> expense.setCategory(toCategory(category)));
+        }
+        expense.setChangeSeq(expenseSyncService.nextChangeSeq(userId));
+
+        Receipt receipt = receiptRepository.findByExpenseId(expenseId)
+                .orElseGet(() -> new Receipt(expense));
+        receipt.setImageUrl(imageUrl);
+        receipt.setOcrText(receiptData.getOcrText());
+        receipt.setOcrConfidence(BigDecimal.valueOf(receiptData.getConfidence() * 100).setScale(2, RoundingMode.HALF_UP));
+        receipt.setMerchantName(receiptData.getMerchantName());
+        receipt.setTotalAmount(receiptData.getTotalAmount());
+        receipt.setTaxAmount(receiptData.getTaxAmount());
+        receipt.setDateFromReceipt(receiptData.getDate());
+        try {
+            receipt.setItems(receiptData.getItems() != null ? objectMapper.writeValueAsString(receiptData.getItems()) : null);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Error serializing receipt items", e);
+        }
+        receiptRepository.save(receipt);
+
+        dataVersionService.bump(userId);
+        Expense savedExpense = expenseRepository.save(expense);
+        expenseEventBus.publishAfterCommit(ExpenseEvent.UPDATED, userId, savedExpense, previousCategoryId);
+        savedExpense.setPossibleDuplicateIds(duplicateDetectionService.findDuplicates(userId, savedExpense.getAmount(),
+                savedExpense.getDate(), savedExpense.getTitle(), expenseId));
+        return savedExpense;
+    }
+
+    /**
+     * Get the receipt details of an expense, loaded only on demand
+     */
+    @Transactional(readOnly = true)
+    public Optional<Receipt> getReceipt(Long expenseId, Long userId) {
+        shardDirectoryService.bind(userId);
+        replicaRoutingService.routeReads(userId);
+        return receiptRepository.findByExpenseIdAndUserId(expenseId, userId);
+    }
+
     /**
      * Get total spending for user in date range
      */
+    @Transactional(readOnly = true)
     public BigDecimal getTotalSpending(Long userId, LocalDate startDate, LocalDate endDate) {
+        shardDirectoryService.bind(userId);
+        replicaRoutingService.routeReads(userId);
         BigDecimal total = expenseRepository.getTotalAmountByUserIdAndDateBetween(userId, startDate, endDate);
-        return total != null ? total : BigDecimal.ZERO;
+        return (total != null ? total : BigDecimal.ZERO).add(expenseArchiveService.getTotalSpending(userId, startDate, endDate));
     }
 
     /**
      * Get spending by category
      */
+    @Transactional(readOnly = true)
     public Map<String, Object> getSpendingByCategory(Long userId, LocalDate startDate, LocalDate endDate) {
-        List<Object[]> results = expenseRepository.getSpendingByCategory(userId, startDate, endDate);
-        
-        List<Map<String, Object>> categories = results.stream()
-                .map(row -> Map.of(
-                    "categoryId", row[0],
-                    "categoryName", row[1],
-                    "totalAmount", row[2],
-                    "count", row[3]
-                ))
-                .collect(Collectors.toList());
-        
-        BigDecimal totalAmount = categories.stream()
-                .map(cat -> (BigDecimal) cat.get("totalAmount"))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        shardDirectoryService.bind(userId);
+        replicaRoutingService.routeReads(userId);
+        List<CategorySpending> categories = expenseArchiveService.mergeSpendingByCategory(userId, startDate, endDate,
+                expenseRepository.getSpendingByCategory(userId, startDate, endDate));
         
         return Map.of(
             "categories", categories,
-            "totalAmount", totalAmount
+            "totalAmount", describeCategories(userId, categories)
+        );
+    }
+
+    /**
+     * Get spending by category estimated from a sample of the live expenses; archived
+     * years are added exactly
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getApproximateSpendingByCategory(Long userId, LocalDate startDate, LocalDate endDate) {
+        shardDirectoryService.bind(userId);
+        replicaRoutingService.routeReads(userId);
+        ApproximateAnalyticsService.Sample sample = sample(userId,
+                keys -> expenseRepository.sampleSpendingByCategory(userId, keys, startDate, endDate));
+        List<CategorySpending> estimated = new ArrayList<>();
+        sample.getStrata().forEach((categoryId, stratum) -> {
+            CategorySpending category = new CategorySpending((Long) categoryId, sample.amount(stratum), sample.count(stratum));
+            if (!sample.isExact()) {
+                category.setTotalAmountError(sample.amountError(stratum));
+                category.setCountError(sample.countError(stratum));
+            }
+            estimated.add(category);
+        });
+        List<CategorySpending> categories = expenseArchiveService.mergeSpendingByCategory(userId, startDate, endDate, estimated);
+
+        return Map.of(
+            "categories", categories,
+            "totalAmount", describeCategories(userId, categories),
+            "totalAmountError", sample.amountError(sample.total()),
+            "accuracy", accuracy(sample)
         );
     }
 
+    /**
+     * Fill in category names from the catalogue and return the total across categories
+     */
+    private BigDecimal describeCategories(Long userId, List<CategorySpending> categories) {
+        BigDecimal totalAmount = BigDecimal.ZERO;
+        for (CategorySpending category : categories) {
+            categoryCatalogService.resolve(userId, category.getCategoryId()).ifPresent(info -> {
+                category.setCategoryName(info.getName());
+                category.setColor(info.getColor());
+                category.setIcon(info.getIcon());
+            });
+            totalAmount = totalAmount.add(category.getTotalAmount());
+        }
+        return totalAmount;
+    }
+
     /**
      * Get spending trend
      */
-    public List<Map<String, Object>> getSpendingTrend(Long userId, LocalDate startDate, LocalDate endDate) {
-        List<Object[]> results = expenseRepository.getSpendingTrend(userId, startDate, endDate);
-        
-        return results.stream()
-                .map(row -> Map.of(
-                    "date", row[0],
-                    "amount", row[1],
-                    "count", row[2]
-                ))
-                .collect(Collectors.toList());
+    @Transactional(readOnly = true)
+    public List<SpendingTrendPoint> getSpendingTrend(Long userId, LocalDate startDate, LocalDate endDate) {
+        shardDirectoryService.bind(userId);
+        replicaRoutingService.routeReads(userId);
+        return expenseArchiveService.mergeSpendingTrend(userId, startDate, endDate,
+                expenseRepository.getSpendingTrend(userId, startDate, endDate));
+    }
+
+    /**
+     * Get the spending trend per month, estimated from a sample of the live expenses;
+     * archived years are added exactly. A month cut by the start of the range is dated
+     * from the start.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getApproximateSpendingTrend(Long userId, LocalDate startDate, LocalDate endDate) {
+        shardDirectoryService.bind(userId);
+        replicaRoutingService.routeReads(userId);
+        ApproximateAnalyticsService.Sample sample = sample(userId,
+                keys -> expenseRepository.sampleMonthlySpending(userId, keys, startDate, endDate));
+        TreeMap<Long, SpendingTrendPoint> byMonth = new TreeMap<>();
+        sample.getStrata().forEach((month, stratum) -> {
+            SpendingTrendPoint point = new SpendingTrendPoint(firstDayOfMonth((Long) month, startDate),
+                    sample.amount(stratum), sample.count(stratum));
+            if (!sample.isExact()) {
+                point.setAmountError(sample.amountError(stratum));
+                point.setCountError(sample.countError(stratum));
+            }
+            byMonth.put((Long) month, point);
+        });
+        if (expenseArchiveService.hasArchivedExpenses(userId, startDate, endDate)) {
+            for (SpendingTrendPoint day : expenseArchiveService.mergeSpendingTrend(userId, startDate, endDate, new ArrayList<>())) {
+                long month = day.getDate().getYear() * 12L + day.getDate().getMonthValue() - 1;
+                SpendingTrendPoint point = byMonth.computeIfAbsent(month,
+                        key -> new SpendingTrendPoint(firstDayOfMonth(key, startDate), BigDecimal.ZERO, 0L));
+                point.setAmount(point.getAmount().add(day.getAmount()));
+                point.setCount(point.getCount() + day.getCount());
+            }
+        }
+
+        return Map.of(
+            "trends", new ArrayList<>(byMonth.values()),
+            "granularity", "month",
+            "accuracy", accuracy(sample)
+        );
+    }
+
+    private static LocalDate firstDayOfMonth(long month, LocalDate startDate) {
+        LocalDate first = LocalDate.of((int) (month / 12), (int) (month % 12) + 1, 1);
+        return first.isBefore(startDate) ? startDate : first;
     }
 
     /**
      * Get monthly spending
      */
-    public List<Map<String, Object>> getMonthlySpending(Long userId, LocalDate startDate, LocalDate endDate) {
-        List<Object[]> results = expenseRepository.getMonthlySpending(userId, startDate, endDate);
-        
-        return results.stream()
-                .map(row -> Map.of(
-                    "year", row[0],
-                    "month", row[1],
-                    "amount", row[2]
-                ))
-                .collect(Collectors.toList());
+    @Transactional(readOnly = true)
+    public List<MonthlySpending> getMonthlySpending(Long userId, LocalDate startDate, LocalDate endDate) {
+        shardDirectoryService.bind(userId);
+        replicaRoutingService.routeReads(userId);
+        return expenseArchiveService.mergeMonthlySpending(userId, startDate, endDate,
+                expenseRepository.getMonthlySpending(userId, startDate, endDate));
     }
 
     /**
      * Get average daily spending
      */
+    @Transactional(readOnly = true)
     public BigDecimal getAverageDailySpending(Long userId, LocalDate startDate, LocalDate endDate) {
+        shardDirectoryService.bind(userId);
+        replicaRoutingService.routeReads(userId);
+        if (expenseArchiveService.hasArchivedExpenses(userId, startDate, endDate)) {
+            // Average of daily totals over days with spending, across both tiers
+            List<SpendingTrendPoint> days = getSpendingTrend(userId, startDate, endDate);
+            if (days.isEmpty()) {
+                return BigDecimal.ZERO;
+            }
+            BigDecimal total = days.stream().map(SpendingTrendPoint::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
+            return total.divide(BigDecimal.valueOf(days.size()), 6, RoundingMode.HALF_UP);
+        }
         BigDecimal average = expenseRepository.getAverageDailySpending(userId, startDate, endDate);
         return average != null ? average : BigDecimal.ZERO;
     }
@@ -188,36 +532,228 @@ public class ExpenseService {
     /**
      * Get expenses with receipts
      */
+    @Transactional(readOnly = true)
     public List<Expense> getExpensesWithReceipts(Long userId) {
-        return expenseRepository.findExpensesWithReceipts(userId);
+        shardDirectoryService.bind(userId);
+        replicaRoutingService.routeReads(userId);
+        List<Expense> expenses = withCatalogCategories(userId, expenseRepository.findExpensesWithReceipts(userId));
+        return withArchived(expenses, userId, expense -> expense.getReceiptImageUrl() != null);
     }
 
     /**
      * Get reimbursable expenses
      */
+    @Transactional(readOnly = true)
     public List<Expense> getReimbursableExpenses(Long userId) {
-        return expenseRepository.findByUserIdAndIsReimbursableTrue(userId);
+        shardDirectoryService.bind(userId);
+        replicaRoutingService.routeReads(userId);
+        List<Expense> expenses = withCatalogCategories(userId, expenseRepository.findByUserIdAndIsReimbursableTrue(userId));
+        return withArchived(expenses, userId, expense -> Boolean.TRUE.equals(expense.getIsReimbursable()));
+    }
+
+    /**
+     * Get the user's expenses within a radius of a point, nearest first, with their total
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getExpensesNearby(Long userId, double latitude, double longitude, double radiusKm,
+                                                 LocalDate startDate, LocalDate endDate) {
+        checkPoint(latitude, longitude);
+        if (!(radiusKm > 0)) {
+            throw new IllegalArgumentException("radiusKm must be positive");
+        }
+        double[] box = GeoGrid.boundingBox(latitude, longitude, radiusKm);
+        shardDirectoryService.bind(userId);
+        replicaRoutingService.routeReads(userId);
+        ExpenseFilter filter = new ExpenseFilter(null, startDate, endDate, null, null, null, null);
+
+        // Rank every live match by distance from its coordinates alone, then load only the
+        // nearest; one past the limit is kept so the result knows it was truncated
+        Map<Long, Double> distances = new HashMap<>();
+        for (Object[] row : expenseRepository.findCoordinatesInCells(userId,
+                GeoGrid.cover(box[0], box[1], box[2], box[3], maxCoverCells), box[0], box[1], box[2], box[3], filter)) {
+            double distance = GeoGrid.distanceKm(latitude, longitude,
+                    ((BigDecimal) row[1]).doubleValue(), ((BigDecimal) row[2]).doubleValue());
+            if (distance <= radiusKm) {
+                distances.put(((Number) row[0]).longValue(), distance);
+            }
+        }
+        List<Long> nearest = distances.keySet().stream()
+                .sorted(Comparator.comparingDouble(distances::get))
+                .limit(maxGeoResults + 1)
+                .toList();
+        List<Expense> expenses = new ArrayList<>(withCatalogCategories(userId, expenseRepository.findAllById(nearest)));
+        if (expenseArchiveService.hasArchivedExpenses(userId, startDate, endDate)) {
+            for (Expense expense : expenseArchiveService.findExpenses(userId, filter)) {
+                if (inBox(expense, box[0], box[1], box[2], box[3])) {
+                    double distance = GeoGrid.distanceKm(latitude, longitude,
+                            expense.getLatitude().doubleValue(), expense.getLongitude().doubleValue());
+                    if (distance <= radiusKm) {
+                        distances.put(expense.getId(), distance);
+                        expenses.add(expense);
+                    }
+                }
+            }
+        }
+        expenses.sort(Comparator.comparingDouble(expense -> distances.get(expense.getId())));
+        return geoResult(expenses);
+    }
+
+    /**
+     * Get the user's expenses inside a bounding box, newest first, with their total; a
+     * west edge east of the east edge crosses the antimeridian
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getExpensesInBox(Long userId, double south, double west, double north, double east,
+                                                LocalDate startDate, LocalDate endDate) {
+        checkBox(south, west, north, east);
+        List<Expense> expenses = findInBox(userId, south, west, north, east, startDate, endDate);
+        expenses.sort(Comparator.comparing(Expense::getDate).thenComparing(Expense::getId).reversed());
+        return geoResult(expenses);
+    }
+
+    /**
+     * Get spending inside a bounding box grouped into map clusters: grid cells at the
+     * finest level where the box spans at most gridSize cells per axis
+     */
+    @Transactional(readOnly = true)
+    public List<SpendingCluster> getSpendingClusters(Long userId, double south, double west, double north, double east,
+                                                     LocalDate startDate, LocalDate endDate, int gridSize) {
+        checkBox(south, west, north, east);
+        shardDirectoryService.bind(userId);
+        replicaRoutingService.routeReads(userId);
+        int shift = 2 * (GeoGrid.LEVEL - GeoGrid.levelFor(south, west, north, east, Math.max(1, gridSize)));
+        LocalDate from = startDate != null ? startDate : EARLIEST_DATE;
+        LocalDate to = endDate != null ? endDate : LATEST_DATE;
+
+        Map<Long, SpendingCluster> clusters = new HashMap<>();
+        double[][] boxes = west <= east
+                ? new double[][] {{west, east}}
+                : new double[][] {{west, 180}, {-180, east}};
+        for (double[] box : boxes) {
+            long[] ranges = GeoGrid.cover(south, box[0], north, box[1], maxCoverCells);
+            for (int i = 0; i < ranges.length; i += 2) {
+                for (Object[] row : expenseRepository.getSpendingClusters(userId, ranges[i], ranges[i + 1], shift,
+                        BigDecimal.valueOf(south), BigDecimal.valueOf(box[0]), BigDecimal.valueOf(north),
+                        BigDecimal.valueOf(box[1]), from, to)) {
+                    addCluster(clusters, ((Number) row[0]).longValue(), new SpendingCluster(((Number) row[3]).doubleValue(),
+                            ((Number) row[4]).doubleValue(), (BigDecimal) row[2], ((Number) row[1]).longValue()));
+                }
+            }
+        }
+        if (expenseArchiveService.hasArchivedExpenses(userId, startDate, endDate)) {
+            expenseArchiveService.findExpenses(userId, new ExpenseFilter(null, startDate, endDate, null, null, null, null))
+                    .stream()
+                    .filter(expense -> inBox(expense, south, west, north, east))
+                    .forEach(expense -> addCluster(clusters, expense.getGeoCell() >>> shift,
+                            new SpendingCluster(expense.getLatitude().doubleValue(), expense.getLongitude().doubleValue(),
+                                    expense.getAmount(), 1)));
+        }
+
+        List<SpendingCluster> result = new ArrayList<>(clusters.values());
+        result.sort(Comparator.comparingLong(SpendingCluster::getCount).reversed());
+        return result;
+    }
+
+    private static void addCluster(Map<Long, SpendingCluster> clusters, long key, SpendingCluster cluster) {
+        SpendingCluster existing = clusters.putIfAbsent(key, cluster);
+        if (existing != null) {
+            existing.merge(cluster);
+        }
+    }
+
+    /**
+     * Live expenses in the box through the geo_cell index, plus archived ones
+     */
+    private List<Expense> findInBox(Long userId, double south, double west, double north, double east,
+                                    LocalDate startDate, LocalDate endDate) {
+        shardDirectoryService.bind(userId);
+        replicaRoutingService.routeReads(userId);
+        ExpenseFilter filter = new ExpenseFilter(null, startDate, endDate, null, null, null, null);
+        List<Expense> expenses = new ArrayList<>(withCatalogCategories(userId, expenseRepository.findInCells(userId,
+                GeoGrid.cover(south, west, north, east, maxCoverCells), south, west, north, east, filter, maxGeoResults + 1)));
+        if (expenseArchiveService.hasArchivedExpenses(userId, startDate, endDate)) {
+            expenseArchiveService.findExpenses(userId, filter).stream()
+                    .filter(expense -> inBox(expense, south, west, north, east))
+                    .forEach(expenses::add);
+        }
+        return expenses;
+    }
+
+    private static boolean inBox(Expense expense, double south, double west, double north, double east) {
+        if (expense.getLatitude() == null || expense.getLongitude() == null) {
+            return false;
+        }
+        double latitude = expense.getLatitude().doubleValue();
+        return latitude >= south && latitude <= north
+                && GeoGrid.containsLongitude(west, east, expense.getLongitude().doubleValue());
+    }
+
+    /**
+     * At most geo.max-results expenses with their count and total; truncated says whether
+     * more matched. Callers pass every match, or at least one more than the limit.
+     */
+    private Map<String, Object> geoResult(List<Expense> expenses) {
+        boolean truncated = expenses.size() > maxGeoResults;
+        List<Expense> page = truncated ? expenses.subList(0, maxGeoResults) : expenses;
+        BigDecimal totalAmount = page.stream().map(Expense::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
+        return Map.of(
+                "expenses", page,
+                "count", page.size(),
+                "totalAmount", totalAmount,
+                "truncated", truncated);
+    }
+
+    private static void checkPoint(double latitude, double longitude) {
+        if (!(latitude >= -90 && latitude <= 90) || !(longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException("Coordinates out of range");
+        }
+    }
+
+    private static void checkBox(double south, double west, double north, double east) {
+        checkPoint(south, west);
+        checkPoint(north, east);
+        if (south > north) {
+            throw new IllegalArgumentException("south must not exceed north");
+        }
+    }
+
+    private List<Expense> withArchived(List<Expense> live, Long userId, Predicate<Expense> condition) {
+        if (!expenseArchiveService.hasArchivedExpenses(userId, null, null)) {
+            return live;
+        }
+        List<Expense> expenses = new ArrayList<>(live);
+        expenseArchiveService.findExpenses(userId, null).stream().filter(condition).forEach(expenses::add);
+        return expenses;
     }
 
     /**
      * Update expense status
      */
     public Expense updateExpenseStatus(Long expenseId, Long userId, Expense.ExpenseStatus status) {
+        shardDirectoryService.bindForWrite(userId);
         Expense expense = expenseRepository.findById(expenseId)
                 .filter(e -> e.getUser().getId().equals(userId))
                 .orElseThrow(() -> new RuntimeException("Expense not found"));
         
         expense.setStatus(status);
-        return expenseRepository.save(expense);
+        expense.setChangeSeq(expenseSyncService.nextChangeSeq(userId));
+        dataVersionService.bump(userId);
+        Expense savedExpense = expenseRepository.save(expense);
+        expenseEventBus.publishAfterCommit(ExpenseEvent.STATUS_CHANGED, userId, savedExpense);
+        return savedExpense;
     }
 
     /**
      * Get expense statistics
      */
+    @Transactional(readOnly = true)
     public Map<String, Object> getExpenseStatistics(Long userId, LocalDate startDate, LocalDate endDate) {
+        shardDirectoryService.bind(userId);
+        replicaRoutingService.routeReads(userId);
         BigDecimal totalSpending = getTotalSpending(userId, startDate, endDate);
         BigDecimal averageDaily = getAverageDailySpending(userId, startDate, endDate);
-        Long totalExpenses = expenseRepository.countByUserIdAndDateBetween(userId, startDate, endDate);
+        Long totalExpenses = expenseRepository.countByUserIdAndDateBetween(userId, startDate, endDate)
+                + expenseArchiveService.countExpenses(userId, startDate, endDate);
         
         return Map.of(
             "totalSpending", totalSpending,
@@ -226,4 +762,65 @@ public class ExpenseService {
             "period", Map.of("startDate", startDate, "endDate", endDate)
         );
     }
-} 
\ No newline at end of file
+
+    /**
+     * Get expense statistics estimated from a sample of the live expenses; archived years
+     * are counted exactly. Days with spending are listed exactly, as a loose scan of the
+     * (user_id, date) index reads one entry per day rather than per expense.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getApproximateExpenseStatistics(Long userId, LocalDate startDate, LocalDate endDate) {
+        shardDirectoryService.bind(userId);
+        replicaRoutingService.routeReads(userId);
+        ApproximateAnalyticsService.Sample sample = sample(userId,
+                keys -> expenseRepository.sampleTotals(userId, keys, startDate, endDate));
+        ApproximateAnalyticsService.Stratum live = sample.total();
+        BigDecimal totalSpending = sample.amount(live).add(expenseArchiveService.getTotalSpending(userId, startDate, endDate));
+        BigDecimal totalSpendingError = sample.amountError(live);
+        Long totalExpenses = sample.count(live) + expenseArchiveService.countExpenses(userId, startDate, endDate);
+
+        Set<LocalDate> days = new HashSet<>(expenseRepository.findExpenseDates(userId, startDate, endDate));
+        if (expenseArchiveService.hasArchivedExpenses(userId, startDate, endDate)) {
+            expenseArchiveService.mergeSpendingTrend(userId, startDate, endDate, new ArrayList<>())
+                    .forEach(point -> days.add(point.getDate()));
+        }
+        BigDecimal averageDaily = BigDecimal.ZERO;
+        BigDecimal averageDailyError = BigDecimal.ZERO;
+        if (!days.isEmpty()) {
+            averageDaily = totalSpending.divide(BigDecimal.valueOf(days.size()), 6, RoundingMode.HALF_UP);
+            averageDailyError = totalSpendingError.divide(BigDecimal.valueOf(days.size()), 2, RoundingMode.UP);
+        }
+
+        return Map.of(
+            "totalSpending", totalSpending,
+            "averageDailySpending", averageDaily,
+            "totalExpenses", totalExpenses,
+            "period", Map.of("startDate", startDate, "endDate", endDate),
+            "errorBounds", Map.of(
+                "totalSpending", totalSpendingError,
+                "averageDailySpending", averageDailyError,
+                "totalExpenses", sample.countError(live)
+            ),
+            "accuracy", accuracy(sample)
+        );
+    }
+
+    /**
+     * Sample the user's live expenses, or read them all while some still await a sample key
+     */
+    private ApproximateAnalyticsService.Sample sample(Long userId, Function<Collection<Integer>, List<Object[]>> query) {
+        return approximateAnalyticsService.sample(query,
+                expenseRepository.existsByUserIdAndSampleKey(userId, Expense.UNSAMPLED));
+    }
+
+    /**
+     * How an approximate answer was reached; error bounds are at this confidence level
+     */
+    private static Map<String, Object> accuracy(ApproximateAnalyticsService.Sample sample) {
+        return Map.of(
+            "mode", sample.isExact() ? "exact" : "approximate",
+            "sampleFraction", sample.getFraction(),
+            "confidenceLevel", 0.95
+        );
+    }
+}
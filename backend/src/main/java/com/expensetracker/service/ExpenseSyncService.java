@@ -0,0 +1,218 @@
+package com.expensetracker.service;
+
+
+import com.expensetracker.config.ShardRoutingDataSource;
+import com.expensetracker.dto.ExpenseSyncBatch;
+import com.expensetracker.model.Expense;
+import com.expensetracker.model.ExpenseTombstone;
+import com.expensetracker.repository.ExpenseRepository;
+import com.expensetracker.repository.ExpenseTombstoneRepository;
+import com.expensetracker.repository.SyncSequenceRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Delta sync for offline-capable clients. Every expense write takes the next value of
+ * a per-user change sequence and every delete leaves a tombstone with its own, so a
+ * client can ask for everything after the last (sequence, id) it saw. A sync without
+ * a cursor first pages through the live table and then through archived years.
+ */
+@Service
+@Transactional
+public class ExpenseSyncService {
+
+    private static final Logger log = LoggerFactory.getLogger(ExpenseSyncService.class);
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @Autowired
+    private ExpenseTombstoneRepository expenseTombstoneRepository;
+
+    @Autowired
+    private SyncSequenceRepository syncSequenceRepository;
+
+    @Autowired
+    private ExpenseArchiveService expenseArchiveService;
+
+    @Autowired
+    private ShardDirectoryService shardDirectoryService;
+
+    @Autowired
+    private ReplicaRoutingService replicaRoutingService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${sync.max-batch-size:1000}")
+    private int maxBatchSize;
+
+    @Value("${sync.tombstone-retention:90d}")
+    private Duration tombstoneRetention;
+
+    /**
+     * Next change sequence of the user. The sequence row stays locked until the caller's
+     * transaction ends, so a user's writes commit in sequence order.
+     */
+    public long nextChangeSeq(Long userId) {
+        syncSequenceRepository.increment(userId);
+        return syncSequenceRepository.findChangeSeq(userId);
+    }
+
+    /**
+     * Leave a tombstone for a deleted expense
+     */
+    public void recordDeleted(Long userId, Long expenseId) {
+        expenseTombstoneRepository.insert(expenseId, userId, nextChangeSeq(userId), LocalDateTime.now());
+    }
+
+    /**
+     * Changes after the cursor, at most limit of them; a null cursor starts a full sync
+     */
+    @Transactional(readOnly = true)
+    public ExpenseSyncBatch getChanges(Long userId, String cursor, int limit) {
+        shardDirectoryService.bind(userId);
+        replicaRoutingService.routeReads(userId);
+        int size = Math.max(1, Math.min(limit, maxBatchSize));
+        Cursor position = Cursor.parse(cursor);
+        // A client holding rows may have missed deletions whose tombstones were pruned
+        if (position.changeSeq >= 0 && position.changeSeq < syncSequenceRepository.findFloorSeq(userId).orElse(0L)) {
+            throw new CursorExpiredException();
+        }
+
+        List<Expense> expenses = expenseRepository.findChangedAfter(userId, position.changeSeq, position.id,
+                PageRequest.of(0, size + 1));
+        List<ExpenseTombstone> tombstones = expenseTombstoneRepository.findChangedAfter(userId, position.changeSeq,
+                position.id, PageRequest.of(0, size + 1));
+
+        // Merge both streams in (sequence, id) order
+        List<Expense> changed = new ArrayList<>();
+        List<ExpenseTombstone> deleted = new ArrayList<>();
+        long changeSeq = position.changeSeq;
+        long id = position.id;
+        int e = 0;
+        int t = 0;
+        while (changed.size() + deleted.size() < size && (e < expenses.size() || t < tombstones.size())) {
+            boolean takeExpense = t >= tombstones.size() || (e < expenses.size()
+                    && compare(expenses.get(e).getChangeSeq(), expenses.get(e).getId(),
+                               tombstones.get(t).getChangeSeq(), tombstones.get(t).getExpenseId()) < 0);
+            if (takeExpense) {
+                Expense expense = expenses.get(e++);
+                changed.add(expense);
+                changeSeq = expense.getChangeSeq();
+                id = expense.getId();
+            } else {
+                ExpenseTombstone tombstone = tombstones.get(t++);
+                deleted.add(tombstone);
+                changeSeq = tombstone.getChangeSeq();
+                id = tombstone.getExpenseId();
+            }
+        }
+        boolean liveHasMore = e < expenses.size() || t < tombstones.size();
+        if (position.archivedId == null || liveHasMore) {
+            return new ExpenseSyncBatch(changed, deleted, new Cursor(changeSeq, id, position.archivedId).toString(), liveHasMore);
+        }
+
+        // Full sync: the live table is done, continue with archived years
+        int room = size - changed.size() - deleted.size();
+        List<Expense> archived = expenseArchiveService.findExpensesAfterId(userId, position.archivedId, room + 1);
+        boolean archiveHasMore = archived.size() > room;
+        if (archiveHasMore) {
+            archived = archived.subList(0, room);
+        }
+        changed.addAll(archived);
+        Long archivedId = archiveHasMore
+                ? (archived.isEmpty() ? position.archivedId : archived.get(archived.size() - 1).getId())
+                : null;
+        return new ExpenseSyncBatch(changed, deleted, new Cursor(changeSeq, id, archivedId).toString(), archiveHasMore);
+    }
+
+    private static int compare(long seqA, long idA, long seqB, long idB) {
+        int bySeq = Long.compare(seqA, seqB);
+        return bySeq != 0 ? bySeq : Long.compare(idA, idB);
+    }
+
+    /**
+     * Drop tombstones past the retention window, one shard at a time. Cursors older than
+     * the newest dropped tombstone are rejected so those clients start a full sync.
+     */
+    @Scheduled(cron = "${sync.prune-cron}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void pruneTombstones() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        LocalDateTime before = LocalDateTime.now().minus(tombstoneRetention);
+        if (!shardDirectoryService.isEnabled()) {
+            transaction.executeWithoutResult(status -> pruneShard("default", before));
+            return;
+        }
+        for (String shard : shardDirectoryService.getShardNames()) {
+            ShardRoutingDataSource.callOn(shard, () -> transaction.execute(status -> pruneShard(shard, before)));
+        }
+    }
+
+    private Void pruneShard(String shard, LocalDateTime before) {
+        int users = syncSequenceRepository.raiseFloors(before);
+        int pruned = expenseTombstoneRepository.deleteDeletedBefore(before);
+        log.info("Pruned {} expense tombstones on {} for {} users", pruned, shard, users);
+        return null;
+    }
+
+    /**
+     * Position in the change stream: the last (sequence, id) returned, and during a
+     * full sync the last archived id returned, 0 before the archive has been started.
+     * Serialized as "seq.id" or "seq.id.archivedId".
+     */
+    private static class Cursor {
+        private final long changeSeq;
+        private final long id;
+        private final Long archivedId;
+
+        Cursor(long changeSeq, long id, Long archivedId) {
+            this.changeSeq = changeSeq;
+            this.id = id;
+            this.archivedId = archivedId;
+        }
+
+        static Cursor parse(String value) {
+            if (value == null) {
+                // Before every row, including those written before sequences existed
+                return new Cursor(-1, 0, 0L);
+            }
+            String[] parts = value.split("\\.");
+            if (parts.length != 2 && parts.length != 3) {
+                throw new IllegalArgumentException("Invalid sync cursor: " + value);
+            }
+            try {
+                return new Cursor(Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+                        parts.length == 3 ? Long.valueOf(parts[2]) : null);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid sync cursor: " + value);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return changeSeq + "." + id + (archivedId != null ? "." + archivedId : "");
+        }
+    }
+
+    public static class CursorExpiredException extends RuntimeException {
+        public CursorExpiredException() {
+            super("Sync cursor is older than the retained deletions; start a full sync");
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.expensetracker.service;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Z-order grid over latitude and longitude. A point's cell code interleaves the bits of
+ * its row and column on a 2^31 x 2^31 grid, longitude first as in a geohash, so the
+ * cells of every coarser level are contiguous ranges of codes: dropping the low 2k bits
+ * of a code gives its cell k levels up. Areas are covered with a handful of such ranges
+ * and queried as index range scans on expenses.geo_cell.
+ */
+final class GeoGrid {
+
+    // Bits per axis of a stored cell code; codes fit in 62 bits and are never negative
+    static final int LEVEL = 31;
+
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private GeoGrid() {}
+
+    /**
+     * Cell code of a point at the finest level
+     */
+    static long cell(double latitude, double longitude) {
+        return interleave(row(latitude, LEVEL), column(longitude, LEVEL));
+    }
+
+    /**
+     * Latitude of the centre of a cell at the given level
+     */
+    static double latitude(long cell, int level) {
+        return -90 + (compact(cell) + 0.5) * 180 / (1L << level);
+    }
+
+    /**
+     * Longitude of the centre of a cell at the given level
+     */
+    static double longitude(long cell, int level) {
+        return -180 + (compact(cell >>> 1) + 0.5) * 360 / (1L << level);
+    }
+
+    /**
+     * Code ranges, as inclusive from/to pairs in ascending order, whose cells together
+     * cover the box. Uses the finest level at which the box spans at most maxCells cells,
+     * then merges neighbouring ranges. A box whose west edge is east of its east edge
+     * crosses the antimeridian.
+     */
+    static long[] cover(double south, double west, double north, double east, int maxCells) {
+        if (west > east) {
+            long[] western = cover(south, west, north, 180, maxCells);
+            long[] eastern = cover(south, -180, north, east, maxCells);
+            return merge(concat(eastern, western));
+        }
+        int level = 0;
+        while (level < LEVEL && cellsSpanned(south, west, north, east, level + 1) <= maxCells) {
+            level++;
+        }
+        int shift = 2 * (LEVEL - level);
+        List<long[]> ranges = new ArrayList<>();
+        for (long row = row(south, level); row <= row(north, level); row++) {
+            for (long column = column(west, level); column <= column(east, level); column++) {
+                long prefix = interleave(row, column);
+                ranges.add(new long[] {prefix << shift, ((prefix + 1) << shift) - 1});
+            }
+        }
+        long[] flat = new long[ranges.size() * 2];
+        for (int i = 0; i < ranges.size(); i++) {
+            flat[2 * i] = ranges.get(i)[0];
+            flat[2 * i + 1] = ranges.get(i)[1];
+        }
+        return merge(flat);
+    }
+
+    /**
+     * Finest level at which the box spans no more than cellsPerAxis cells along either axis
+     */
+    static int levelFor(double south, double west, double north, double east, int cellsPerAxis) {
+        double width = west > east ? east + 360 - west : east - west;
+        int level = 0;
+        while (level < LEVEL
+                && (north - south) * (1L << (level + 1)) / 180 <= cellsPerAxis
+                && width * (1L << (level + 1)) / 360 <= cellsPerAxis) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Bounding boxes, as south/west/north/east, of the points within radiusKm of a
+     * centre; the box is widened to every longitude when it reaches a pole
+     */
+    static double[] boundingBox(double latitude, double longitude, double radiusKm) {
+        double deltaLatitude = Math.toDegrees(radiusKm / EARTH_RADIUS_KM);
+        double south = latitude - deltaLatitude;
+        double north = latitude + deltaLatitude;
+        if (south <= -90 || north >= 90) {
+            return new double[] {Math.max(south, -90), -180, Math.min(north, 90), 180};
+        }
+        double deltaLongitude = Math.toDegrees(Math.asin(Math.sin(radiusKm / EARTH_RADIUS_KM)
+                / Math.cos(Math.toRadians(latitude))));
+        if (deltaLongitude >= 180 || Double.isNaN(deltaLongitude)) {
+            return new double[] {south, -180, north, 180};
+        }
+        return new double[] {south, normalizeLongitude(longitude - deltaLongitude),
+                north, normalizeLongitude(longitude + deltaLongitude)};
+    }
+
+    /**
+     * Great-circle distance in kilometres
+     */
+    static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double dLatitude = Math.toRadians(latitude2 - latitude1);
+        double dLongitude = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(dLatitude / 2) * Math.sin(dLatitude / 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+                * Math.sin(dLongitude / 2) * Math.sin(dLongitude / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Whether a longitude lies between west and east, going east from west
+     */
+    static boolean containsLongitude(double west, double east, double longitude) {
+        return west <= east ? longitude >= west && longitude <= east : longitude >= west || longitude <= east;
+    }
+
+    private static long cellsSpanned(double south, double west, double north, double east, int level) {
+        return (row(north, level) - row(south, level) + 1) * (column(east, level) - column(west, level) + 1);
+    }
+
+    private static long row(double latitude, int level) {
+        return quantize((latitude + 90) / 180, level);
+    }
+
+    private static long column(double longitude, int level) {
+        return quantize((longitude + 180) / 360, level);
+    }
+
+    private static long quantize(double fraction, int level) {
+        long cells = 1L << level;
+        return Math.min(Math.max((long) Math.floor(fraction * cells), 0), cells - 1);
+    }
+
+    private static double normalizeLongitude(double longitude) {
+        return longitude < -180 ? longitude + 360 : longitude > 180 ? longitude - 360 : longitude;
+    }
+
+    private static long interleave(long row, long column) {
+        return (spread(column) << 1) | spread(row);
+    }
+
+    /**
+     * Move bit i of a 31-bit value to bit 2i
+     */
+    private static long spread(long value) {
+        value = (value | (value << 16)) & 0x0000FFFF0000FFFFL;
+        value = (value | (value << 8)) & 0x00FF00FF00FF00FFL;
+        value = (value | (value << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        value = (value | (value << 2)) & 0x3333333333333333L;
+        return (value | (value << 1)) & 0x5555555555555555L;
+    }
+
+    /**
+     * Gather the even bits of a value back into the low half
+     */
+    private static long compact(long value) {
+        value &= 0x5555555555555555L;
+        value = (value | (value >>> 1)) & 0x3333333333333333L;
+        value = (value | (value >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        value = (value | (value >>> 4)) & 0x00FF00FF00FF00FFL;
+        value = (value | (value >>> 8)) & 0x0000FFFF0000FFFFL;
+        return (value | (value >>> 16)) & 0x00000000FFFFFFFFL;
+    }
+
+    private static long[] concat(long[] first, long[] second) {
+        long[] all = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, all, first.length, second.length);
+        return all;
+    }
+
+    /**
+     * Sort from/to pairs and join the ones that touch
+     */
+    private static long[] merge(long[] ranges) {
+        int count = ranges.length / 2;
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(ranges[2 * a], ranges[2 * b]));
+        long[] merged = new long[ranges.length];
+        int size = 0;
+        for (int i : order) {
+            if (size > 0 && ranges[2 * i] <= merged[size - 1] + 1) {
+                merged[size - 1] = Math.max(merged[size - 1], ranges[2 * i + 1]);
+            } else {
+                merged[size++] = ranges[2 * i];
+                merged[size++] = ranges[2 * i + 1];
+            }
+        }
+        return Arrays.copyOf(merged, size);
+    }
+}
@@ -0,0 +1,264 @@
+package com.expensetracker.service;
+
+
+import com.expensetracker.config.ShardRoutingDataSource;
+import com.expensetracker.model.Expense;
+import com.expensetracker.repository.ExpenseRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves free-text expense locations to coordinates from a local gazetteer file, with
+ * no network calls. A location matches a place when the whole string, or one of its
+ * comma-separated parts read left to right, is the place's name or an alias; results per
+ * location string are cached. Expenses written before they had coordinates are located
+ * by a nightly backfill, one batch of distinct locations at a time.
+ */
+@Service
+public class GeocodingService {
+
+    private static final Logger log = LoggerFactory.getLogger(GeocodingService.class);
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final Place UNRESOLVED = new Place(0, 0);
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @Autowired
+    private ShardDirectoryService shardDirectoryService;
+
+    @Autowired
+    private ExpenseSyncService expenseSyncService;
+
+    @Autowired
+    private DataVersionService dataVersionService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${geo.gazetteer:classpath:geo/gazetteer.csv}")
+    private Resource gazetteer;
+
+    @Value("${geo.cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${geo.backfill.batch-size:500}")
+    private int batchSize;
+
+    private volatile Map<String, Place> places;
+
+    private final Map<String, Place> resolved = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Place> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    /**
+     * Coordinates of a location string, if the gazetteer knows it
+     */
+    public Optional<Place> resolve(String location) {
+        if (location == null || location.isBlank()) {
+            return Optional.empty();
+        }
+        Place place;
+        synchronized (resolved) {
+            place = resolved.get(location);
+        }
+        if (place == null) {
+            place = lookup(location);
+            synchronized (resolved) {
+                resolved.put(location, place);
+            }
+        }
+        return place == UNRESOLVED ? Optional.empty() : Optional.of(place);
+    }
+
+    /**
+     * Give an expense its grid cell: from its own coordinates when it has both, otherwise
+     * from its location, otherwise none
+     */
+    public void locate(Expense expense) {
+        if (expense.getLatitude() != null && expense.getLongitude() != null) {
+            // Rounded as the columns store them, so the cell matches the stored point
+            expense.setLatitude(expense.getLatitude().setScale(6, RoundingMode.HALF_UP));
+            expense.setLongitude(expense.getLongitude().setScale(6, RoundingMode.HALF_UP));
+            expense.setGeoCell(GeoGrid.cell(expense.getLatitude().doubleValue(), expense.getLongitude().doubleValue()));
+            return;
+        }
+        Optional<Place> place = resolve(expense.getLocation());
+        expense.setLatitude(place.map(Place::getLatitude).orElse(null));
+        expense.setLongitude(place.map(Place::getLongitude).orElse(null));
+        expense.setGeoCell(place.map(Place::getCell).orElse(null));
+    }
+
+    private Place lookup(String location) {
+        Map<String, Place> index = places();
+        Place place = index.get(normalize(location));
+        if (place != null) {
+            return place;
+        }
+        for (String part : location.split(",")) {
+            place = index.get(normalize(part));
+            if (place != null) {
+                return place;
+            }
+        }
+        return UNRESOLVED;
+    }
+
+    private Map<String, Place> places() {
+        Map<String, Place> index = places;
+        if (index == null) {
+            index = loadGazetteer();
+            places = index;
+        }
+        return index;
+    }
+
+    /**
+     * Index every name and alias in the gazetteer; the first place listed under a name wins
+     */
+    private Map<String, Place> loadGazetteer() {
+        Map<String, Place> index = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(gazetteer.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length < 3) {
+                    continue;
+                }
+                Place place;
+                try {
+                    place = new Place(Double.parseDouble(fields[0].trim()), Double.parseDouble(fields[1].trim()));
+                } catch (NumberFormatException e) {
+                    log.warn("Skipping gazetteer line with bad coordinates: {}", line);
+                    continue;
+                }
+                for (int i = 2; i < fields.length; i++) {
+                    String name = normalize(fields[i]);
+                    if (!name.isEmpty()) {
+                        index.putIfAbsent(name, place);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading gazetteer", e);
+        }
+        log.info("Loaded {} gazetteer names", index.size());
+        return index;
+    }
+
+    private static String normalize(String name) {
+        return String.join(" ", TOKEN_SEPARATOR.split(name.toLowerCase(Locale.ROOT).trim())).trim();
+    }
+
+    /**
+     * Locate expenses that have a location but no coordinates, one shard at a time
+     */
+    @Scheduled(cron = "${geo.backfill-cron}")
+    public void backfillCoordinates() {
+        if (!shardDirectoryService.isEnabled()) {
+            backfillShard("default");
+            return;
+        }
+        for (String shard : shardDirectoryService.getShardNames()) {
+            ShardRoutingDataSource.callOn(shard, () -> backfillShard(shard));
+        }
+    }
+
+    private Void backfillShard(String shard) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long afterUserId = 0;
+        String afterLocation = "";
+        int located = 0;
+        List<Object[]> batch;
+        do {
+            batch = expenseRepository.findUnlocatedAfter(afterUserId, afterLocation, PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                break;
+            }
+            List<Object[]> rows = batch;
+            located += transaction.execute(status -> locateBatch(rows));
+            Object[] last = batch.get(batch.size() - 1);
+            afterUserId = (Long) last[0];
+            afterLocation = (String) last[1];
+        } while (batch.size() == batchSize);
+        log.info("Located {} expenses on {}", located, shard);
+        return null;
+    }
+
+    /**
+     * Set coordinates for one batch of user and location pairs. Each user's located rows
+     * share one new change sequence, so delta sync clients pick up the coordinates.
+     */
+    private int locateBatch(List<Object[]> rows) {
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, Long> changeSeqs = new HashMap<>();
+        int located = 0;
+        for (Object[] row : rows) {
+            Long userId = (Long) row[0];
+            String location = (String) row[1];
+            Optional<Place> place = resolve(location);
+            if (place.isEmpty()) {
+                continue;
+            }
+            Long changeSeq = changeSeqs.computeIfAbsent(userId, id -> {
+                dataVersionService.bump(id);
+                return expenseSyncService.nextChangeSeq(id);
+            });
+            located += expenseRepository.updateCoordinates(userId, location, place.get().getLatitude(),
+                    place.get().getLongitude(), place.get().getCell(), changeSeq, now);
+        }
+        return located;
+    }
+
+    /**
+     * A gazetteer entry's coordinates, at the precision expenses store, and grid cell
+     */
+    public static class Place {
+        private final BigDecimal latitude;
+        private final BigDecimal longitude;
+        private final long cell;
+
+        Place(double latitude, double longitude) {
+            this.latitude = BigDecimal.valueOf(latitude).setScale(6, RoundingMode.HALF_UP);
+            this.longitude = BigDecimal.valueOf(longitude).setScale(6, RoundingMode.HALF_UP);
+            this.cell = GeoGrid.cell(this.latitude.doubleValue(), this.longitude.doubleValue());
+        }
+
+        // Getters
+        public BigDecimal getLatitude() { return latitude; }
+        public BigDecimal getLongitude() { return longitude; }
+        public long getCell() { return cell; }
+    }
+}
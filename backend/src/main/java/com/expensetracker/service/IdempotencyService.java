@@ -0,0 +1,240 @@
+package com.expensetracker.service;
+
+
+import com.expensetracker.config.ShardRoutingDataSource;
+import com.expensetracker.model.IdempotencyRecord;
+import com.expensetracker.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency-Key support for writes. The first request with a key claims it in the
+ * same transaction as the write and stores the response; retries with the same key get
+ * that response back from an in-memory index, or from the idempotency_keys table after
+ * eviction or on another instance, without running the write again. A concurrent retry
+ * waits on the claimed row and replays once the first request commits.
+ */
+@Service
+public class IdempotencyService {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+
+    public static final String HEADER = "Idempotency-Key";
+
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private ShardDirectoryService shardDirectoryService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${idempotency.ttl:24h}")
+    private Duration ttl;
+
+    @Value("${idempotency.cache.max-entries:100000}")
+    private int maxEntries;
+
+    private final Map<IdempotencyRecord.Key, StoredResponse> responses = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<IdempotencyRecord.Key, StoredResponse> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    /**
+     * Run the write once per key and replay its response for retries. A retry whose
+     * request differs from the original fails with IdempotencyKeyReusedException.
+     */
+    public ResponseEntity<?> execute(Long userId, String key, Object request, Supplier<ResponseEntity<?>> write) {
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException(HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        IdempotencyRecord.Key id = new IdempotencyRecord.Key(userId, hash(key.getBytes(StandardCharsets.UTF_8)));
+        long requestHash;
+        try {
+            requestHash = hash(objectMapper.writeValueAsBytes(request));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Error fingerprinting request", e);
+        }
+
+        StoredResponse stored = cached(id);
+        if (stored != null) {
+            return replay(stored, requestHash);
+        }
+        shardDirectoryService.bindForWrite(userId);
+        Optional<IdempotencyRecord> existing = idempotencyRecordRepository.findByUserIdAndKeyHash(userId, id.getKeyHash());
+        if (existing.isPresent() && !isExpired(existing.get().getCreatedAt())) {
+            return replay(remember(id, existing.get()), requestHash);
+        }
+
+        try {
+            return runOnce(id, requestHash, existing.isPresent(), write);
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent request with the same key committed first
+            IdempotencyRecord winner = idempotencyRecordRepository.findByUserIdAndKeyHash(userId, id.getKeyHash())
+                    .orElseThrow(() -> e);
+            return replay(remember(id, winner), requestHash);
+        }
+    }
+
+    private ResponseEntity<?> runOnce(IdempotencyRecord.Key id, long requestHash, boolean expired,
+                                      Supplier<ResponseEntity<?>> write) {
+        LocalDateTime now = LocalDateTime.now();
+        AtomicReference<StoredResponse> stored = new AtomicReference<>();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        ResponseEntity<?> response = transaction.execute(status -> {
+            if (expired) {
+                idempotencyRecordRepository.deleteExpired(id.getUserId(), id.getKeyHash(), now.minus(ttl));
+            }
+            idempotencyRecordRepository.reserve(id.getUserId(), id.getKeyHash(), requestHash, now);
+            ResponseEntity<?> result = write.get();
+            byte[] body;
+            try {
+                body = result.getBody() != null ? objectMapper.writeValueAsBytes(result.getBody()) : null;
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException("Error serializing response", e);
+            }
+            idempotencyRecordRepository.complete(id.getUserId(), id.getKeyHash(), result.getStatusCode().value(), body);
+            stored.set(new StoredResponse(requestHash, result.getStatusCode().value(), body, System.currentTimeMillis()));
+            return result;
+        });
+        // Only a committed response may be replayed
+        synchronized (responses) {
+            responses.put(id, stored.get());
+        }
+        return response;
+    }
+
+    private StoredResponse cached(IdempotencyRecord.Key id) {
+        synchronized (responses) {
+            StoredResponse stored = responses.get(id);
+            if (stored != null && System.currentTimeMillis() - stored.createdAt > ttl.toMillis()) {
+                responses.remove(id);
+                return null;
+            }
+            return stored;
+        }
+    }
+
+    private StoredResponse remember(IdempotencyRecord.Key id, IdempotencyRecord record) {
+        long createdAt = record.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        StoredResponse stored = new StoredResponse(record.getRequestHash(), record.getStatusCode(),
+                record.getResponseBody(), createdAt);
+        synchronized (responses) {
+            responses.put(id, stored);
+        }
+        return stored;
+    }
+
+    private boolean isExpired(LocalDateTime createdAt) {
+        return createdAt.isBefore(LocalDateTime.now().minus(ttl));
+    }
+
+    /**
+     * Rebuild the stored response; the body is stored as JSON and handed back as a tree
+     * so it is still written in whatever format the retry negotiates
+     */
+    private ResponseEntity<?> replay(StoredResponse stored, long requestHash) {
+        if (stored.requestHash != requestHash) {
+            throw new IdempotencyKeyReusedException();
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(stored.statusCode).header(REPLAYED_HEADER, "true");
+        if (stored.body == null) {
+            return builder.build();
+        }
+        try {
+            return builder.body(objectMapper.readTree(stored.body));
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading stored response", e);
+        }
+    }
+
+    /**
+     * First 64 bits of the SHA-256 digest
+     */
+    private static long hash(byte[] value) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(value)).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Drop keys past the retention window, one shard at a time
+     */
+    @Scheduled(cron = "${idempotency.prune-cron}")
+    public void pruneKeys() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        LocalDateTime before = LocalDateTime.now().minus(ttl);
+        if (!shardDirectoryService.isEnabled()) {
+            transaction.executeWithoutResult(status -> pruneShard("default", before));
+            return;
+        }
+        for (String shard : shardDirectoryService.getShardNames()) {
+            ShardRoutingDataSource.callOn(shard, () -> transaction.execute(status -> pruneShard(shard, before)));
+        }
+    }
+
+    private Void pruneShard(String shard, LocalDateTime before) {
+        int pruned = idempotencyRecordRepository.deleteCreatedBefore(before);
+        log.info("Pruned {} idempotency keys on {}", pruned, shard);
+        return null;
+    }
+
+    /**
+     * Response stored for a key, with the fingerprint of the request that produced it
+     */
+    private static class StoredResponse {
+        private final long requestHash;
+        private final int statusCode;
+        private final byte[] body;
+        private final long createdAt;
+
+        StoredResponse(long requestHash, int statusCode, byte[] body, long createdAt) {
+            this.requestHash = requestHash;
+            this.statusCode = statusCode;
+            this.body = body;
+            this.createdAt = createdAt;
+        }
+    }
+
+    public static class IdempotencyKeyReusedException extends RuntimeException {
+        public IdempotencyKeyReusedException() {
+            super(HEADER + " was already used for a different request");
+        }
+    }
+}
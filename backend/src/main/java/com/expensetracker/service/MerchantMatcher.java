@@ -0,0 +1,180 @@
+package com.expensetracker.service;
+
+
+import java.util.Arrays;
+
+/**
+ * Aho-Corasick automaton over normalized text: finds every pattern occurring in a text
+ * in one pass, in time linear in the text length plus the number of matches. Each node
+ * keeps its edges as a sorted char array, so the automaton stays compact for thousands
+ * of patterns.
+ *
+ * Patterns can be added after matching has started; the new nodes are linked on the
+ * next match, which costs one pass over the trie. Changing the value of an existing
+ * pattern costs nothing beyond walking it. Not thread-safe.
+ */
+class MerchantMatcher {
+
+    private static final int ROOT = 0;
+
+    private static final char[] NO_LABELS = new char[0];
+
+    private static final int[] NO_TARGETS = new int[0];
+
+    private char[][] labels = new char[64][];
+
+    private int[][] targets = new int[64][];
+
+    private int[] fail = new int[64];
+
+    // Pattern ending at the node, -1 for none
+    private int[] patternAt = new int[64];
+
+    // Nearest node on the failure chain where a pattern ends, -1 for none
+    private int[] outputLink = new int[64];
+
+    private int nodes;
+
+    private int[] lengths = new int[16];
+
+    private long[] values = new long[16];
+
+    private int patterns;
+
+    private boolean linked;
+
+    MerchantMatcher() {
+        nodes = 1;
+        labels[ROOT] = NO_LABELS;
+        targets[ROOT] = NO_TARGETS;
+        patternAt[ROOT] = -1;
+        outputLink[ROOT] = -1;
+    }
+
+    /**
+     * Add a pattern, or replace the value of an existing one
+     */
+    void put(String pattern, long value) {
+        int node = ROOT;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            int next = next(node, c);
+            node = next >= 0 ? next : addChild(node, c);
+        }
+        if (patternAt[node] >= 0) {
+            values[patternAt[node]] = value;
+            return;
+        }
+        if (patterns == lengths.length) {
+            lengths = Arrays.copyOf(lengths, patterns * 2);
+            values = Arrays.copyOf(values, patterns * 2);
+        }
+        lengths[patterns] = pattern.length();
+        values[patterns] = value;
+        patternAt[node] = patterns++;
+        linked = false;
+    }
+
+    int size() {
+        return patterns;
+    }
+
+    /**
+     * Report every pattern occurrence in the text with the index of its last char
+     */
+    void match(String text, MatchConsumer consumer) {
+        if (!linked) {
+            link();
+        }
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = next(state, c)) < 0 && state != ROOT) {
+                state = fail[state];
+            }
+            state = next >= 0 ? next : ROOT;
+            for (int node = patternAt[state] >= 0 ? state : outputLink[state]; node >= 0; node = outputLink[node]) {
+                int pattern = patternAt[node];
+                consumer.accept(i, lengths[pattern], values[pattern]);
+            }
+        }
+    }
+
+    private int next(int node, char c) {
+        int index = Arrays.binarySearch(labels[node], c);
+        return index >= 0 ? targets[node][index] : -1;
+    }
+
+    private int addChild(int node, char c) {
+        if (nodes == fail.length) {
+            int capacity = nodes * 2;
+            labels = Arrays.copyOf(labels, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+            fail = Arrays.copyOf(fail, capacity);
+            patternAt = Arrays.copyOf(patternAt, capacity);
+            outputLink = Arrays.copyOf(outputLink, capacity);
+        }
+        int child = nodes++;
+        labels[child] = NO_LABELS;
+        targets[child] = NO_TARGETS;
+        patternAt[child] = -1;
+        outputLink[child] = -1;
+
+        char[] nodeLabels = labels[node];
+        int[] nodeTargets = targets[node];
+        int position = -(Arrays.binarySearch(nodeLabels, c) + 1);
+        char[] newLabels = new char[nodeLabels.length + 1];
+        int[] newTargets = new int[nodeTargets.length + 1];
+        System.arraycopy(nodeLabels, 0, newLabels, 0, position);
+        System.arraycopy(nodeTargets, 0, newTargets, 0, position);
+        newLabels[position] = c;
+        newTargets[position] = child;
+        System.arraycopy(nodeLabels, position, newLabels, position + 1, nodeLabels.length - position);
+        System.arraycopy(nodeTargets, position, newTargets, position + 1, nodeTargets.length - position);
+        labels[node] = newLabels;
+        targets[node] = newTargets;
+        linked = false;
+        return child;
+    }
+
+    /**
+     * Compute failure and output links breadth-first
+     */
+    private void link() {
+        int[] queue = new int[nodes];
+        int head = 0;
+        int tail = 0;
+        fail[ROOT] = ROOT;
+        for (int child : targets[ROOT]) {
+            fail[child] = ROOT;
+            outputLink[child] = -1;
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int node = queue[head++];
+            char[] nodeLabels = labels[node];
+            int[] nodeTargets = targets[node];
+            for (int i = 0; i < nodeLabels.length; i++) {
+                int child = nodeTargets[i];
+                int state = fail[node];
+                int next;
+                while ((next = next(state, nodeLabels[i])) < 0 && state != ROOT) {
+                    state = fail[state];
+                }
+                int target = next >= 0 && next != child ? next : ROOT;
+                fail[child] = target;
+                outputLink[child] = patternAt[target] >= 0 ? target : outputLink[target];
+                queue[tail++] = child;
+            }
+        }
+        linked = true;
+    }
+
+    /**
+     * Receives matches: end index in the text, pattern length and pattern value
+     */
+    interface MatchConsumer {
+        void accept(int end, int length, long value);
+    }
+}
@@ -1,25 +1,50 @@
 package com.expensetracker.service;
 
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import net.sourceforge.tess4j.Tesseract;
 import net.sourceforge.tess4j.TesseractException;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.text.PDFTextStripper;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.imageio.ImageIO;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 @Service
 public class OcrService {
 
+    // Characters needed for totals, taxes and dates in the footer pass
+    private static final String FOOTER_WHITELIST = "0123456789.,$/-: ABDEGLMNORSTUVXabdeglmnorstuvx";
+
+    private static final int HEADER_LINES = 4;
+
+    private static final int FOOTER_LINES = 8;
+
     @Value("${ocr.tesseract.data-path}")
     private String tessDataPath;
 
@@ -29,7 +54,40 @@ public class OcrService {
     @Value("${ocr.tesseract.confidence-threshold}")
     private Double confidenceThreshold;
 
+    @Value("${ocr.pool-size:0}")
+    private int poolSize;
+
+    @Value("${ocr.pdf.dpi:300}")
+    private float pdfDpi;
+
+    @Value("${ocr.pdf.min-text-length:20}")
+    private int pdfMinTextLength;
+
+    private ExecutorService ocrExecutor;
 
+    private int renderAhead;
+
+    private final ThreadLocal<Tesseract> engines = ThreadLocal.withInitial(this::createEngine);
+
+    private final ThreadLocal<Tesseract> fieldEngines = ThreadLocal.withInitial(this::createFieldEngine);
+
+    @PostConstruct
+    void init() {
+        int threads = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        ocrExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "ocr-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Caps rendered-but-not-yet-OCR'd pages so large PDFs do not pile bitmaps up in the heap
+        renderAhead = threads * 2;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        ocrExecutor.shutdownNow();
+    }
 
     /**
      * Extract data from receipt image
@@ -40,23 +98,271 @@ public class OcrService {
             byte[] imageBytes = Base64.getDecoder().decode(imageBase64.replaceFirst("data:image/[^;]*;base64,", ""));
             BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageBytes));
 
-            // Perform OCR
-            Tesseract tesseract = new Tesseract();
-            tesseract.setDatapath(tessDataPath);
-            tesseract.setLanguage(language);
+            return extractReceiptData(image);
+
+        } catch (IOException e) {
+            throw new RuntimeException("Error processing receipt image", e);
+        }
+    }
+
+    /**
+     * Extract data from a receipt image or PDF file, decoding it straight from disk
+     */
+    public ReceiptData extractReceiptData(Path receiptFile) {
+        try {
+            if (isPdf(receiptFile)) {
+                return extractPdfReceiptData(receiptFile, true);
+            }
+            BufferedImage image = ImageIO.read(receiptFile.toFile());
+            return extractReceiptData(image);
+        } catch (IOException | TesseractException e) {
+            throw new RuntimeException("Error processing receipt image", e);
+        }
+    }
+
+    /**
+     * Run OCR over a decoded receipt image
+     */
+    private ReceiptData extractReceiptData(BufferedImage image) {
+        if (image == null) {
+            throw new RuntimeException("Unsupported or corrupt receipt image");
+        }
+
+        // Perform OCR
+        String ocrText = await(ocrExecutor.submit(() -> doOcr(image)));
 
-            String ocrText = tesseract.doOCR(image);
+        // Parse extracted data
+        ReceiptData receiptData = parseReceiptText(ocrText);
+        receiptData.setOcrText(ocrText);
+        receiptData.setConfidence(0.8); // Default confidence level
 
-            // Parse extracted data
-            ReceiptData receiptData = parseReceiptText(ocrText);
-            receiptData.setOcrText(ocrText);
-            receiptData.setConfidence(0.8); // Default confidence level
+        return receiptData;
+    }
 
-            return receiptData;
+    /**
+     * Full extraction of a receipt image or PDF on the OCR pool without blocking the caller
+     */
+    public CompletableFuture<ReceiptData> extractReceiptDataAsync(Path receiptFile) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                if (isPdf(receiptFile)) {
+                    // Scanned pages are OCR'd on this pool thread; queueing them behind it on
+                    // the same pool could leave no thread free to run them
+                    return extractPdfReceiptData(receiptFile, false);
+                }
+                BufferedImage image = ImageIO.read(receiptFile.toFile());
+                if (image == null) {
+                    throw new RuntimeException("Unsupported or corrupt receipt image");
+                }
+                String ocrText = doOcr(image);
+                ReceiptData receiptData = parseReceiptText(ocrText);
+                receiptData.setOcrText(ocrText);
+                receiptData.setConfidence(0.8); // Default confidence level
+                return receiptData;
+            } catch (IOException | TesseractException e) {
+                throw new RuntimeException("Error processing receipt image", e);
+            }
+        }, ocrExecutor);
+    }
 
-        } catch (TesseractException | IOException e) {
+    /**
+     * Fast first pass: OCR only the header and footer of a receipt image for
+     * merchant, total, tax and date. Line items and full text are left empty.
+     */
+    public ReceiptData extractKeyFields(Path imageFile) {
+        BufferedImage image;
+        try {
+            image = ImageIO.read(imageFile.toFile());
+        } catch (IOException e) {
             throw new RuntimeException("Error processing receipt image", e);
         }
+        if (image == null) {
+            throw new RuntimeException("Unsupported or corrupt receipt image");
+        }
+
+        Rectangle[] regions = detectKeyRegions(image);
+        Future<String> header = ocrExecutor.submit(() -> engines.get().doOCR(image, regions[0]));
+        Future<String> footer = ocrExecutor.submit(() -> fieldEngines.get().doOCR(image, regions[1]));
+        String headerText = await(header);
+        String footerText = await(footer);
+
+        ReceiptData data = new ReceiptData();
+        data.setMerchantName(extractMerchantName(headerText));
+        data.setTotalAmount(extractTotalAmount(footerText));
+        data.setTaxAmount(extractTaxAmount(footerText));
+        data.setDate(extractDate(footerText + "\n" + headerText));
+        data.setPartial(true);
+        data.setConfidence(0.7);
+        return data;
+    }
+
+    /**
+     * Locate header and footer text bands from a horizontal ink projection.
+     * Falls back to fixed proportions when too few text lines are found.
+     */
+    private Rectangle[] detectKeyRegions(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int step = Math.max(1, width / 400);
+        int minInk = Math.max(2, width / step / 100);
+
+        List<int[]> bands = new ArrayList<>();
+        int bandStart = -1;
+        int gap = 0;
+        for (int y = 0; y < height; y++) {
+            int ink = 0;
+            for (int x = 0; x < width && ink < minInk; x += step) {
+                int rgb = image.getRGB(x, y);
+                int luma = (((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114) / 1000;
+                if (luma < 128) {
+                    ink++;
+                }
+            }
+            if (ink >= minInk) {
+                if (bandStart < 0) {
+                    bandStart = y;
+                }
+                gap = 0;
+            } else if (bandStart >= 0 && ++gap > 2) {
+                bands.add(new int[]{bandStart, y - gap});
+                bandStart = -1;
+            }
+        }
+        if (bandStart >= 0) {
+            bands.add(new int[]{bandStart, height - 1});
+        }
+
+        if (bands.size() < HEADER_LINES + 2) {
+            int headerEnd = height / 4;
+            int footerStart = height * 3 / 5;
+            return new Rectangle[]{
+                new Rectangle(0, 0, width, headerEnd),
+                new Rectangle(0, footerStart, width, height - footerStart)
+            };
+        }
+
+        int margin = Math.max(4, height / 200);
+        int headerEnd = Math.min(height, bands.get(HEADER_LINES - 1)[1] + margin);
+        int footerStart = Math.max(0, bands.get(Math.max(HEADER_LINES, bands.size() - FOOTER_LINES))[0] - margin);
+        return new Rectangle[]{
+            new Rectangle(0, 0, width, headerEnd),
+            new Rectangle(0, footerStart, width, height - footerStart)
+        };
+    }
+
+    /**
+     * Extract data from a PDF receipt or invoice.
+     * Pages with an embedded text layer are read directly; scanned pages are
+     * rendered one at a time and OCR'd in parallel on the engine pool, or on the
+     * calling thread when it already belongs to that pool.
+     */
+    private ReceiptData extractPdfReceiptData(Path pdfFile, boolean parallel) throws IOException, TesseractException {
+        List<Future<String>> pages = new ArrayList<>();
+        Semaphore renderPermits = new Semaphore(renderAhead);
+        int ocrPages = 0;
+
+        try (PDDocument document = PDDocument.load(pdfFile.toFile(), MemoryUsageSetting.setupTempFileOnly())) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            PDFRenderer renderer = new PDFRenderer(document);
+
+            for (int page = 0; page < document.getNumberOfPages(); page++) {
+                stripper.setStartPage(page + 1);
+                stripper.setEndPage(page + 1);
+                String text = stripper.getText(document);
+
+                if (text.trim().length() >= pdfMinTextLength) {
+                    pages.add(CompletableFuture.completedFuture(text));
+                    continue;
+                }
+
+                if (!parallel) {
+                    pages.add(CompletableFuture.completedFuture(
+                            doOcr(renderer.renderImageWithDPI(page, pdfDpi, ImageType.GRAY))));
+                    ocrPages++;
+                    continue;
+                }
+
+                // PDFRenderer is not thread-safe, so pages render here and only OCR fans out
+                acquire(renderPermits);
+                try {
+                    BufferedImage image = renderer.renderImageWithDPI(page, pdfDpi, ImageType.GRAY);
+                    pages.add(ocrExecutor.submit(() -> {
+                        try {
+                            return doOcr(image);
+                        } finally {
+                            renderPermits.release();
+                        }
+                    }));
+                    ocrPages++;
+                } catch (IOException | RuntimeException e) {
+                    renderPermits.release();
+                    throw e;
+                }
+            }
+        } catch (IOException | TesseractException | RuntimeException e) {
+            pages.forEach(page -> page.cancel(true));
+            throw e;
+        }
+
+        StringBuilder ocrText = new StringBuilder();
+        for (Future<String> page : pages) {
+            if (ocrText.length() > 0) {
+                ocrText.append('\n');
+            }
+            ocrText.append(await(page));
+        }
+
+        String text = ocrText.toString();
+        ReceiptData receiptData = parseReceiptText(text);
+        receiptData.setOcrText(text);
+        receiptData.setConfidence(ocrPages == 0 ? 0.99 : 0.8);
+
+        return receiptData;
+    }
+
+    private Tesseract createEngine() {
+        Tesseract tesseract = new Tesseract();
+        tesseract.setDatapath(tessDataPath);
+        tesseract.setLanguage(language);
+        return tesseract;
+    }
+
+    private Tesseract createFieldEngine() {
+        Tesseract tesseract = createEngine();
+        tesseract.setVariable("tessedit_char_whitelist", FOOTER_WHITELIST);
+        return tesseract;
+    }
+
+    private String doOcr(BufferedImage image) throws TesseractException {
+        return engines.get().doOCR(image);
+    }
+
+    private static void acquire(Semaphore permits) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while processing receipt", e);
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new RuntimeException("Interrupted while processing receipt", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error processing receipt image", e.getCause());
+        }
+    }
+
+    static boolean isPdf(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] header = in.readNBytes(4);
+            return header.length == 4 && header[0] == '%' && header[1] == 'P' && header[2] == 'D' && header[3] == 'F';
+        }
     }
 
     /**
@@ -241,6 +547,10 @@ public class OcrService {
         private List<ReceiptItem> items;
         private String ocrText;
         private double confidence;
+        private String scanId;
+        private boolean partial;
+        private List<Long> possibleDuplicateIds;
+        private Long suggestedCategoryId;
 
         // Getters and Setters
         public String getMerchantName() { return merchantName; }
@@ -263,6 +573,18 @@ public class OcrService {
 
         public double getConfidence() { return confidence; }
         public void setConfidence(double confidence) { this.confidence = confidence; }
+
+        public String getScanId() { return scanId; }
+        public void setScanId(String scanId) { this.scanId = scanId; }
+
+        public boolean isPartial() { return partial; }
+        public void setPartial(boolean partial) { this.partial = partial; }
+
+        public List<Long> getPossibleDuplicateIds() { return possibleDuplicateIds; }
+        public void setPossibleDuplicateIds(List<Long> possibleDuplicateIds) { this.possibleDuplicateIds = possibleDuplicateIds; }
+
+        public Long getSuggestedCategoryId() { return suggestedCategoryId; }
+        public void setSuggestedCategoryId(Long suggestedCategoryId) { this.suggestedCategoryId = suggestedCategoryId; }
     }
 
     /**
@@ -0,0 +1,313 @@
+package com.expensetracker.service;
+
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.tomcat.util.http.fileupload.FileItemIterator;
+import org.apache.tomcat.util.http.fileupload.FileItemStream;
+import org.apache.tomcat.util.http.fileupload.FileUpload;
+import org.apache.tomcat.util.http.fileupload.FileUploadException;
+import org.apache.tomcat.util.http.fileupload.servlet.ServletRequestContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+@Service
+public class ReceiptBatchService {
+
+    @Autowired
+    private OcrService ocrService;
+
+    @Autowired
+    private ReceiptUploadService receiptUploadService;
+
+    @Value("${ocr.batch.parallelism:0}")
+    private int parallelism;
+
+    @Value("${ocr.batch.max-files:200}")
+    private int maxFiles;
+
+    @Value("${file.upload.batch-max-size}")
+    private DataSize batchMaxSize;
+
+    private ExecutorService batchExecutor;
+
+    @PostConstruct
+    void init() {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        batchExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "receipt-batch-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        batchExecutor.shutdownNow();
+    }
+
+    /**
+     * Start a new batch; receipts begin processing as soon as they are added
+     */
+    public BatchScan newBatch() {
+        return new BatchScan();
+    }
+
+    /**
+     * Add every "files" part of a multipart request to the batch as it arrives, streaming
+     * each one to disk, so scanning starts before the rest of the request is read. Uses
+     * the streaming parser bundled with the embedded Tomcat; the request must not have been
+     * parsed already (spring.servlet.multipart.resolve-lazily).
+     */
+    public void addMultipart(BatchScan batch, HttpServletRequest request) throws IOException {
+        InputStream body = new BatchInputStream(request.getInputStream(), batchMaxSize);
+        ServletRequestContext context = new ServletRequestContext(request) {
+            @Override
+            public InputStream getInputStream() {
+                return body;
+            }
+        };
+        try {
+            FileItemIterator items = new FileUpload().getItemIterator(context);
+            while (items.hasNext()) {
+                FileItemStream item = items.next();
+                if (item.isFormField() || !"files".equals(item.getFieldName())) {
+                    continue;
+                }
+                String name = item.getName();
+                try (InputStream in = item.openStream()) {
+                    add(batch, name, in, item.getContentType());
+                }
+            }
+        } catch (FileUploadException e) {
+            throw new IOException("Malformed multipart batch", e);
+        }
+    }
+
+    /**
+     * Add every file entry of a zip archive to the batch, streaming each one to disk
+     */
+    public void addZip(BatchScan batch, InputStream zipStream) throws IOException {
+        try (ZipInputStream zip = new ZipInputStream(new BatchInputStream(zipStream, batchMaxSize))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.isDirectory() || isHidden(entry.getName())) {
+                    continue;
+                }
+                add(batch, entry.getName(), new EntryInputStream(zip), null);
+            }
+        }
+    }
+
+    /**
+     * Receive one file of a batch; a file over the size limit or of the wrong type fails
+     * on its own, while a batch over its file count or total size fails as a whole
+     */
+    private void add(BatchScan batch, String name, InputStream in, String contentType) {
+        try {
+            batch.add(name, receiptUploadService.receive(in, name, contentType));
+        } catch (BatchTooLargeException e) {
+            throw e;
+        } catch (ReceiptUploadService.UploadTooLargeException
+                 | ReceiptUploadService.UnsupportedUploadTypeException e) {
+            batch.addFailure(name, e.getMessage());
+        }
+    }
+
+    private static boolean isHidden(String name) {
+        String base = name.substring(name.lastIndexOf('/') + 1);
+        return base.startsWith(".") || name.startsWith("__MACOSX/");
+    }
+
+    /**
+     * Outcome of scanning one receipt in a batch
+     */
+    public static class BatchItemResult {
+        private int index;
+        private String filename;
+        private String status;
+        private OcrService.ReceiptData receipt;
+        private String error;
+
+        static BatchItemResult success(int index, String filename, OcrService.ReceiptData receipt) {
+            BatchItemResult result = new BatchItemResult();
+            result.index = index;
+            result.filename = filename;
+            result.status = "ok";
+            result.receipt = receipt;
+            return result;
+        }
+
+        static BatchItemResult failure(int index, String filename, String error) {
+            BatchItemResult result = new BatchItemResult();
+            result.index = index;
+            result.filename = filename;
+            result.status = "error";
+            result.error = error;
+            return result;
+        }
+
+        // Getters
+        public int getIndex() { return index; }
+
+        public String getFilename() { return filename; }
+
+        public String getStatus() { return status; }
+
+        public OcrService.ReceiptData getReceipt() { return receipt; }
+
+        public String getError() { return error; }
+    }
+
+    /**
+     * A set of receipts being scanned concurrently, drained in completion order
+     */
+    public class BatchScan {
+        private final CompletionService<BatchItemResult> completionService =
+                new ExecutorCompletionService<>(batchExecutor);
+        private final List<Future<BatchItemResult>> futures = new ArrayList<>();
+        private final List<ReceiptUploadService.ReceiptUpload> uploads = new ArrayList<>();
+        private int submitted;
+
+        /**
+         * Queue a received receipt for scanning; the batch takes ownership of the upload
+         */
+        public synchronized void add(String filename, ReceiptUploadService.ReceiptUpload upload) {
+            if (submitted >= maxFiles) {
+                upload.close();
+                throw new BatchTooLargeException("Batch exceeds " + maxFiles + " files");
+            }
+            int index = submitted++;
+            uploads.add(upload);
+            futures.add(completionService.submit(() -> {
+                try (upload) {
+                    return BatchItemResult.success(index, filename, ocrService.extractReceiptData(upload.getPath()));
+                } catch (RuntimeException e) {
+                    return BatchItemResult.failure(index, filename, "Could not read receipt");
+                }
+            }));
+        }
+
+        /**
+         * Record a receipt that was rejected before scanning
+         */
+        public synchronized void addFailure(String filename, String error) {
+            if (submitted >= maxFiles) {
+                throw new BatchTooLargeException("Batch exceeds " + maxFiles + " files");
+            }
+            int index = submitted++;
+            futures.add(completionService.submit(() -> BatchItemResult.failure(index, filename, error)));
+        }
+
+        public synchronized int size() {
+            return submitted;
+        }
+
+        /**
+         * Wait for the next finished receipt, in whatever order they complete
+         */
+        public BatchItemResult next() throws InterruptedException {
+            try {
+                return completionService.take().get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error processing receipt batch", e.getCause());
+            }
+        }
+
+        /**
+         * Abandon the batch, e.g. when the client disconnects
+         */
+        public synchronized void cancel() {
+            futures.forEach(future -> future.cancel(true));
+            uploads.forEach(ReceiptUploadService.ReceiptUpload::close);
+        }
+    }
+
+    /**
+     * A batch over ocr.batch.max-files files or file.upload.batch-max-size bytes
+     */
+    public static class BatchTooLargeException extends ReceiptUploadService.UploadTooLargeException {
+        public BatchTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Request body that fails the batch once it exceeds file.upload.batch-max-size
+     */
+    private static class BatchInputStream extends FilterInputStream {
+        private final DataSize limit;
+        private long remaining;
+
+        BatchInputStream(InputStream in, DataSize limit) {
+            super(in);
+            this.limit = limit;
+            this.remaining = limit.toBytes();
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long read) {
+            remaining -= read;
+            if (remaining < 0) {
+                throw new BatchTooLargeException("Batch exceeds " + limit.toMegabytes() + "MB limit");
+            }
+        }
+    }
+
+    /**
+     * Exposes the current zip entry without letting the consumer close the archive
+     */
+    private static class EntryInputStream extends FilterInputStream {
+        EntryInputStream(ZipInputStream zip) {
+            super(zip);
+        }
+
+        @Override
+        public void close() {
+            // The archive stays open for the next entry
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.expensetracker.service;
+
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+@Service
+public class ReceiptScanService {
+
+    @Autowired
+    private OcrService ocrService;
+
+    @Autowired
+    private ReceiptStorageService receiptStorageService;
+
+    @Value("${ocr.tiered.cache-size:1000}")
+    private int cacheSize;
+
+    private final Map<String, CompletableFuture<OcrService.ReceiptData>> fullScans =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<OcrService.ReceiptData>> eldest) {
+                    return size() > cacheSize;
+                }
+            };
+
+    /**
+     * Scan a receipt in full, blocking until line items and text are available
+     */
+    public OcrService.ReceiptData fullScan(ReceiptUploadService.ReceiptUpload upload) {
+        return ocrService.extractReceiptData(upload.getPath());
+    }
+
+    /**
+     * Fast scan returning only merchant, total, tax and date. The receipt is staged
+     * and a full OCR pass is queued in the background under the returned scanId; the
+     * full scan can be fetched until the staged file expires.
+     */
+    public OcrService.ReceiptData quickScan(ReceiptUploadService.ReceiptUpload upload) {
+        String key = receiptStorageService.stage(upload);
+        Path stored = receiptStorageService.resolveStaged(key)
+                .orElseThrow(() -> new RuntimeException("Error storing receipt"));
+
+        if (upload.isPdf()) {
+            // Text-layer PDFs are already cheap; no partial pass is worth it
+            OcrService.ReceiptData receiptData = ocrService.extractReceiptData(stored);
+            receiptData.setScanId(key);
+            cache(key, CompletableFuture.completedFuture(receiptData));
+            return receiptData;
+        }
+
+        OcrService.ReceiptData keyFields = ocrService.extractKeyFields(stored);
+        keyFields.setScanId(key);
+        startFullScan(key, stored);
+        return keyFields;
+    }
+
+    /**
+     * Look up the full scan for a quick-scanned receipt, starting it on demand
+     * if it was evicted. Empty when the scanId is unknown or its upload has expired.
+     */
+    public Optional<CompletableFuture<OcrService.ReceiptData>> getFullScan(String scanId) {
+        CompletableFuture<OcrService.ReceiptData> scan;
+        synchronized (fullScans) {
+            scan = fullScans.get(scanId);
+        }
+        if (scan != null) {
+            return Optional.of(scan);
+        }
+        return receiptStorageService.resolveStaged(scanId).map(stored -> startFullScan(scanId, stored));
+    }
+
+    private CompletableFuture<OcrService.ReceiptData> startFullScan(String key, Path stored) {
+        synchronized (fullScans) {
+            CompletableFuture<OcrService.ReceiptData> existing = fullScans.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            CompletableFuture<OcrService.ReceiptData> tagged = ocrService.extractReceiptDataAsync(stored).thenApply(receiptData -> {
+                receiptData.setScanId(key);
+                return receiptData;
+            });
+            fullScans.put(key, tagged);
+
+            // Failed scans are dropped so the next request retries them
+            tagged.whenComplete((receiptData, error) -> {
+                if (error != null) {
+                    synchronized (fullScans) {
+                        fullScans.remove(key, tagged);
+                    }
+                }
+            });
+            return tagged;
+        }
+    }
+
+    private void cache(String key, CompletableFuture<OcrService.ReceiptData> scan) {
+        synchronized (fullScans) {
+            fullScans.put(key, scan);
+        }
+    }
+}
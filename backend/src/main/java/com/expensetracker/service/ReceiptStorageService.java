@@ -0,0 +1,261 @@
+package com.expensetracker.service;
+
+
+import jakarta.annotation.PostConstruct;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Service
+public class ReceiptStorageService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReceiptStorageService.class);
+
+    private static final Pattern KEY_PATTERN = Pattern.compile("[0-9a-f]{64}\\.(jpg|jpeg|png|pdf)");
+
+    private static final String URL_PREFIX = "/expenses/receipts/";
+
+    @Value("${file.upload.storage-path}")
+    private String storagePath;
+
+    @Value("${file.upload.thumbnail-size:256}")
+    private int thumbnailSize;
+
+    @Value("${file.upload.staging-ttl:24h}")
+    private Duration stagingTtl;
+
+    private Path receiptRoot;
+
+    private Path stagingRoot;
+
+    private Path thumbnailRoot;
+
+    private final ConcurrentMap<String, Object> thumbnailLocks = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() throws IOException {
+        receiptRoot = Files.createDirectories(Paths.get(storagePath, "receipts"));
+        thumbnailRoot = Files.createDirectories(Paths.get(storagePath, "thumbnails"));
+        stagingRoot = Files.createDirectories(Paths.get(storagePath, "staging"));
+    }
+
+    /**
+     * Store an uploaded receipt under its content hash and return its key.
+     * Identical uploads share a single file.
+     */
+    public String store(ReceiptUploadService.ReceiptUpload upload) {
+        return store(upload, receiptRoot);
+    }
+
+    /**
+     * Keep an upload that is only scanned, not attached to an expense, for
+     * file.upload.staging-ttl and return its key. The key is not served as a receipt.
+     */
+    public String stage(ReceiptUploadService.ReceiptUpload upload) {
+        String key = store(upload, stagingRoot);
+        try {
+            // A repeated upload of the same content restarts its time to live
+            Files.setLastModifiedTime(shardedPath(stagingRoot, key), FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            throw new RuntimeException("Error staging receipt", e);
+        }
+        return key;
+    }
+
+    private String store(ReceiptUploadService.ReceiptUpload upload, Path root) {
+        String key = upload.getSha256() + "." + upload.getType();
+        Path target = shardedPath(root, key);
+
+        if (Files.exists(target)) {
+            return key;
+        }
+
+        try {
+            Files.createDirectories(target.getParent());
+            try {
+                Files.move(upload.getPath(), target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.copy(upload.getPath(), target);
+            }
+        } catch (FileAlreadyExistsException e) {
+            // A concurrent upload of the same content won the race
+        } catch (IOException e) {
+            throw new RuntimeException("Error storing receipt", e);
+        }
+        return key;
+    }
+
+    /**
+     * Public URL for a stored receipt key, relative to the API base path
+     */
+    public String toUrl(String key) {
+        return URL_PREFIX + key;
+    }
+
+    /**
+     * Resolve a receipt key to its file, rejecting anything that is not a stored key
+     */
+    public Optional<Path> resolve(String key) {
+        if (key == null || !KEY_PATTERN.matcher(key).matches()) {
+            return Optional.empty();
+        }
+        Path path = shardedPath(receiptRoot, key);
+        return Files.isRegularFile(path) ? Optional.of(path) : Optional.empty();
+    }
+
+    /**
+     * Resolve a staged upload's key to its file, if it has not expired
+     */
+    public Optional<Path> resolveStaged(String key) {
+        if (key == null || !KEY_PATTERN.matcher(key).matches()) {
+            return Optional.empty();
+        }
+        Path path = shardedPath(stagingRoot, key);
+        return Files.isRegularFile(path) ? Optional.of(path) : Optional.empty();
+    }
+
+    /**
+     * Delete staged uploads older than file.upload.staging-ttl
+     */
+    @Scheduled(fixedDelayString = "${file.upload.staging-sweep-interval-ms:3600000}")
+    public void purgeStaged() {
+        long cutoff = System.currentTimeMillis() - stagingTtl.toMillis();
+        List<Path> expired;
+        try (Stream<Path> files = Files.walk(stagingRoot)) {
+            expired = files.filter(Files::isRegularFile)
+                    .filter(file -> lastModified(file) < cutoff)
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            log.error("Failed to list staged receipts", e);
+            return;
+        }
+        for (Path file : expired) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.error("Failed to delete staged receipt {}", file, e);
+            }
+        }
+        if (!expired.isEmpty()) {
+            log.info("Deleted {} expired staged receipts", expired.size());
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            // Deleted by a concurrent sweep
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Resolve the thumbnail for a receipt, generating and caching it on first request
+     */
+    public Optional<Path> resolveThumbnail(String key) {
+        Optional<Path> source = resolve(key);
+        if (source.isEmpty()) {
+            return Optional.empty();
+        }
+
+        String hash = key.substring(0, key.indexOf('.'));
+        Path thumbnail = shardedPath(thumbnailRoot, hash + "_" + thumbnailSize + ".jpg");
+        if (Files.isRegularFile(thumbnail)) {
+            return Optional.of(thumbnail);
+        }
+
+        // One generator per receipt; concurrent requests wait for it instead of repeating the work
+        Object lock = thumbnailLocks.computeIfAbsent(hash, h -> new Object());
+        try {
+            synchronized (lock) {
+                if (!Files.isRegularFile(thumbnail)) {
+                    BufferedImage image = readImage(source.get());
+                    if (image == null) {
+                        return Optional.empty();
+                    }
+                    writeThumbnail(image, thumbnail);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error generating receipt thumbnail", e);
+        } finally {
+            thumbnailLocks.remove(hash, lock);
+        }
+        return Optional.of(thumbnail);
+    }
+
+    /**
+     * Decode a stored receipt into an image for thumbnailing
+     */
+    protected BufferedImage readImage(Path source) throws IOException {
+        if (source.getFileName().toString().endsWith(".pdf")) {
+            try (PDDocument document = PDDocument.load(source.toFile(), MemoryUsageSetting.setupTempFileOnly())) {
+                if (document.getNumberOfPages() == 0) {
+                    return null;
+                }
+                // First page at screen resolution is plenty for a thumbnail
+                return new PDFRenderer(document).renderImageWithDPI(0, 72, ImageType.RGB);
+            }
+        }
+        return ImageIO.read(source.toFile());
+    }
+
+    private void writeThumbnail(BufferedImage image, Path thumbnail) throws IOException {
+        double scale = Math.min(1.0, (double) thumbnailSize / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        Files.createDirectories(thumbnail.getParent());
+        Path temp = Files.createTempFile(thumbnail.getParent(), "thumb-", ".tmp");
+        try {
+            ImageIO.write(scaled, "jpg", temp.toFile());
+            Files.move(temp, thumbnail, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Two levels of two-character shards keep directories small: ab/cd/abcd...
+     */
+    private static Path shardedPath(Path root, String name) {
+        return root.resolve(name.substring(0, 2)).resolve(name.substring(2, 4)).resolve(name);
+    }
+}
@@ -0,0 +1,230 @@
+package com.expensetracker.service;
+
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Service
+public class ReceiptUploadService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Long enough for the longest magic number sniffed
+    private static final int HEADER_LEN = 8;
+
+    @Value("${file.upload.max-size}")
+    private DataSize maxSize;
+
+    @Value("${file.upload.allowed-types}")
+    private String allowedTypes;
+
+    @Value("${file.upload.storage-path}")
+    private String storagePath;
+
+    private Set<String> allowedTypeSet;
+
+    private Path tempDirectory;
+
+    @PostConstruct
+    void init() throws IOException {
+        allowedTypeSet = Arrays.stream(allowedTypes.split(","))
+                .map(type -> type.trim().toLowerCase(Locale.ROOT))
+                .filter(type -> !type.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+
+        // Spool inside the storage volume so stored receipts can be moved into place atomically
+        tempDirectory = Files.createDirectories(Paths.get(storagePath, "tmp"));
+    }
+
+    /**
+     * Receive a base64 encoded receipt, decoding it as a stream
+     */
+    public ReceiptUpload receiveBase64(String imageBase64, String imageFormat) {
+        int comma = imageBase64.startsWith("data:") ? imageBase64.indexOf(',') : -1;
+        InputStream encoded = new ByteArrayInputStream(imageBase64.getBytes(StandardCharsets.US_ASCII));
+        try {
+            encoded.skip(comma + 1L);
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading receipt upload", e);
+        }
+        return receive(Base64.getMimeDecoder().wrap(encoded), "receipt." + imageFormat, null);
+    }
+
+    /**
+     * Stream an uploaded receipt to a temp file, enforcing size and type limits as bytes arrive
+     */
+    public ReceiptUpload receive(InputStream in, String filename, String contentType) {
+        String declaredType = resolveType(filename, contentType);
+        if (declaredType != null && !allowedTypeSet.contains(declaredType)) {
+            throw new UnsupportedUploadTypeException("File type not allowed: " + declaredType);
+        }
+
+        long limit = maxSize.toBytes();
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(tempDirectory, "receipt-", ".upload");
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            // A stream may return fewer bytes per read than the magic numbers span
+            byte[] header = in.readNBytes(HEADER_LEN);
+            if (header.length == 0) {
+                throw new UnsupportedUploadTypeException("Empty upload");
+            }
+            String sniffedType = sniffType(header, header.length);
+            if (sniffedType == null || !allowedTypeSet.contains(sniffedType)) {
+                throw new UnsupportedUploadTypeException("Unrecognized or disallowed file content");
+            }
+            long total = header.length;
+            if (total > limit) {
+                throw new UploadTooLargeException("Upload exceeds " + maxSize.toMegabytes() + "MB limit");
+            }
+
+            try (OutputStream out = Files.newOutputStream(tempFile, StandardOpenOption.WRITE)) {
+                digest.update(header);
+                out.write(header);
+
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    total += read;
+                    if (total > limit) {
+                        throw new UploadTooLargeException("Upload exceeds " + maxSize.toMegabytes() + "MB limit");
+                    }
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+
+            return new ReceiptUpload(tempFile, sniffedType, total, HexFormat.of().formatHex(digest.digest()));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            deleteQuietly(tempFile);
+            throw new RuntimeException("Error receiving receipt upload", e);
+        } catch (RuntimeException e) {
+            deleteQuietly(tempFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Resolve the declared file type from the filename extension or content type
+     */
+    private String resolveType(String filename, String contentType) {
+        if (filename != null) {
+            int dot = filename.lastIndexOf('.');
+            if (dot >= 0 && dot < filename.length() - 1) {
+                return filename.substring(dot + 1).toLowerCase(Locale.ROOT);
+            }
+        }
+        if (contentType != null) {
+            String subtype = contentType.toLowerCase(Locale.ROOT);
+            int semicolon = subtype.indexOf(';');
+            if (semicolon >= 0) {
+                subtype = subtype.substring(0, semicolon);
+            }
+            switch (subtype.trim()) {
+                case "image/jpeg": return "jpeg";
+                case "image/png": return "png";
+                case "application/pdf": return "pdf";
+                default: return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Detect the file type from its leading magic bytes
+     */
+    private String sniffType(byte[] header, int length) {
+        if (length >= 3 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xD8 && (header[2] & 0xFF) == 0xFF) {
+            return allowedTypeSet.contains("jpg") ? "jpg" : "jpeg";
+        }
+        if (length >= 4 && (header[0] & 0xFF) == 0x89 && header[1] == 'P' && header[2] == 'N' && header[3] == 'G') {
+            return "png";
+        }
+        if (length >= 4 && header[0] == '%' && header[1] == 'P' && header[2] == 'D' && header[3] == 'F') {
+            return "pdf";
+        }
+        return null;
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Temp directory cleanup will reclaim it
+        }
+    }
+
+    /**
+     * Received receipt held in a temp file; closing it removes the file
+     */
+    public static class ReceiptUpload implements AutoCloseable {
+        private final Path path;
+        private final String type;
+        private final long size;
+        private final String sha256;
+
+        public ReceiptUpload(Path path, String type, long size, String sha256) {
+            this.path = path;
+            this.type = type;
+            this.size = size;
+            this.sha256 = sha256;
+        }
+
+        public Path getPath() { return path; }
+
+        public String getType() { return type; }
+
+        public long getSize() { return size; }
+
+        public String getSha256() { return sha256; }
+
+        public boolean isPdf() { return "pdf".equals(type); }
+
+        @Override
+        public void close() {
+            deleteQuietly(path);
+        }
+    }
+
+    /**
+     * Thrown when an upload exceeds file.upload.max-size
+     */
+    public static class UploadTooLargeException extends RuntimeException {
+        public UploadTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Thrown when an upload is not one of file.upload.allowed-types
+     */
+    public static class UnsupportedUploadTypeException extends RuntimeException {
+        public UnsupportedUploadTypeException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.expensetracker.service;
+
+
+import com.expensetracker.config.ReplicaRoutingDataSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+
+/**
+ * Decides whether a read-only transaction may run on a replica. Users who wrote
+ * recently stay on the primary until any replica within the allowed lag has caught up.
+ */
+@Service
+public class ReplicaRoutingService {
+
+    @Autowired
+    private DataVersionService dataVersionService;
+
+    @Value("${spring.datasource.routing.max-lag:5s}")
+    private Duration maxLag;
+
+    @Value("${spring.datasource.routing.check-interval:2s}")
+    private Duration checkInterval;
+
+    /**
+     * Let the current read-only transaction use a replica unless the user's own
+     * recent writes might not have reached it yet
+     */
+    public void routeReads(Long userId) {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        // Lag is sampled every check interval, so a replica may be that much further behind
+        if (dataVersionService.writtenWithin(userId, maxLag.plus(checkInterval))) {
+            return;
+        }
+        ReplicaRoutingDataSource.setReplicaAllowed(true);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                ReplicaRoutingDataSource.setReplicaAllowed(false);
+            }
+        });
+    }
+}
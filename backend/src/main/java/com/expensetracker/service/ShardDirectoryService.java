@@ -0,0 +1,158 @@
+package com.expensetracker.service;
+
+
+import com.expensetracker.config.ShardRoutingDataSource;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps users to shards. The directory lives in the home shard's user_shards table
+ * (created by migration V3);
+ * users without a row are on the home shard. Lookups are cached for a short TTL,
+ * which bounds how long another instance can act on a stale placement.
+ */
+@Service
+public class ShardDirectoryService {
+
+    public static final String ACTIVE = "ACTIVE";
+
+    public static final String MOVING = "MOVING";
+
+    @Autowired(required = false)
+    private ShardRoutingDataSource shardRoutingDataSource;
+
+    @Value("${spring.datasource.sharding.enabled:false}")
+    private boolean enabled;
+
+    @Value("${spring.datasource.sharding.directory-cache-ttl:5s}")
+    private Duration cacheTtl;
+
+    private JdbcTemplate directory;
+
+    private final ConcurrentMap<Long, Placement> cache = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        directory = new JdbcTemplate(shardRoutingDataSource.getPrimary(shardRoutingDataSource.getHomeShard()));
+    }
+
+    public boolean isEnabled() {
+        return enabled && shardRoutingDataSource != null;
+    }
+
+    public Set<String> getShardNames() {
+        return isEnabled() ? shardRoutingDataSource.getShardNames() : Set.of();
+    }
+
+    /**
+     * Route the rest of this request's database work to the user's shard
+     */
+    public void bind(Long userId) {
+        if (isEnabled()) {
+            ShardRoutingDataSource.bind(placement(userId).getShard());
+        }
+    }
+
+    /**
+     * Route to the user's shard for a write, refusing while the user is being moved
+     */
+    public void bindForWrite(Long userId) {
+        if (!isEnabled()) {
+            return;
+        }
+        Placement placement = placement(userId);
+        if (MOVING.equals(placement.getState())) {
+            throw new UserMovingException(userId);
+        }
+        ShardRoutingDataSource.bind(placement.getShard());
+    }
+
+    /**
+     * Current placement of a user, from cache when fresh
+     */
+    public Placement placement(Long userId) {
+        Placement cached = cache.get(userId);
+        if (cached != null && System.nanoTime() - cached.loadedAt < cacheTtl.toNanos()) {
+            return cached;
+        }
+        Placement placement = load(userId);
+        cache.put(userId, placement);
+        return placement;
+    }
+
+    /**
+     * Mark a user as moving, which stops writes once every instance's cache has expired
+     */
+    void markMoving(Long userId, String source, String target) {
+        directory.update("INSERT INTO user_shards (user_id, shard, state, target_shard) VALUES (?, ?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE shard = VALUES(shard), state = VALUES(state), target_shard = VALUES(target_shard)",
+                userId, source, MOVING, target);
+        cache.remove(userId);
+    }
+
+    /**
+     * Point a user at a shard and accept writes again
+     */
+    void activate(Long userId, String shard) {
+        directory.update("UPDATE user_shards SET shard = ?, state = ?, target_shard = NULL WHERE user_id = ?",
+                shard, ACTIVE, userId);
+        cache.remove(userId);
+    }
+
+    Duration getCacheTtl() {
+        return cacheTtl;
+    }
+
+    private Placement load(Long userId) {
+        List<Placement> rows = directory.query("SELECT shard, state, target_shard FROM user_shards WHERE user_id = ?",
+                (rs, rowNum) -> new Placement(rs.getString("shard"), rs.getString("state"), rs.getString("target_shard")),
+                userId);
+        return rows.isEmpty()
+                ? new Placement(shardRoutingDataSource.getHomeShard(), ACTIVE, null)
+                : rows.get(0);
+    }
+
+    /**
+     * Where a user's data lives
+     */
+    public static class Placement {
+        private final String shard;
+        private final String state;
+        private final String targetShard;
+        private final long loadedAt = System.nanoTime();
+
+        Placement(String shard, String state, String targetShard) {
+            this.shard = shard;
+            this.state = state;
+            this.targetShard = targetShard;
+        }
+
+        // Getters
+        public String getShard() { return shard; }
+
+        public String getState() { return state; }
+
+        public String getTargetShard() { return targetShard; }
+    }
+
+    /**
+     * Writes are paused while a user's data is copied to another shard
+     */
+    public static class UserMovingException extends RuntimeException {
+        public UserMovingException(Long userId) {
+            super("User " + userId + " is being moved to another shard");
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.expensetracker.service;
+
+
+import com.expensetracker.config.ShardRoutingDataSource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Moves a user's data between shards while the user stays online. Reads keep
+ * going to the old shard until the directory flips; writes are refused only
+ * while the final copy runs.
+ */
+@Service
+public class ShardMigrationService {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardMigrationService.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * Every table holding a user's rows, parents before children
+     */
+    private static final List<UserTable> TABLES = List.of(
+            new UserTable("users", "id = ?"),
+            new UserTable("categories", "user_id = ?"),
+            new UserTable("budgets", "user_id = ?"),
+            new UserTable("expenses", "user_id = ?"),
+            new UserTable("receipts", "expense_id IN (SELECT id FROM expenses WHERE user_id = ?)"),
+            new UserTable("budget_alerts", "budget_id IN (SELECT id FROM budgets WHERE user_id = ?)"),
+            new UserTable("category_usage", "user_id = ?"),
+            new UserTable("sync_sequences", "user_id = ?"),
+            new UserTable("expense_tombstones", "user_id = ?"),
+            new UserTable("idempotency_keys", "user_id = ?"));
+
+    @Autowired(required = false)
+    private ShardRoutingDataSource shardRoutingDataSource;
+
+    @Autowired
+    private ShardDirectoryService shardDirectoryService;
+
+    @Value("${spring.datasource.sharding.move-grace-period:10s}")
+    private Duration gracePeriod;
+
+    private ExecutorService mover;
+
+    @PostConstruct
+    void init() {
+        mover = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-mover");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        mover.shutdownNow();
+    }
+
+    /**
+     * Start moving a user to another shard. Returns once the move is queued;
+     * progress is visible through the user's placement.
+     */
+    public void moveUser(Long userId, String targetShard) {
+        if (!shardDirectoryService.isEnabled()) {
+            throw new IllegalStateException("Sharding is not enabled");
+        }
+        if (!shardDirectoryService.getShardNames().contains(targetShard)) {
+            throw new IllegalArgumentException("Unknown shard " + targetShard);
+        }
+        ShardDirectoryService.Placement placement = shardDirectoryService.placement(userId);
+        if (ShardDirectoryService.MOVING.equals(placement.getState())) {
+            throw new IllegalArgumentException("User " + userId + " is already being moved");
+        }
+        if (placement.getShard().equals(targetShard)) {
+            throw new IllegalArgumentException("User " + userId + " is already on " + targetShard);
+        }
+
+        String sourceShard = placement.getShard();
+        shardDirectoryService.markMoving(userId, sourceShard, targetShard);
+        mover.submit(() -> move(userId, sourceShard, targetShard));
+    }
+
+    private void move(Long userId, String sourceShard, String targetShard) {
+        try {
+            // Wait out cached placements and in-flight writes on every instance
+            Thread.sleep(waitTime().toMillis());
+            copyUser(userId, sourceShard, targetShard);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            shardDirectoryService.activate(userId, sourceShard);
+            return;
+        } catch (SQLException | RuntimeException e) {
+            log.error("Moving user {} from {} to {} failed; user stays on {}", userId, sourceShard, targetShard, sourceShard, e);
+            shardDirectoryService.activate(userId, sourceShard);
+            return;
+        }
+
+        shardDirectoryService.activate(userId, targetShard);
+        log.info("Moved user {} from {} to {}", userId, sourceShard, targetShard);
+
+        try {
+            // Instances still reading the old placement keep finding the data until their cache expires
+            Thread.sleep(waitTime().toMillis());
+            deleteUser(userId, sourceShard);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (SQLException | RuntimeException e) {
+            log.error("Removing moved user {} from {} failed; rows remain as orphans", userId, sourceShard, e);
+        }
+    }
+
+    private Duration waitTime() {
+        Duration ttl = shardDirectoryService.getCacheTtl();
+        return gracePeriod.compareTo(ttl) > 0 ? gracePeriod : ttl;
+    }
+
+    /**
+     * Copy every row of the user from a consistent snapshot of the source, replacing
+     * anything a previous failed attempt left on the target, in one target transaction
+     */
+    private void copyUser(Long userId, String sourceShard, String targetShard) throws SQLException {
+        try (Connection source = shardRoutingDataSource.getPrimary(sourceShard).getConnection();
+             Connection target = shardRoutingDataSource.getPrimary(targetShard).getConnection()) {
+            source.setReadOnly(true);
+            source.setAutoCommit(false);
+            target.setAutoCommit(false);
+            try {
+                deleteRows(target, userId);
+                for (UserTable table : TABLES) {
+                    if (exists(source, table.name)) {
+                        int copied = copyRows(source, target, table, userId);
+                        log.debug("Copied {} {} rows of user {} to {}", copied, table.name, userId, targetShard);
+                    }
+                }
+                target.commit();
+                source.commit();
+            } catch (SQLException | RuntimeException e) {
+                target.rollback();
+                source.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private void deleteUser(Long userId, String shard) throws SQLException {
+        try (Connection connection = shardRoutingDataSource.getPrimary(shard).getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                deleteRows(connection, userId);
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Delete the user's rows, children first. The users row itself is kept because
+     * the home shard's copy is the account record.
+     */
+    private static void deleteRows(Connection connection, Long userId) throws SQLException {
+        for (int i = TABLES.size() - 1; i > 0; i--) {
+            UserTable table = TABLES.get(i);
+            if (!exists(connection, table.name)) {
+                continue;
+            }
+            try (PreparedStatement delete = connection.prepareStatement(
+                    "DELETE FROM " + table.name + " WHERE " + table.condition)) {
+                delete.setLong(1, userId);
+                delete.executeUpdate();
+            }
+        }
+    }
+
+    private static int copyRows(Connection source, Connection target, UserTable table, Long userId) throws SQLException {
+        try (PreparedStatement select = source.prepareStatement(
+                "SELECT * FROM " + table.name + " WHERE " + table.condition)) {
+            select.setLong(1, userId);
+            try (ResultSet rows = select.executeQuery()) {
+                ResultSetMetaData metaData = rows.getMetaData();
+                List<String> columns = new ArrayList<>();
+                for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                    columns.add(metaData.getColumnName(i));
+                }
+
+                String sql = "INSERT INTO " + table.name + " (" + String.join(", ", columns) + ") VALUES ("
+                        + columns.stream().map(c -> "?").collect(Collectors.joining(", ")) + ") ON DUPLICATE KEY UPDATE "
+                        + columns.stream().map(c -> c + " = VALUES(" + c + ")").collect(Collectors.joining(", "));
+
+                int count = 0;
+                try (PreparedStatement insert = target.prepareStatement(sql)) {
+                    while (rows.next()) {
+                        for (int i = 1; i <= columns.size(); i++) {
+                            insert.setObject(i, rows.getObject(i));
+                        }
+                        insert.addBatch();
+                        if (++count % BATCH_SIZE == 0) {
+                            insert.executeBatch();
+                        }
+                    }
+                    if (count % BATCH_SIZE != 0) {
+                        insert.executeBatch();
+                    }
+                }
+                return count;
+            }
+        }
+    }
+
+    private static boolean exists(Connection connection, String table) throws SQLException {
+        try (ResultSet tables = connection.getMetaData().getTables(connection.getCatalog(), null, table, new String[]{"TABLE"})) {
+            return tables.next();
+        }
+    }
+
+    private static class UserTable {
+        private final String name;
+        private final String condition;
+
+        UserTable(String name, String condition) {
+            this.name = name;
+            this.condition = condition;
+        }
+    }
+}
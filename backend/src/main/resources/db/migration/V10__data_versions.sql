@@ -0,0 +1,15 @@
+-- Data versions behind ETags and 304 responses. A user's version is advanced inside every
+-- write transaction, so it commits with the data and every backend instance reads the same
+-- value. written_at keeps the user's reads on the primary until replicas have caught up.
+
+ALTER TABLE sync_sequences
+    ADD COLUMN data_version BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN written_at TIMESTAMP(3) NULL;
+
+-- Version of data every user sees, such as the default categories; always one row
+CREATE TABLE shared_data_version (
+    id TINYINT PRIMARY KEY,
+    version BIGINT NOT NULL DEFAULT 0
+);
+
+INSERT INTO shared_data_version (id, version) VALUES (1, 0);
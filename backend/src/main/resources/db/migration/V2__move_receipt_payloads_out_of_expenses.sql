@@ -0,0 +1,40 @@
+-- Move receipt/OCR payloads out of the hot expenses row
+-- Listing and analytics scans no longer read the OCR JSON; it is loaded on demand from receipts
+
+CREATE TABLE IF NOT EXISTS receipts (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    expense_id BIGINT NOT NULL,
+    image_url VARCHAR(500),
+    ocr_text TEXT,
+    ocr_confidence DECIMAL(5,2),
+    merchant_name VARCHAR(200),
+    total_amount DECIMAL(15,2),
+    tax_amount DECIMAL(15,2),
+    date_from_receipt DATE,
+    items JSON,
+    ocr_data JSON,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    UNIQUE KEY uk_receipts_expense_id (expense_id),
+    FOREIGN KEY (expense_id) REFERENCES expenses(id) ON DELETE CASCADE
+);
+
+-- Databases baselined after the column was already gone skip the copy and the drop
+SET @has_ocr_data = (SELECT COUNT(*) FROM information_schema.columns
+                     WHERE table_schema = DATABASE() AND table_name = 'expenses' AND column_name = 'ocr_data');
+
+-- Copy existing OCR payloads; safe to re-run
+SET @copy_ocr_data = IF(@has_ocr_data > 0,
+    'INSERT INTO receipts (expense_id, image_url, ocr_data, created_at)
+     SELECT e.id, e.receipt_image_url, e.ocr_data, COALESCE(e.created_at, CURRENT_TIMESTAMP)
+     FROM expenses e
+     LEFT JOIN receipts r ON r.expense_id = e.id
+     WHERE e.ocr_data IS NOT NULL AND r.id IS NULL',
+    'DO 0');
+PREPARE copy_ocr_data FROM @copy_ocr_data;
+EXECUTE copy_ocr_data;
+DEALLOCATE PREPARE copy_ocr_data;
+
+SET @drop_ocr_data = IF(@has_ocr_data > 0, 'ALTER TABLE expenses DROP COLUMN ocr_data', 'DO 0');
+PREPARE drop_ocr_data FROM @drop_ocr_data;
+EXECUTE drop_ocr_data;
+DEALLOCATE PREPARE drop_ocr_data;
@@ -0,0 +1,9 @@
+-- Shard directory, read on the home shard only; users without a row live on the home shard
+
+CREATE TABLE IF NOT EXISTS user_shards (
+    user_id BIGINT PRIMARY KEY,
+    shard VARCHAR(50) NOT NULL,
+    state VARCHAR(20) NOT NULL DEFAULT 'ACTIVE',
+    target_shard VARCHAR(50),
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+);
@@ -0,0 +1,37 @@
+-- Composite and covering indexes for the shapes ExpenseRepository actually runs.
+-- Every query is scoped to one user, so user_id leads each index; the columns after it
+-- match the second predicate, and amount is included so the aggregates never touch rows.
+
+-- Totals, counts, trend, monthly and daily averages over a date range; listing by date
+CREATE INDEX idx_expenses_user_date_amount ON expenses (user_id, date, amount);
+
+-- Per-category totals and spending by category over a date range; category filter
+CREATE INDEX idx_expenses_user_category_date ON expenses (user_id, category_id, date, amount);
+
+-- Status and reimbursable lists
+CREATE INDEX idx_expenses_user_status ON expenses (user_id, status);
+CREATE INDEX idx_expenses_user_reimbursable ON expenses (user_id, is_reimbursable);
+
+-- The single-column indexes are now prefixes of the above or serve no query.
+-- idx_expenses_category_id stays: the category foreign key needs category_id first.
+-- Databases created by Hibernate never had them, so each drop is conditional.
+SET @drop_index = IF((SELECT COUNT(*) FROM information_schema.statistics
+                      WHERE table_schema = DATABASE() AND table_name = 'expenses' AND index_name = 'idx_expenses_user_id') > 0,
+    'DROP INDEX idx_expenses_user_id ON expenses', 'DO 0');
+PREPARE drop_index FROM @drop_index;
+EXECUTE drop_index;
+DEALLOCATE PREPARE drop_index;
+
+SET @drop_index = IF((SELECT COUNT(*) FROM information_schema.statistics
+                      WHERE table_schema = DATABASE() AND table_name = 'expenses' AND index_name = 'idx_expenses_date') > 0,
+    'DROP INDEX idx_expenses_date ON expenses', 'DO 0');
+PREPARE drop_index FROM @drop_index;
+EXECUTE drop_index;
+DEALLOCATE PREPARE drop_index;
+
+SET @drop_index = IF((SELECT COUNT(*) FROM information_schema.statistics
+                      WHERE table_schema = DATABASE() AND table_name = 'expenses' AND index_name = 'idx_expenses_status') > 0,
+    'DROP INDEX idx_expenses_status ON expenses', 'DO 0');
+PREPARE drop_index FROM @drop_index;
+EXECUTE drop_index;
+DEALLOCATE PREPARE drop_index;
@@ -0,0 +1,25 @@
+-- Delta sync: every expense write takes the next per-user change sequence; deletes leave a
+-- tombstone carrying theirs. Clients page through changes in (change_seq, id) order.
+
+ALTER TABLE expenses ADD COLUMN change_seq BIGINT NOT NULL DEFAULT 0;
+
+CREATE INDEX idx_expenses_user_change_seq ON expenses (user_id, change_seq);
+
+-- Per-user sequence; the row lock taken when advancing it serialises a user's writes, so
+-- sequences commit in order. floor_seq is the highest sequence whose tombstone was pruned.
+CREATE TABLE sync_sequences (
+    user_id BIGINT PRIMARY KEY,
+    change_seq BIGINT NOT NULL DEFAULT 0,
+    floor_seq BIGINT NOT NULL DEFAULT 0,
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+);
+
+CREATE TABLE expense_tombstones (
+    expense_id BIGINT PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    change_seq BIGINT NOT NULL,
+    deleted_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_expense_tombstones_user_change_seq (user_id, change_seq),
+    INDEX idx_expense_tombstones_deleted_at (deleted_at),
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+);
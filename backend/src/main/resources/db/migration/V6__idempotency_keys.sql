@@ -0,0 +1,15 @@
+-- Responses of writes made with an Idempotency-Key header, so a retried request gets the
+-- original response instead of repeating the write. Keys and request bodies are stored as
+-- 64-bit hashes; rows are pruned once older than idempotency.ttl.
+
+CREATE TABLE idempotency_keys (
+    user_id BIGINT NOT NULL,
+    key_hash BIGINT NOT NULL,
+    request_hash BIGINT NOT NULL,
+    status_code SMALLINT,
+    response_body MEDIUMBLOB,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (user_id, key_hash),
+    INDEX idx_idempotency_keys_created_at (created_at),
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+);
@@ -0,0 +1,12 @@
+-- Optional coordinates on expenses for radius, bounding-box and map queries. geo_cell is
+-- the Z-order (interleaved bits) code of the point on a 2^31 x 2^31 grid, so every grid
+-- cell at every coarser level is one contiguous range of codes and spatial queries are
+-- index range scans. Expenses without coordinates leave all three columns null.
+
+ALTER TABLE expenses
+    ADD COLUMN latitude DECIMAL(9,6),
+    ADD COLUMN longitude DECIMAL(9,6),
+    ADD COLUMN geo_cell BIGINT;
+
+-- Covers the map aggregates, which never read the rows
+CREATE INDEX idx_expenses_user_geo_cell ON expenses (user_id, geo_cell, latitude, longitude, date, amount);
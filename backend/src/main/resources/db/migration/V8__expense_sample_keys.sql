@@ -0,0 +1,12 @@
+-- Sample key for approximate analytics. Every expense falls in one of 64 buckets, so
+-- reading a few buckets of a user's expenses is a uniform random sample of them. New rows
+-- get a random key when written. Existing rows start at 255, outside the sampled keys, and
+-- are spread by a hash of their id in small batches by the nightly sample key backfill, so
+-- the migration never rewrites the whole table in one transaction. Until all of a user's
+-- rows have a key, that user's approximate analytics are computed exactly.
+
+ALTER TABLE expenses ADD COLUMN sample_key TINYINT UNSIGNED NOT NULL DEFAULT 255;
+
+-- A list of keys and a date range become one index range per key; category_id and
+-- amount are included so the sampled aggregates never touch rows
+CREATE INDEX idx_expenses_user_sample ON expenses (user_id, sample_key, date, amount, category_id);
@@ -0,0 +1,34 @@
+-- Per-category usage counters (CategoryUsageService). Kept out of V1 so databases
+-- baselined at version 1 get the table too. Databases created by Hibernate may already
+-- have it, so the table and each index are created only if missing.
+CREATE TABLE IF NOT EXISTS category_usage (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    category_id BIGINT NOT NULL,
+    usage_count BIGINT NOT NULL DEFAULT 0,
+    last_used_at TIMESTAMP NULL,
+    UNIQUE KEY uk_category_usage_user_category (user_id, category_id),
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
+    FOREIGN KEY (category_id) REFERENCES categories(id) ON DELETE CASCADE
+);
+
+SET @create_index = IF((SELECT COUNT(*) FROM information_schema.statistics
+                        WHERE table_schema = DATABASE() AND table_name = 'category_usage' AND index_name = 'idx_category_usage_user_count') > 0,
+    'DO 0', 'CREATE INDEX idx_category_usage_user_count ON category_usage (user_id, usage_count)');
+PREPARE create_index FROM @create_index;
+EXECUTE create_index;
+DEALLOCATE PREPARE create_index;
+
+SET @create_index = IF((SELECT COUNT(*) FROM information_schema.statistics
+                        WHERE table_schema = DATABASE() AND table_name = 'category_usage' AND index_name = 'idx_category_usage_user_last_used') > 0,
+    'DO 0', 'CREATE INDEX idx_category_usage_user_last_used ON category_usage (user_id, last_used_at)');
+PREPARE create_index FROM @create_index;
+EXECUTE create_index;
+DEALLOCATE PREPARE create_index;
+
+-- Seed counters for existing expenses; rows already maintained are left alone and the
+-- nightly reconcile corrects any drift
+INSERT IGNORE INTO category_usage (user_id, category_id, usage_count, last_used_at)
+SELECT user_id, category_id, COUNT(*), MAX(created_at) FROM expenses
+WHERE category_id IS NOT NULL
+GROUP BY user_id, category_id;
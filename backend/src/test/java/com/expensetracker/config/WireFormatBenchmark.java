@@ -0,0 +1,157 @@
+package com.expensetracker.config;
+
+
+import com.expensetracker.model.Category;
+import com.expensetracker.model.Expense;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Bytes on the wire and serialization CPU time of an expense page in JSON, CBOR and Smile,
+ * using mappers configured the way {@link WebConfig} and application.yml configure them.
+ * Not part of the regular build; run it with
+ * {@code mvn -B test -Dtest=WireFormatBenchmark -Dsurefire.failIfNoSpecifiedTests=false}.
+ */
+class WireFormatBenchmark {
+
+    private static final int[] PAGE_SIZES = {20, 100};
+
+    private static final int WARMUP_ITERATIONS = 5_000;
+
+    private static final int MEASURED_ITERATIONS = 20_000;
+
+    private static final String[] TITLES = {"Coffee at Blue Bottle", "Uber to airport", "Whole Foods groceries",
+            "Netflix subscription", "Team lunch", "Hotel Marriott Berlin", "Shell fuel", "Amazon order",
+            "Gym membership", "Pharmacy"};
+
+    private static final String[] CURRENCIES = {"USD", "USD", "USD", "EUR", "GBP"};
+
+    private static final String[] CATEGORY_NAMES = {"Food & Dining", "Transportation", "Shopping",
+            "Entertainment", "Bills & Utilities", "Travel", "Health", "Other"};
+
+    @Test
+    void serializeExpensePage() throws Exception {
+        Map<String, ObjectMapper> mappers = new LinkedHashMap<>();
+        mappers.put("JSON", builder().build());
+        mappers.put("CBOR", builder().factory(new CBORFactory()).build());
+        mappers.put("Smile", builder().factory(new SmileFactory()).build());
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        StringBuilder report = new StringBuilder(String.format("%-6s %5s %10s %14s%n",
+                "format", "page", "bytes", "cpu us/page"));
+        for (int size : PAGE_SIZES) {
+            PageImpl<Expense> page = new PageImpl<>(expenses(size), PageRequest.of(0, size), 5_000);
+            JsonNode reference = null;
+            for (Map.Entry<String, ObjectMapper> format : mappers.entrySet()) {
+                ObjectMapper mapper = format.getValue();
+                byte[] bytes = mapper.writeValueAsBytes(page);
+
+                // Every format must carry the same document; amounts compare as decimals
+                JsonNode decoded = mapper.reader().with(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS).readTree(bytes);
+                if (reference == null) {
+                    reference = decoded;
+                }
+                assertThat(decoded.get("content")).hasSize(size);
+                assertThat(decoded).isEqualTo(reference);
+
+                long sink = 0;
+                for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                    sink += mapper.writeValueAsBytes(page).length;
+                }
+                long start = threads.getCurrentThreadCpuTime();
+                for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+                    sink += mapper.writeValueAsBytes(page).length;
+                }
+                long cpuNanos = threads.getCurrentThreadCpuTime() - start;
+                assertThat(sink).isPositive();
+
+                report.append(String.format("%-6s %5d %10d %14.1f%n", format.getKey(), size, bytes.length,
+                        cpuNanos / 1000.0 / MEASURED_ITERATIONS));
+            }
+        }
+        System.out.print(report);
+    }
+
+    /**
+     * Mirrors spring.jackson in application.yml plus the Blackbird module from WebConfig
+     */
+    private static Jackson2ObjectMapperBuilder builder() {
+        return new Jackson2ObjectMapperBuilder()
+                .modulesToInstall(new BlackbirdModule())
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .simpleDateFormat("yyyy-MM-dd")
+                .timeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * A list page as users produce it: a few categories, optional descriptions, locations and tags
+     */
+    private static List<Expense> expenses(int count) {
+        Random random = new Random(42);
+        List<Category> categories = new ArrayList<>();
+        for (int i = 0; i < CATEGORY_NAMES.length; i++) {
+            Category category = new Category();
+            category.setId(i + 1L);
+            category.setName(CATEGORY_NAMES[i]);
+            category.setDescription(CATEGORY_NAMES[i] + " expenses");
+            category.setIcon("icon-" + i);
+            category.setColor(String.format("#%06X", random.nextInt(0x1000000)));
+            category.setIsDefault(true);
+            category.setCreatedAt(LocalDateTime.of(2024, 1, 1, 0, 0));
+            categories.add(category);
+        }
+
+        List<Expense> expenses = new ArrayList<>(count);
+        LocalDate date = LocalDate.of(2025, 6, 30);
+        for (int i = 0; i < count; i++) {
+            Expense expense = new Expense();
+            expense.setId(100_000L + i);
+            expense.setCategory(categories.get(random.nextInt(categories.size())));
+            expense.setTitle(TITLES[random.nextInt(TITLES.length)]);
+            if (random.nextInt(3) == 0) {
+                expense.setDescription("Paid with card ending " + (1000 + random.nextInt(9000)));
+            }
+            expense.setAmount(BigDecimal.valueOf(100 + random.nextInt(50_000), 2));
+            expense.setCurrencyCode(CURRENCIES[random.nextInt(CURRENCIES.length)]);
+            expense.setDate(date.minusDays(i / 3));
+            if (random.nextInt(4) == 0) {
+                expense.setLocation("San Francisco, CA");
+                expense.setLatitude(BigDecimal.valueOf(37_774_929 + random.nextInt(10_000), 6));
+                expense.setLongitude(BigDecimal.valueOf(-122_419_416 + random.nextInt(10_000), 6));
+            }
+            if (random.nextInt(2) == 0) {
+                expense.setTags("work,q" + (1 + random.nextInt(4)));
+            }
+            expense.setIsReimbursable(random.nextInt(5) == 0);
+            expense.setStatus(Expense.ExpenseStatus.values()[random.nextInt(3)]);
+            LocalDateTime created = date.minusDays(i / 3).atTime(8 + random.nextInt(12), random.nextInt(60));
+            expense.setCreatedAt(created);
+            expense.setUpdatedAt(created.plusMinutes(random.nextInt(600)));
+            expenses.add(expense);
+        }
+        return expenses;
+    }
+}
@@ -0,0 +1,408 @@
+package com.expensetracker.repository;
+
+
+import com.expensetracker.dto.ExpenseFilter;
+import com.expensetracker.model.Expense;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * EXPLAIN regression test for repository queries. Migrates and seeds a MySQL container
+ * with realistic volume, runs every repository query for one user, and EXPLAINs the exact
+ * SQL and parameters Hibernate sent. Fails when a query on a large table falls back to a
+ * full table or full index scan, or expects to read a large share of the table.
+ *
+ * Needs Docker; without it the test is skipped.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+class ExplainPlanTest {
+
+    /**
+     * Tables that grow with usage; the reference tables are small enough to scan
+     */
+    private static final Set<String> CHECKED_TABLES = Set.of("expenses", "receipts", "category_usage", "expense_tombstones",
+            "idempotency_keys");
+
+    private static final Pattern TABLE_ALIAS = Pattern.compile("\\b(?:from|join)\\s+(\\w+)\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+
+    private static final String SEED_USER_PREFIX = "explain-user-";
+
+    private static final int USERS = 200;
+
+    private static final int EXPENSES_PER_USER = 250;
+
+    // Fail when the optimizer expects to read more than this share of a table
+    private static final double MAX_ROWS_FRACTION = 0.1;
+
+    @Container
+    private static final MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0")
+            .withUrlParam("serverTimezone", "UTC")
+            .withUrlParam("rewriteBatchedStatements", "true");
+
+    @DynamicPropertySource
+    static void mysqlProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", mysql::getJdbcUrl);
+        registry.add("spring.datasource.username", mysql::getUsername);
+        registry.add("spring.datasource.password", mysql::getPassword);
+        registry.add("spring.datasource.routing.enabled", () -> "false");
+        registry.add("spring.datasource.sharding.enabled", () -> "false");
+    }
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @Autowired
+    private ReceiptRepository receiptRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private CategoryUsageRepository categoryUsageRepository;
+
+    @Autowired
+    private ExpenseTombstoneRepository expenseTombstoneRepository;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void repositoryQueriesUseIndexes() throws SQLException {
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        seed(jdbc);
+
+        Long userId = jdbc.queryForObject("SELECT MIN(id) FROM users WHERE username LIKE ?", Long.class, SEED_USER_PREFIX + "%");
+        Long expenseId = jdbc.queryForObject(
+                "SELECT MIN(id) FROM expenses WHERE user_id = ? AND receipt_image_url IS NOT NULL", Long.class, userId);
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        List<CapturedQuery> queries = ((RecordingDataSource) dataSource).record(() ->
+                transaction.executeWithoutResult(status -> runRepositoryQueries(userId, expenseId)));
+
+        List<String> failures = new ArrayList<>();
+        Map<String, Long> tableRows = new HashMap<>();
+        Map<String, CapturedQuery> distinct = new LinkedHashMap<>();
+        queries.forEach(query -> distinct.putIfAbsent(query.sql, query));
+        for (CapturedQuery query : distinct.values()) {
+            failures.addAll(explain(jdbc, query, tableRows));
+        }
+
+        assertThat(distinct).isNotEmpty();
+        assertThat(failures).as("query plan regressions").isEmpty();
+    }
+
+    /**
+     * Exercise every query shape the repositories declare
+     */
+    private void runRepositoryQueries(Long userId, Long expenseId) {
+        LocalDate endDate = LocalDate.now();
+        LocalDate startDate = endDate.minusDays(90);
+        Long categoryId = 1L;
+        Pageable page = PageRequest.of(0, 20, Sort.by(Sort.Direction.DESC, "date"));
+        List<String> fields = List.of("id", "title", "amount", "date");
+
+        expenseRepository.findByUserId(userId, page);
+        expenseRepository.findByUserIdAndDateBetween(userId, startDate, endDate);
+        expenseRepository.findByUserIdAndCategoryId(userId, categoryId);
+        expenseRepository.findByUserIdAndCurrencyCode(userId, "EUR");
+        expenseRepository.findByUserIdAndAmountBetween(userId, new BigDecimal("10.00"), new BigDecimal("50.00"));
+        expenseRepository.findByUserIdAndTagsContaining(userId, "travel");
+        expenseRepository.findByUserIdAndIsReimbursableTrue(userId);
+        expenseRepository.findByUserIdAndStatus(userId, Expense.ExpenseStatus.PENDING);
+        expenseRepository.getTotalAmountByUserIdAndDateBetween(userId, startDate, endDate);
+        expenseRepository.getTotalAmountByUserIdAndCategoryIdAndDateBetween(userId, categoryId, startDate, endDate);
+        expenseRepository.getSpendingByCategory(userId, startDate, endDate);
+        expenseRepository.getSpendingTrend(userId, startDate, endDate);
+        expenseRepository.getMonthlySpending(userId, startDate, endDate);
+        expenseRepository.findExpensesWithReceipts(userId);
+        expenseRepository.countByUserIdAndDateBetween(userId, startDate, endDate);
+        expenseRepository.getAverageDailySpending(userId, startDate, endDate);
+        expenseRepository.findExpenseDates(userId, startDate, endDate);
+        expenseRepository.sampleTotals(userId, List.of(0, 1), startDate, endDate);
+        expenseRepository.sampleSpendingByCategory(userId, List.of(0, 1), startDate, endDate);
+        expenseRepository.existsByUserIdAndSampleKey(userId, Expense.UNSAMPLED);
+        expenseRepository.sampleMonthlySpending(userId, List.of(0, 1), startDate, endDate);
+        expenseRepository.findArchivable(userId, startDate, endDate);
+        expenseRepository.findChangedAfter(userId, 0L, 0L, PageRequest.of(0, 501));
+        expenseRepository.findSimilarityFields(userId);
+        expenseRepository.findCategoryHistory(userId);
+        expenseRepository.findInCells(userId, new long[] {1L << 40, (1L << 41) - 1, 1L << 42, (1L << 43) - 1},
+                40.0, -75.0, 41.0, -73.0, new ExpenseFilter(null, startDate, endDate, null, null, null, null), 1001);
+        expenseRepository.findCoordinatesInCells(userId, new long[] {1L << 40, (1L << 41) - 1, 1L << 42, (1L << 43) - 1},
+                40.0, -75.0, 41.0, -73.0, new ExpenseFilter(null, startDate, endDate, null, null, null, null));
+        expenseRepository.getSpendingClusters(userId, 1L << 40, (1L << 41) - 1, 24, new BigDecimal("40.0"),
+                new BigDecimal("-75.0"), new BigDecimal("41.0"), new BigDecimal("-73.0"), startDate, endDate);
+        expenseRepository.findFieldsByUserId(userId, fields,
+                new ExpenseFilter(categoryId, startDate, endDate, null, null, null, null), page);
+        expenseRepository.findFiltered(userId,
+                new ExpenseFilter(categoryId, startDate, endDate, null, null, null, null), page);
+        expenseRepository.findFieldsByIdAndUserId(expenseId, userId, fields);
+
+        receiptRepository.findByExpenseId(expenseId);
+        receiptRepository.findByExpenseIdAndUserId(expenseId, userId);
+
+        expenseTombstoneRepository.findChangedAfter(userId, 0L, 0L, PageRequest.of(0, 501));
+
+        idempotencyRecordRepository.findByUserIdAndKeyHash(userId, 0L);
+
+        categoryRepository.findByUserId(userId);
+        categoryRepository.findCategoriesWithUsageCount(userId);
+
+        categoryUsageRepository.findByUserIdOrderByUsageCountDesc(userId);
+        categoryUsageRepository.findByUserIdOrderByLastUsedAtDesc(userId);
+    }
+
+    private List<String> explain(JdbcTemplate jdbc, CapturedQuery query, Map<String, Long> tableRows) throws SQLException {
+        Map<String, String> aliases = new HashMap<>();
+        Matcher matcher = TABLE_ALIAS.matcher(query.sql);
+        while (matcher.find()) {
+            aliases.put(matcher.group(2), matcher.group(1).toLowerCase());
+        }
+
+        List<String> failures = new ArrayList<>();
+        try (Connection connection = ((RecordingDataSource) dataSource).getTargetDataSource().getConnection();
+             PreparedStatement explain = connection.prepareStatement("EXPLAIN " + query.sql)) {
+            for (int i = 0; i < query.parameters.size(); i++) {
+                Object value = query.parameters.get(i);
+                if (value == null) {
+                    explain.setNull(i + 1, Types.NULL);
+                } else {
+                    explain.setObject(i + 1, value);
+                }
+            }
+            try (ResultSet plan = explain.executeQuery()) {
+                while (plan.next()) {
+                    String table = aliases.getOrDefault(plan.getString("table"), plan.getString("table"));
+                    if (table == null || !CHECKED_TABLES.contains(table)) {
+                        continue;
+                    }
+                    String type = plan.getString("type");
+                    long rows = plan.getLong("rows");
+                    long total = tableRows.computeIfAbsent(table,
+                            t -> jdbc.queryForObject("SELECT COUNT(*) FROM " + t, Long.class));
+
+                    if ("ALL".equals(type) || "index".equals(type)) {
+                        failures.add(String.format("%s scan on %s (key %s): %s", type, table, plan.getString("key"), query.sql));
+                    } else if (rows > Math.max(100, total * MAX_ROWS_FRACTION)) {
+                        failures.add(String.format("%d of %d %s rows examined (key %s): %s",
+                                rows, total, table, plan.getString("key"), query.sql));
+                    }
+                }
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Fill the container's database: many users with a typical number of expenses each,
+     * so a query that ignores user_id shows up as a scan of everyone's rows
+     */
+    private void seed(JdbcTemplate jdbc) {
+        jdbc.batchUpdate("INSERT INTO users (username, email, password_hash, default_currency) VALUES (?, ?, 'x', 'USD')",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setString(1, SEED_USER_PREFIX + i);
+                        ps.setString(2, SEED_USER_PREFIX + i + "@example.com");
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return USERS;
+                    }
+                });
+
+        List<Long> userIds = jdbc.queryForList("SELECT id FROM users WHERE username LIKE ?", Long.class, SEED_USER_PREFIX + "%");
+        Random random = new Random(42);
+        String[] tags = {"travel", "food", "work", "home", null};
+        Expense.ExpenseStatus[] statuses = Expense.ExpenseStatus.values();
+        LocalDate today = LocalDate.now();
+
+        for (Long userId : userIds) {
+            jdbc.batchUpdate("INSERT INTO expenses (user_id, category_id, title, amount, currency_code, date, "
+                            + "receipt_image_url, tags, is_reimbursable, status, sample_key) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            ps.setLong(1, userId);
+                            if (random.nextInt(20) == 0) {
+                                ps.setNull(2, Types.BIGINT);
+                            } else {
+                                ps.setLong(2, 1 + random.nextInt(8));
+                            }
+                            ps.setString(3, "Expense " + i);
+                            ps.setBigDecimal(4, BigDecimal.valueOf(100 + random.nextInt(20000), 2));
+                            ps.setString(5, random.nextInt(10) == 0 ? "EUR" : "USD");
+                            ps.setDate(6, Date.valueOf(today.minusDays(random.nextInt(730))));
+                            ps.setString(7, random.nextInt(10) == 0 ? "/expenses/receipts/seed-" + userId + "-" + i : null);
+                            ps.setString(8, tags[random.nextInt(tags.length)]);
+                            ps.setBoolean(9, random.nextInt(5) == 0);
+                            ps.setString(10, statuses[random.nextInt(statuses.length)].name());
+                            ps.setInt(11, random.nextInt(Expense.SAMPLE_KEYS));
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return EXPENSES_PER_USER;
+                        }
+                    });
+        }
+
+        jdbc.update("INSERT INTO receipts (expense_id, image_url) "
+                + "SELECT e.id, e.receipt_image_url FROM expenses e JOIN users u ON u.id = e.user_id "
+                + "WHERE u.username LIKE ? AND e.receipt_image_url IS NOT NULL", SEED_USER_PREFIX + "%");
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> categoryUsageRepository.reconcileCounts());
+        jdbc.execute("ANALYZE TABLE users, categories, expenses, receipts, category_usage");
+    }
+
+    /**
+     * A statement Hibernate executed, with its bound parameters in order
+     */
+    private static class CapturedQuery {
+        private final String sql;
+        private final List<Object> parameters;
+
+        CapturedQuery(String sql, List<Object> parameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+    }
+
+    /**
+     * Wraps the application datasource so the check can see every query and its parameters
+     */
+    @TestConfiguration
+    static class RecordingConfiguration {
+        @Bean
+        static BeanPostProcessor recordingDataSourcePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof DataSource dataSource && "dataSource".equals(beanName)) {
+                        return new RecordingDataSource(dataSource);
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+
+    static class RecordingDataSource extends DelegatingDataSource {
+
+        private volatile List<CapturedQuery> recording;
+
+        RecordingDataSource(DataSource target) {
+            super(target);
+        }
+
+        List<CapturedQuery> record(Runnable work) {
+            List<CapturedQuery> captured = Collections.synchronizedList(new ArrayList<>());
+            recording = captured;
+            try {
+                work.run();
+            } finally {
+                recording = null;
+            }
+            return new ArrayList<>(captured);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return recordingConnection(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return recordingConnection(super.getConnection(username, password));
+        }
+
+        private Connection recordingConnection(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        Object result = invoke(method, connection, args);
+                        if (method.getName().equals("prepareStatement") && result instanceof PreparedStatement statement) {
+                            return recordingStatement(statement, (String) args[0]);
+                        }
+                        return result;
+                    });
+        }
+
+        private PreparedStatement recordingStatement(PreparedStatement statement, String sql) {
+            TreeMap<Integer, Object> parameters = new TreeMap<>();
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        String name = method.getName();
+                        if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                            parameters.put(index, name.equals("setNull") ? null : args[1]);
+                        } else if (name.equals("clearParameters")) {
+                            parameters.clear();
+                        } else if (name.equals("executeQuery") && (args == null || args.length == 0)) {
+                            List<CapturedQuery> captured = recording;
+                            if (captured != null) {
+                                captured.add(new CapturedQuery(sql, new ArrayList<>(parameters.values())));
+                            }
+                        }
+                        return invoke(method, statement, args);
+                    });
+        }
+
+        private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.expensetracker.service;
+
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ExpenseEventBusTest {
+
+    private static final int RING_SIZE = 4;
+
+    private ExpenseEventBus bus;
+
+    @AfterEach
+    void stopBus() throws InterruptedException {
+        if (bus != null) {
+            bus.stop();
+        }
+    }
+
+    @Test
+    void deliversEveryEventInOrderAcrossManyWraps() throws InterruptedException {
+        Recorder recorder = new Recorder(null);
+        bus = start(recorder);
+
+        int events = RING_SIZE * 25 + 3;
+        for (int i = 0; i < events; i++) {
+            bus.publish(ExpenseEvent.CREATED, 1L, i, i, 100L * i, 0, 0, 0, (byte) 0, "expense " + i);
+        }
+        recorder.awaitCount(events);
+
+        assertThat(recorder.sequences).hasSize(events);
+        for (int i = 0; i < events; i++) {
+            assertThat(recorder.sequences.get(i)).isEqualTo(i);
+            assertThat(recorder.titles.get(i)).isEqualTo("expense " + i);
+        }
+        assertThat(bus.getBacklog()).isZero();
+    }
+
+    @Test
+    void producerThatLapsTheSlowestHandlerWaitsForIt() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Recorder slow = new Recorder(release);
+        Recorder fast = new Recorder(null);
+        bus = start(slow, fast);
+
+        // The slow handler holds the first event, so the whole ring can be filled but not lapped
+        for (int i = 0; i < RING_SIZE; i++) {
+            bus.publish(ExpenseEvent.CREATED, 1L, i, i, 0, 0, 0, 0, (byte) 0, "expense " + i);
+        }
+        CompletableFuture<Long> lapping = CompletableFuture.supplyAsync(() ->
+                bus.publish(ExpenseEvent.CREATED, 1L, RING_SIZE, RING_SIZE, 0, 0, 0, 0, (byte) 0, "lap"));
+
+        assertThatThrownBy(() -> lapping.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+        assertThat(bus.getBacklog()).isEqualTo(RING_SIZE + 1);
+
+        release.countDown();
+        assertThat(lapping.get(5, TimeUnit.SECONDS)).isEqualTo(RING_SIZE);
+        slow.awaitCount(RING_SIZE + 1);
+        fast.awaitCount(RING_SIZE + 1);
+
+        // Nothing published before the lap was overwritten while the slow handler still needed it
+        assertThat(slow.titles).containsExactly("expense 0", "expense 1", "expense 2", "expense 3", "lap");
+        assertThat(fast.titles).containsExactly("expense 0", "expense 1", "expense 2", "expense 3", "lap");
+    }
+
+    @Test
+    void rejectsRingSizeThatIsNotAPowerOfTwo() {
+        ExpenseEventBus misconfigured = new ExpenseEventBus();
+        ReflectionTestUtils.setField(misconfigured, "handlers", List.of());
+        ReflectionTestUtils.setField(misconfigured, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(misconfigured, "ringSize", 6);
+        ReflectionTestUtils.setField(misconfigured, "waitStrategyName", "blocking");
+
+        assertThatThrownBy(misconfigured::start).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static ExpenseEventBus start(ExpenseEventHandler... handlers) {
+        ExpenseEventBus bus = new ExpenseEventBus();
+        ReflectionTestUtils.setField(bus, "handlers", List.of(handlers));
+        ReflectionTestUtils.setField(bus, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(bus, "ringSize", RING_SIZE);
+        ReflectionTestUtils.setField(bus, "waitStrategyName", "blocking");
+        bus.start();
+        return bus;
+    }
+
+    /**
+     * Copies what it is handed, optionally holding the first event until released
+     */
+    private static class Recorder implements ExpenseEventHandler {
+        private final CountDownLatch release;
+        private final List<Long> sequences = new CopyOnWriteArrayList<>();
+        private final List<String> titles = new CopyOnWriteArrayList<>();
+
+        Recorder(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void onEvent(ExpenseEvent event, long sequence, boolean endOfBatch) {
+            if (release != null && sequence == 0) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            sequences.add(sequence);
+            titles.add(event.getTitle());
+        }
+
+        void awaitCount(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (sequences.size() < count && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertThat(sequences).hasSize(count);
+        }
+    }
+}
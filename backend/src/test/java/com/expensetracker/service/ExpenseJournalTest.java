@@ -0,0 +1,209 @@
+package com.expensetracker.service;
+
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExpenseJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void encodesEveryFieldIntoTheMappedSegment() throws IOException {
+        ExpenseJournal journal = open(8, Duration.ofDays(30));
+        long first = journal.append(ExpenseEvent.CREATED, 7L, 101L, 1L, 12_345L, 3L, 20_000, (byte) 1);
+        long second = journal.append(ExpenseEvent.DELETED, 7L, 102L, 2L, -50L, 0L, 20_001, (byte) 0);
+
+        assertThat(first).isZero();
+        assertThat(second).isEqualTo(1);
+        assertThat(journal.getEndOffset()).isEqualTo(2);
+
+        List<String> records = new ArrayList<>();
+        journal.replay(0, record -> records.add(describe(record) + ":" + record.getStatus()));
+        assertThat(records).containsExactly(
+                "0:1:7:101:1:12345:3:20000:PENDING", "1:3:7:102:2:-50:0:20001:null");
+
+        // Flushed records are in the file itself, in the fixed 64-byte layout
+        journal.flush();
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(segments().get(0)));
+        assertThat(file.getLong(ExpenseJournal.RECORD_SIZE)).isEqualTo(1);
+        assertThat(file.getLong(ExpenseJournal.RECORD_SIZE + 24)).isEqualTo(102);
+        assertThat(file.get(ExpenseJournal.RECORD_SIZE + 60)).isEqualTo(ExpenseEvent.DELETED);
+    }
+
+    @Test
+    void rollsToANewSegmentNamedAfterItsFirstOffset() throws IOException {
+        ExpenseJournal journal = open(4, Duration.ofDays(30));
+        for (int i = 0; i < 10; i++) {
+            journal.append(ExpenseEvent.CREATED, 1L, i, 1L, 100L, 1L, 20_000, (byte) 1);
+        }
+
+        assertThat(segments()).extracting(path -> path.getFileName().toString()).containsExactly(
+                "00000000000000000000.log", "00000000000000000004.log", "00000000000000000008.log");
+        assertThat(offsets(journal, 0)).containsExactly(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L);
+        assertThat(offsets(journal, 6)).containsExactly(6L, 7L, 8L, 9L);
+
+        // Reopened, every earlier segment is closed and appends continue after the last record
+        journal.close();
+        ExpenseJournal reopened = open(4, Duration.ofDays(30));
+        assertThat(reopened.getEndOffset()).isEqualTo(10);
+        assertThat(reopened.append(ExpenseEvent.UPDATED, 1L, 0L, 2L, 100L, 1L, 20_000, (byte) 1)).isEqualTo(10);
+        assertThat(offsets(reopened, 8)).containsExactly(8L, 9L, 10L);
+    }
+
+    @Test
+    void recoveryCutsACorruptRecordAndEverythingAfterIt() throws IOException {
+        ExpenseJournal journal = open(8, Duration.ofDays(30));
+        for (int i = 0; i < 5; i++) {
+            journal.append(ExpenseEvent.CREATED, 1L, i, 1L, 100L, 1L, 20_000, (byte) 1);
+        }
+        journal.close();
+
+        // A bit flip in the amount of the fourth record no longer matches its checksum
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF}), 3L * ExpenseJournal.RECORD_SIZE + 40);
+        }
+
+        ExpenseJournal reopened = open(8, Duration.ofDays(30));
+        assertThat(reopened.getEndOffset()).isEqualTo(3);
+        assertThat(offsets(reopened, 0)).containsExactly(0L, 1L, 2L);
+        assertThat(Files.size(segment)).isEqualTo(3L * ExpenseJournal.RECORD_SIZE);
+    }
+
+    @Test
+    void recoveryCutsATornTailAndThePreallocatedSpace() throws IOException {
+        ExpenseJournal journal = open(8, Duration.ofDays(30));
+        for (int i = 0; i < 4; i++) {
+            journal.append(ExpenseEvent.CREATED, 1L, i, 1L, 100L, 1L, 20_000, (byte) 1);
+        }
+        journal.close();
+
+        // The active segment is preallocated; a crash mid-write leaves part of a record at its end
+        Path segment = segments().get(0);
+        assertThat(Files.size(segment)).isEqualTo(8L * ExpenseJournal.RECORD_SIZE);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(3L * ExpenseJournal.RECORD_SIZE + 20);
+        }
+
+        ExpenseJournal reopened = open(8, Duration.ofDays(30));
+        assertThat(reopened.getEndOffset()).isEqualTo(3);
+        assertThat(offsets(reopened, 0)).containsExactly(0L, 1L, 2L);
+        assertThat(Files.size(segment)).isEqualTo(3L * ExpenseJournal.RECORD_SIZE);
+    }
+
+    @Test
+    void compactionKeepsTheHighestChangeSequencePerExpense() throws IOException {
+        ExpenseJournal journal = open(4, Duration.ofDays(30));
+        journal.append(ExpenseEvent.CREATED, 1L, 1L, 1L, 100L, 1L, 20_000, (byte) 1);
+        journal.append(ExpenseEvent.CREATED, 1L, 2L, 1L, 200L, 1L, 20_000, (byte) 1);
+        journal.append(ExpenseEvent.UPDATED, 1L, 1L, 3L, 300L, 1L, 20_000, (byte) 1);
+        // Committed before the previous record but appended after it
+        journal.append(ExpenseEvent.UPDATED, 1L, 1L, 2L, 250L, 1L, 20_000, (byte) 1);
+        journal.append(ExpenseEvent.UPDATED, 1L, 2L, 2L, 210L, 1L, 20_000, (byte) 1);
+        journal.append(ExpenseEvent.CREATED, 1L, 3L, 1L, 400L, 1L, 20_000, (byte) 1);
+        journal.append(ExpenseEvent.UPDATED, 1L, 3L, 2L, 410L, 1L, 20_000, (byte) 1);
+        journal.append(ExpenseEvent.UPDATED, 1L, 3L, 3L, 420L, 1L, 20_000, (byte) 1);
+        journal.append(ExpenseEvent.CREATED, 1L, 4L, 1L, 500L, 1L, 20_000, (byte) 1);
+
+        journal.compact();
+
+        // Closed segments keep the latest record of each expense; the active one is untouched
+        List<String> records = new ArrayList<>();
+        journal.replay(0, record -> records.add(record.getOffset() + ":" + record.getExpenseId() + ":" + record.getAmountCents()));
+        assertThat(records).containsExactly("2:1:300", "4:2:210", "7:3:420", "8:4:500");
+        assertThat(Files.size(segments().get(0))).isEqualTo(ExpenseJournal.RECORD_SIZE);
+
+        // Replays from offsets compaction removed resume at the next record kept
+        assertThat(offsets(journal, 1)).containsExactly(2L, 4L, 7L, 8L);
+        assertThat(offsets(journal, 3)).containsExactly(4L, 7L, 8L);
+        assertThat(offsets(journal, 5)).containsExactly(7L, 8L);
+
+        // Compacted segments survive a restart with their gaps
+        journal.close();
+        ExpenseJournal reopened = open(4, Duration.ofDays(30));
+        assertThat(reopened.getEndOffset()).isEqualTo(9);
+        assertThat(offsets(reopened, 0)).containsExactly(2L, 4L, 7L, 8L);
+    }
+
+    @Test
+    void compactionDeletesSegmentsWithNothingLeft() throws IOException {
+        ExpenseJournal journal = open(2, Duration.ofDays(30));
+        journal.append(ExpenseEvent.CREATED, 1L, 1L, 1L, 100L, 1L, 20_000, (byte) 1);
+        journal.append(ExpenseEvent.UPDATED, 1L, 1L, 2L, 110L, 1L, 20_000, (byte) 1);
+        journal.append(ExpenseEvent.UPDATED, 1L, 1L, 3L, 120L, 1L, 20_000, (byte) 1);
+
+        journal.compact();
+
+        assertThat(segments()).extracting(path -> path.getFileName().toString())
+                .containsExactly("00000000000000000002.log");
+        assertThat(journal.getFirstOffset()).isEqualTo(2);
+        assertThat(offsets(journal, 0)).containsExactly(2L);
+    }
+
+    @Test
+    void retentionDropsOnlyClosedSegmentsOlderThanTheWindow() throws Exception {
+        ExpenseJournal journal = open(2, Duration.ofDays(1));
+        for (int i = 0; i < 5; i++) {
+            journal.append(ExpenseEvent.CREATED, 1L, i, 1L, 100L, 1L, 20_000, (byte) 1);
+        }
+
+        journal.compact();
+        assertThat(journal.getFirstOffset()).isZero();
+        assertThat(segments()).hasSize(3);
+
+        ReflectionTestUtils.setField(journal, "retention", Duration.ofMillis(10));
+        Thread.sleep(50);
+        journal.compact();
+
+        // The active segment is kept however old its records are
+        assertThat(journal.getFirstOffset()).isEqualTo(4);
+        assertThat(segments()).extracting(path -> path.getFileName().toString())
+                .containsExactly("00000000000000000004.log");
+        assertThat(offsets(journal, 0)).containsExactly(4L);
+    }
+
+    private ExpenseJournal open(int recordsPerSegment, Duration retention) throws IOException {
+        ExpenseJournal journal = new ExpenseJournal();
+        ReflectionTestUtils.setField(journal, "journalPath", directory.toString());
+        ReflectionTestUtils.setField(journal, "segmentSize", DataSize.ofBytes((long) recordsPerSegment * ExpenseJournal.RECORD_SIZE));
+        ReflectionTestUtils.setField(journal, "retention", retention);
+        journal.init();
+        return journal;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(".log")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static List<Long> offsets(ExpenseJournal journal, long from) {
+        List<Long> offsets = new ArrayList<>();
+        journal.replay(from, record -> offsets.add(record.getOffset()));
+        return offsets;
+    }
+
+    private static String describe(ExpenseJournal.Record record) {
+        return record.getOffset() + ":" + record.getType() + ":" + record.getUserId() + ":" + record.getExpenseId()
+                + ":" + record.getChangeSeq() + ":" + record.getAmountCents() + ":" + record.getCategoryId()
+                + ":" + record.getEpochDay();
+    }
+}
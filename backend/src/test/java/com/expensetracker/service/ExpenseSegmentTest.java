@@ -0,0 +1,213 @@
+package com.expensetracker.service;
+
+
+import com.expensetracker.model.Category;
+import com.expensetracker.model.Expense;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ExpenseSegmentTest {
+
+    // Header layout: magic, version, year, rows, probe id, then offset/compressed/raw per column
+    private static final int FIXED_HEADER = 24;
+    private static final int COLUMN_ENTRY = 12;
+    private static final int COLUMNS = 15;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsRowsSortedByDateThenId() throws IOException {
+        Expense late = expense(9_000_000_000L, LocalDate.of(2023, 12, 31), "-12.50");
+        late.setCategory(category(Long.MAX_VALUE));
+        late.setTitle("Café crème ☕");
+        late.setDescription("");
+        late.setStatus(Expense.ExpenseStatus.REJECTED);
+        late.setIsReimbursable(true);
+        late.setCreatedAt(LocalDateTime.of(2023, 12, 31, 23, 59, 59, 999_000_000));
+        late.setUpdatedAt(LocalDateTime.of(1969, 7, 20, 20, 17, 40));
+        late.setGeoCell(GeoGrid.cell(-33.868820, 151.209296));
+
+        Expense early = expense(42, LocalDate.of(2023, 1, 1), "99999999.99");
+        early.setIsReimbursable(false);
+        early.setStatus(Expense.ExpenseStatus.PENDING);
+        early.setCreatedAt(LocalDateTime.of(2023, 1, 1, 0, 0));
+
+        Expense sameDay = expense(7, LocalDate.of(2023, 1, 1), "0.00");
+        sameDay.setIsReimbursable(null);
+        sameDay.setStatus(null);
+
+        Path file = directory.resolve("2023.seg");
+        ExpenseSegment.write(file, 2023, 42, List.of(late, early, sameDay));
+        ExpenseSegment segment = ExpenseSegment.open(file);
+
+        assertThat(segment.getYear()).isEqualTo(2023);
+        assertThat(segment.getProbeId()).isEqualTo(42);
+        assertThat(segment.size()).isEqualTo(3);
+        assertThat(List.of(segment.id(0), segment.id(1), segment.id(2))).containsExactly(7L, 42L, 9_000_000_000L);
+        assertThat(segment.amountCents(0)).isZero();
+        assertThat(segment.amountCents(1)).isEqualTo(9_999_999_999L);
+        assertThat(segment.amountCents(2)).isEqualTo(-1250);
+        assertThat(segment.categoryId(0)).isNull();
+        assertThat(segment.categoryId(2)).isEqualTo(Long.MAX_VALUE);
+
+        Expense restored = segment.toExpense(2);
+        assertThat(restored.getDate()).isEqualTo(LocalDate.of(2023, 12, 31));
+        assertThat(restored.getAmount()).isEqualByComparingTo("-12.50");
+        assertThat(restored.getTitle()).isEqualTo("Café crème ☕");
+        assertThat(restored.getDescription()).isEmpty();
+        assertThat(restored.getLocation()).isNull();
+        assertThat(restored.getStatus()).isEqualTo(Expense.ExpenseStatus.REJECTED);
+        assertThat(restored.getIsReimbursable()).isTrue();
+        assertThat(restored.getCreatedAt()).isEqualTo(late.getCreatedAt());
+        assertThat(restored.getUpdatedAt()).isEqualTo(late.getUpdatedAt());
+        assertThat(restored.getGeoCell()).isEqualTo(late.getGeoCell());
+        assertThat(restored.getLatitude()).isEqualByComparingTo("-33.868820");
+        assertThat(restored.getLongitude()).isEqualByComparingTo("151.209296");
+
+        Expense first = segment.toExpense(1);
+        assertThat(first.getIsReimbursable()).isFalse();
+        assertThat(first.getCreatedAt()).isEqualTo(early.getCreatedAt());
+        assertThat(first.getUpdatedAt()).isNull();
+        assertThat(first.getGeoCell()).isNull();
+        assertThat(segment.toExpense(0).getIsReimbursable()).isNull();
+        assertThat(segment.toExpense(0).getStatus()).isNull();
+    }
+
+    @Test
+    void searchesRowsByDate() throws IOException {
+        List<Expense> expenses = new ArrayList<>();
+        for (int day = 0; day < 300; day++) {
+            expenses.add(expense(1000 - day, LocalDate.of(2024, 1, 1).plusDays(day - day % 3), "1.00"));
+        }
+        Path file = directory.resolve("2024.seg");
+        ExpenseSegment.write(file, 2024, 1000, expenses);
+        ExpenseSegment segment = ExpenseSegment.open(file);
+
+        assertThat(segment.firstOnOrAfter(null)).isZero();
+        assertThat(segment.endOnOrBefore(null)).isEqualTo(300);
+        assertThat(segment.firstOnOrAfter(LocalDate.of(2024, 1, 4))).isEqualTo(3);
+        assertThat(segment.firstOnOrAfter(LocalDate.of(2024, 1, 5))).isEqualTo(6);
+        assertThat(segment.endOnOrBefore(LocalDate.of(2024, 1, 4))).isEqualTo(6);
+        assertThat(segment.endOnOrBefore(LocalDate.of(2023, 12, 31))).isZero();
+        assertThat(segment.firstOnOrAfter(LocalDate.of(2025, 1, 1))).isEqualTo(300);
+        for (int row = 1; row < segment.size(); row++) {
+            assertThat(segment.date(row)).isAfterOrEqualTo(segment.date(row - 1));
+        }
+    }
+
+    @Test
+    void compressesRepetitiveColumns() throws IOException {
+        List<Expense> expenses = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Expense expense = expense(i + 1, LocalDate.of(2022, 6, 1).plusDays(i / 20), "4.50");
+            expense.setTitle("Coffee");
+            expense.setLocation("Main Street");
+            expenses.add(expense);
+        }
+        Path file = directory.resolve("2022.seg");
+        ExpenseSegment.write(file, 2022, 1, expenses);
+
+        // Uncompressed, the titles and locations alone take 20 bytes a row
+        assertThat(Files.size(file)).isLessThan(5000L * 4);
+        assertThat(ExpenseSegment.open(file).toExpense(4999).getLocation()).isEqualTo("Main Street");
+    }
+
+    @Test
+    void readsVersion1SegmentsWithoutGeoCells() throws IOException {
+        Expense expense = expense(5, LocalDate.of(2021, 3, 14), "3.14");
+        expense.setTitle("Pie");
+        expense.setGeoCell(GeoGrid.cell(51.5, -0.12));
+        Path file = directory.resolve("2021.seg");
+        ExpenseSegment.write(file, 2021, 5, List.of(expense));
+        Files.write(file, downgradeToVersion1(Files.readAllBytes(file)));
+
+        ExpenseSegment segment = ExpenseSegment.open(file);
+        Expense restored = segment.toExpense(0);
+        assertThat(restored.getId()).isEqualTo(5);
+        assertThat(restored.getTitle()).isEqualTo("Pie");
+        assertThat(restored.getAmount()).isEqualByComparingTo("3.14");
+        assertThat(restored.getGeoCell()).isNull();
+        assertThat(restored.getLatitude()).isNull();
+    }
+
+    @Test
+    void rejectsForeignTruncatedAndCorruptFiles() throws IOException {
+        Path file = directory.resolve("2020.seg");
+        ExpenseSegment.write(file, 2020, 1, List.of(expense(1, LocalDate.of(2020, 2, 29), "1.00")));
+        byte[] bytes = Files.readAllBytes(file);
+
+        Path foreign = directory.resolve("foreign.seg");
+        byte[] wrongMagic = bytes.clone();
+        wrongMagic[0] ^= 0x01;
+        Files.write(foreign, wrongMagic);
+        assertThatThrownBy(() -> ExpenseSegment.open(foreign)).hasMessage("Not an expense segment");
+
+        Path future = directory.resolve("future.seg");
+        Files.write(future, ByteBuffer.wrap(bytes.clone()).putInt(4, 3).array());
+        assertThatThrownBy(() -> ExpenseSegment.open(future)).hasMessage("Unsupported expense segment version 3");
+
+        Path truncated = directory.resolve("truncated.seg");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThatThrownBy(() -> ExpenseSegment.open(truncated)).hasMessage("Truncated expense segment");
+
+        // Claim one more raw byte for the id column than it inflates to
+        Path corrupt = directory.resolve("corrupt.seg");
+        ByteBuffer header = ByteBuffer.wrap(bytes.clone());
+        header.putInt(FIXED_HEADER + 8, header.getInt(FIXED_HEADER + 8) + 1);
+        Files.write(corrupt, header.array());
+        ExpenseSegment segment = ExpenseSegment.open(corrupt);
+        assertThatThrownBy(() -> segment.id(0)).hasMessage("Corrupt expense segment column 0");
+    }
+
+    /**
+     * Rewrite a version 2 segment as version 1 did: no geo cell column and a header one
+     * entry shorter
+     */
+    private static byte[] downgradeToVersion1(byte[] version2) {
+        ByteBuffer source = ByteBuffer.wrap(version2);
+        int geoOffset = source.getInt(FIXED_HEADER + (COLUMNS - 1) * COLUMN_ENTRY);
+        int version1Header = FIXED_HEADER + (COLUMNS - 1) * COLUMN_ENTRY;
+        int version2Header = FIXED_HEADER + COLUMNS * COLUMN_ENTRY;
+        ByteBuffer target = ByteBuffer.allocate(version1Header + geoOffset - version2Header);
+        target.put(version2, 0, FIXED_HEADER);
+        target.putInt(4, 1);
+        for (int column = 0; column < COLUMNS - 1; column++) {
+            int entry = FIXED_HEADER + column * COLUMN_ENTRY;
+            target.putInt(source.getInt(entry) - COLUMN_ENTRY)
+                    .putInt(source.getInt(entry + 4))
+                    .putInt(source.getInt(entry + 8));
+        }
+        target.put(version2, version2Header, geoOffset - version2Header);
+        return target.array();
+    }
+
+    private static Expense expense(long id, LocalDate date, String amount) {
+        Expense expense = new Expense();
+        expense.setId(id);
+        expense.setDate(date);
+        expense.setAmount(new BigDecimal(amount));
+        expense.setCurrencyCode("USD");
+        return expense;
+    }
+
+    private static Category category(long id) {
+        Category category = new Category();
+        category.setId(id);
+        return category;
+    }
+}
@@ -0,0 +1,120 @@
+package com.expensetracker.service;
+
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class GeoGridTest {
+
+    @Test
+    void cellCentreIsWithinACentimetreOfThePoint() {
+        double[][] points = {{0, 0}, {-33.868820, 151.209296}, {89.999999, -179.999999}, {-90, 180}, {51.5, -0.12}};
+        for (double[] point : points) {
+            long cell = GeoGrid.cell(point[0], point[1]);
+            assertThat(cell).isBetween(0L, (1L << 62) - 1);
+            assertThat(GeoGrid.latitude(cell, GeoGrid.LEVEL)).isCloseTo(point[0], within(1e-7));
+            assertThat(GeoGrid.longitude(cell, GeoGrid.LEVEL)).isCloseTo(point[1], within(1e-7));
+        }
+    }
+
+    @Test
+    void coarserCellsArePrefixesOfTheCode() {
+        long cell = GeoGrid.cell(48.8566, 2.3522);
+        for (int level = 0; level <= GeoGrid.LEVEL; level++) {
+            long coarse = cell >>> 2 * (GeoGrid.LEVEL - level);
+            double size = 180.0 / (1L << level);
+            assertThat(GeoGrid.latitude(coarse, level)).isCloseTo(48.8566, within(size / 2));
+            assertThat(GeoGrid.longitude(coarse, level)).isCloseTo(2.3522, within(size));
+        }
+        // Longitude takes the top bit, so the eastern hemisphere sorts after the western
+        assertThat(GeoGrid.cell(0, 1) >>> 61).isEqualTo(1);
+        assertThat(GeoGrid.cell(0, -1) >>> 61).isZero();
+    }
+
+    @Test
+    void coverReturnsMergedAscendingRangesContainingTheBox() {
+        double south = 40.70;
+        double west = -74.02;
+        double north = 40.80;
+        double east = -73.93;
+        long[] ranges = GeoGrid.cover(south, west, north, east, 16);
+
+        assertSortedAndMerged(ranges);
+        assertThat(ranges.length / 2).isLessThanOrEqualTo(16);
+        for (double latitude = south; latitude <= north; latitude += 0.005) {
+            for (double longitude = west; longitude <= east; longitude += 0.005) {
+                assertThat(covers(ranges, GeoGrid.cell(latitude, longitude))).isTrue();
+            }
+        }
+        assertThat(covers(ranges, GeoGrid.cell(40.75, -73.0))).isFalse();
+        assertThat(covers(ranges, GeoGrid.cell(41.5, -74.0))).isFalse();
+    }
+
+    @Test
+    void coverOfTheWholeWorldMergesIntoOneRange() {
+        assertThat(GeoGrid.cover(-90, -180, 90, 180, 64)).containsExactly(0L, (1L << 62) - 1);
+    }
+
+    @Test
+    void coverJoinsNeighbouringCells() {
+        // Covered by the four level 2 cells of the north-east level 1 cell, one run of codes
+        long[] ranges = GeoGrid.cover(0.1, 0.1, 89, 179, 4);
+        assertThat(ranges).containsExactly(3L << 60, (4L << 60) - 1);
+    }
+
+    @Test
+    void coverSplitsABoxCrossingTheAntimeridian() {
+        long[] ranges = GeoGrid.cover(-10, 170, 10, -170, 16);
+
+        assertSortedAndMerged(ranges);
+        assertThat(covers(ranges, GeoGrid.cell(0, 175))).isTrue();
+        assertThat(covers(ranges, GeoGrid.cell(0, 180))).isTrue();
+        assertThat(covers(ranges, GeoGrid.cell(0, -180))).isTrue();
+        assertThat(covers(ranges, GeoGrid.cell(5, -175))).isTrue();
+        assertThat(covers(ranges, GeoGrid.cell(0, 0))).isFalse();
+        assertThat(covers(ranges, GeoGrid.cell(0, 90))).isFalse();
+        // The part east of the antimeridian lies in the western hemisphere and sorts first
+        assertThat(ranges[0]).isLessThan(1L << 61);
+        assertThat(ranges[ranges.length - 1]).isGreaterThanOrEqualTo(1L << 61);
+    }
+
+    @Test
+    void boundingBoxWrapsAtTheAntimeridianAndWidensAtThePoles() {
+        double[] box = GeoGrid.boundingBox(0, 179.9, 50);
+        assertThat(box[1]).isGreaterThan(box[3]);
+        assertThat(GeoGrid.containsLongitude(box[1], box[3], -179.9)).isTrue();
+        assertThat(GeoGrid.containsLongitude(box[1], box[3], 0)).isFalse();
+        assertThat(GeoGrid.distanceKm(0, 179.9, 0, -179.9)).isCloseTo(22.24, within(0.01));
+
+        double[] polar = GeoGrid.boundingBox(89.9, 10, 50);
+        assertThat(polar).containsExactly(new double[] {polar[0], -180, 90, 180}, within(0.0));
+    }
+
+    @Test
+    void levelForMeasuresWidthAcrossTheAntimeridian() {
+        assertThat(GeoGrid.levelFor(-10, 170, 10, -170, 4))
+                .isEqualTo(GeoGrid.levelFor(-10, -20, 10, 0, 4));
+    }
+
+    private static void assertSortedAndMerged(long[] ranges) {
+        assertThat(ranges.length % 2).isZero();
+        for (int i = 0; i < ranges.length; i += 2) {
+            assertThat(ranges[i]).isLessThanOrEqualTo(ranges[i + 1]);
+            if (i > 0) {
+                // Touching ranges would have been joined
+                assertThat(ranges[i]).isGreaterThan(ranges[i - 1] + 1);
+            }
+        }
+    }
+
+    private static boolean covers(long[] ranges, long cell) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (cell >= ranges[i] && cell <= ranges[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
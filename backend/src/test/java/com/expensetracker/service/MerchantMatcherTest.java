@@ -0,0 +1,98 @@
+package com.expensetracker.service;
+
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MerchantMatcherTest {
+
+    @Test
+    void findsOverlappingPatternsThroughOutputLinks() {
+        MerchantMatcher matcher = new MerchantMatcher();
+        matcher.put("he", 1);
+        matcher.put("she", 2);
+        matcher.put("his", 3);
+        matcher.put("hers", 4);
+
+        assertThat(matches(matcher, "ushers")).containsExactlyInAnyOrder("3:3:2", "3:2:1", "5:4:4");
+        assertThat(matches(matcher, "ahishers")).containsExactlyInAnyOrder("3:3:3", "5:3:2", "5:2:1", "7:4:4");
+        assertThat(matches(matcher, "xyz")).isEmpty();
+    }
+
+    @Test
+    void relinksPatternsAddedAfterMatching() {
+        MerchantMatcher matcher = new MerchantMatcher();
+        matcher.put("hers", 1);
+        assertThat(matches(matcher, "ushers")).containsExactly("5:4:1");
+
+        // New suffixes of existing nodes must be reached from those nodes' output links
+        matcher.put("ers", 2);
+        matcher.put("s", 3);
+        assertThat(matches(matcher, "ushers")).containsExactlyInAnyOrder("1:1:3", "5:4:1", "5:3:2", "5:1:3");
+
+        // A new branch below an existing node changes where its failure links point
+        matcher.put("ushe", 4);
+        assertThat(matches(matcher, "ushers")).containsExactlyInAnyOrder("1:1:3", "3:4:4", "5:4:1", "5:3:2", "5:1:3");
+        assertThat(matcher.size()).isEqualTo(4);
+    }
+
+    @Test
+    void replacesTheValueOfAnExistingPattern() {
+        MerchantMatcher matcher = new MerchantMatcher();
+        matcher.put("coffee", 1);
+        assertThat(matches(matcher, "coffee shop")).containsExactly("5:6:1");
+
+        matcher.put("coffee", 2);
+        assertThat(matcher.size()).isEqualTo(1);
+        assertThat(matches(matcher, "coffee shop")).containsExactly("5:6:2");
+    }
+
+    @Test
+    void agreesWithBruteForceWhilePatternsKeepArriving() {
+        Random random = new Random(42);
+        MerchantMatcher matcher = new MerchantMatcher();
+        Map<String, Long> expected = new LinkedHashMap<>();
+        for (int round = 0; round < 200; round++) {
+            // A small alphabet makes patterns overlap and share prefixes and suffixes
+            String pattern = randomText(random, 1 + random.nextInt(5));
+            matcher.put(pattern, round);
+            expected.put(pattern, (long) round);
+
+            String text = randomText(random, 40);
+            assertThat(matches(matcher, text)).containsExactlyInAnyOrderElementsOf(bruteForce(expected, text));
+        }
+        assertThat(matcher.size()).isEqualTo(expected.size());
+    }
+
+    private static List<String> matches(MerchantMatcher matcher, String text) {
+        List<String> found = new ArrayList<>();
+        matcher.match(text, (end, length, value) -> found.add(end + ":" + length + ":" + value));
+        return found;
+    }
+
+    private static List<String> bruteForce(Map<String, Long> patterns, String text) {
+        List<String> found = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : patterns.entrySet()) {
+            String pattern = entry.getKey();
+            for (int start = text.indexOf(pattern); start >= 0; start = text.indexOf(pattern, start + 1)) {
+                found.add((start + pattern.length() - 1) + ":" + pattern.length() + ":" + entry.getValue());
+            }
+        }
+        return found;
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + random.nextInt(3)));
+        }
+        return text.toString();
+    }
+}
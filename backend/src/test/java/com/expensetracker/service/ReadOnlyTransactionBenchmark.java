@@ -0,0 +1,158 @@
+package com.expensetracker.service;
+
+
+import com.expensetracker.model.Expense;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Heap allocated and commit time per large expense page, read through a read-only
+ * transaction and through a read-write one, against a MySQL container. The read-write
+ * run is what list requests cost before they were marked read-only: Hibernate keeps a
+ * dirty-checking snapshot of every entity and flushes at commit. Not part of the regular
+ * build, and needs Docker; run it with
+ * {@code mvn -B test -Dtest=ReadOnlyTransactionBenchmark -Dsurefire.failIfNoSpecifiedTests=false}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+class ReadOnlyTransactionBenchmark {
+
+    private static final int EXPENSES = 20_000;
+
+    private static final int[] PAGE_SIZES = {500, 2_000};
+
+    private static final int WARMUP_ITERATIONS = 50;
+
+    private static final int MEASURED_ITERATIONS = 200;
+
+    @Container
+    private static final MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0")
+            .withUrlParam("serverTimezone", "UTC")
+            .withUrlParam("rewriteBatchedStatements", "true");
+
+    @DynamicPropertySource
+    static void mysqlProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", mysql::getJdbcUrl);
+        registry.add("spring.datasource.username", mysql::getUsername);
+        registry.add("spring.datasource.password", mysql::getPassword);
+        registry.add("spring.datasource.routing.enabled", () -> "false");
+        registry.add("spring.datasource.sharding.enabled", () -> "false");
+    }
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ExpenseService expenseService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void compareReadOnlyAndReadWritePages() {
+        Long userId = seed(new JdbcTemplate(dataSource));
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        StringBuilder report = new StringBuilder(String.format("%-10s %5s %14s %14s %14s%n",
+                "tx", "page", "heap KB/page", "commit us", "page ms"));
+        for (int size : PAGE_SIZES) {
+            for (boolean readOnly : new boolean[] {true, false}) {
+                TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+                transaction.setReadOnly(readOnly);
+                Timer commits = meterRegistry.get("expense.tx.commit").tag("readOnly", String.valueOf(readOnly)).timer();
+
+                for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                    readPage(transaction, userId, size);
+                }
+                long commitCount = commits.count();
+                double commitNanos = commits.totalTime(TimeUnit.NANOSECONDS);
+                long allocated = threads.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+                    readPage(transaction, userId, size);
+                }
+                long elapsed = System.nanoTime() - start;
+                allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+                commitNanos = commits.totalTime(TimeUnit.NANOSECONDS) - commitNanos;
+                assertThat(commits.count() - commitCount).isEqualTo(MEASURED_ITERATIONS);
+
+                report.append(String.format("%-10s %5d %14.1f %14.1f %14.2f%n", readOnly ? "read-only" : "read-write",
+                        size, allocated / 1024.0 / MEASURED_ITERATIONS, commitNanos / 1000.0 / MEASURED_ITERATIONS,
+                        elapsed / 1e6 / MEASURED_ITERATIONS));
+            }
+        }
+        System.out.print(report);
+    }
+
+    /**
+     * The page query of one list request inside the given transaction. Serialization
+     * costs the same either way, so it is left out.
+     */
+    private void readPage(TransactionTemplate transaction, Long userId, int size) {
+        Integer rows = transaction.execute(status -> expenseService.getExpenses(userId, PageRequest.of(0, size),
+                null, null, null, null, null, null, null).getNumberOfElements());
+        assertThat(rows).isEqualTo(size);
+    }
+
+    private Long seed(JdbcTemplate jdbc) {
+        jdbc.update("INSERT INTO users (username, email, password_hash, default_currency) "
+                + "VALUES ('benchmark', 'benchmark@example.com', 'x', 'USD')");
+        Long userId = jdbc.queryForObject("SELECT id FROM users WHERE username = 'benchmark'", Long.class);
+
+        Random random = new Random(42);
+        LocalDate today = LocalDate.now();
+        jdbc.batchUpdate("INSERT INTO expenses (user_id, category_id, title, description, amount, currency_code, date, "
+                        + "tags, is_reimbursable, status, sample_key) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setLong(1, userId);
+                        ps.setLong(2, 1 + random.nextInt(8));
+                        ps.setString(3, "Expense " + i);
+                        ps.setString(4, random.nextInt(3) == 0 ? "Paid with card ending " + (1000 + random.nextInt(9000)) : null);
+                        ps.setBigDecimal(5, BigDecimal.valueOf(100 + random.nextInt(20000), 2));
+                        ps.setString(6, random.nextInt(10) == 0 ? "EUR" : "USD");
+                        ps.setDate(7, Date.valueOf(today.minusDays(random.nextInt(730))));
+                        ps.setString(8, random.nextInt(2) == 0 ? "work,travel" : null);
+                        ps.setBoolean(9, random.nextInt(5) == 0);
+                        ps.setString(10, Expense.ExpenseStatus.values()[random.nextInt(3)].name());
+                        ps.setInt(11, random.nextInt(Expense.SAMPLE_KEYS));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return EXPENSES;
+                    }
+                });
+        jdbc.execute("ANALYZE TABLE expenses");
+        return userId;
+    }
+}